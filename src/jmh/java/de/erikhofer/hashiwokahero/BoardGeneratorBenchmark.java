@@ -0,0 +1,33 @@
+package de.erikhofer.hashiwokahero;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BoardGeneratorBenchmark {
+  
+  static final long SEED = 42;
+  
+  @Param({"10", "100", "1000", "10000", "100000"})
+  public int components;
+  
+  @Benchmark
+  public PackedBoard generateBoard() {
+    return new BoardGenerator(SEED).generatePackedBoard(components);
+  }
+
+}
@@ -0,0 +1,82 @@
+package de.erikhofer.hashiwokahero;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders boards into offscreen images. Doesn't need a display.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BoardRendererBenchmark {
+  
+  private static final int IMAGE_WIDTH = 1920;
+  private static final int IMAGE_HEIGHT = 1080;
+  
+  /**
+   * Size of the tiles of exported images in px. Small enough for the largest boards.
+   */
+  private static final int EXPORT_TILE_SIZE = 12;
+  
+  @Param({"10", "100", "1000", "10000"})
+  public int components;
+  
+  private PackedBoard board;
+  private BoardRenderer boardRenderer;
+  private BoardImageExporter boardImageExporter;
+  private BufferedImage image;
+  private Graphics graphics;
+  
+  /**
+   * Generates a solved board, so that all sprites are drawn.
+   */
+  @Setup
+  public void setUp() {
+    board = new BoardGenerator(BoardGeneratorBenchmark.SEED).generatePackedBoard(components);
+    boardRenderer = new BoardRenderer();
+    boardImageExporter = new BoardImageExporter(EXPORT_TILE_SIZE);
+    image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    graphics = image.getGraphics();
+  }
+  
+  @TearDown
+  public void tearDown() {
+    graphics.dispose();
+  }
+  
+  /**
+   * Renders a view of the size of a screen at the top left of the board with unscaled tiles.
+   */
+  @Benchmark
+  public BufferedImage renderView() {
+    boardRenderer.render(graphics, board, false, BoardRenderer.TILE_SIZE, 0, 0, IMAGE_WIDTH,
+        IMAGE_HEIGHT);
+    return image;
+  }
+  
+  /**
+   * Renders the whole board into a new image in parallel chunks.
+   */
+  @Benchmark
+  public BufferedImage renderImage() {
+    return boardImageExporter.render(board, BoardImageExporter.View.SOLUTION);
+  }
+
+}
@@ -0,0 +1,89 @@
+package de.erikhofer.hashiwokahero;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GameStateBenchmark {
+  
+  @Param({"10", "100", "1000", "10000", "100000"})
+  public int components;
+  
+  private GameState solvedGameState;
+  private GameState emptyGameState;
+  
+  /**
+   * A cable tile of the solution and the components at both ends of it.
+   */
+  private TilePosition cablePosition;
+  private TilePosition component1;
+  private TilePosition component2;
+  
+  /**
+   * Generates the boards and looks up the first cable of the solution.
+   */
+  @Setup
+  public void setUp() {
+    final PackedBoard solution = new BoardGenerator(BoardGeneratorBenchmark.SEED)
+        .generatePackedBoard(components);
+    solvedGameState = new GameState(solution);
+    solvedGameState.setBoardToSolution();
+    emptyGameState = new GameState(solution);
+    
+    int cableIndex = 0;
+    while (solution.isComponent(cableIndex) || solution.getCables(cableIndex) == 0) {
+      cableIndex++;
+    }
+    cablePosition = new TilePosition(solution.getRow(cableIndex), solution.getCol(cableIndex));
+    
+    final List<Direction> directions = Direction.forOrientation(
+        solution.getOrientation(cableIndex));
+    component1 = findComponent(cablePosition, directions.get(0));
+    component2 = findComponent(cablePosition, directions.get(1));
+  }
+  
+  private TilePosition findComponent(TilePosition start, Direction direction) {
+    TilePosition current = start;
+    while (solvedGameState.isCableTile(current)) {
+      current = current.getAdjacent(direction);
+    }
+    return current;
+  }
+  
+  @Benchmark
+  public boolean verifySolution() {
+    return solvedGameState.verifySolution();
+  }
+  
+  @Benchmark
+  public List<CableTile> getFullCable() {
+    return solvedGameState.getFullCable(cablePosition);
+  }
+  
+  /**
+   * Adds a cable and removes it again, so every invocation starts with the same board.
+   */
+  @Benchmark
+  public boolean addAndRemoveCable() {
+    emptyGameState.tryToAddCableBetweenComponents(component1, component2);
+    emptyGameState.removeCable(cablePosition);
+    return emptyGameState.verifySolution();
+  }
+
+}
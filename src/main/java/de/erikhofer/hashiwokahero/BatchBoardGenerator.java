@@ -0,0 +1,100 @@
+package de.erikhofer.hashiwokahero;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Generates many boards in parallel. Every board gets its own seed that only depends on the master
+ * seed and the index of the board, so the output is the same regardless of the number of threads.
+ */
+public class BatchBoardGenerator {
+  
+  /**
+   * The odd constant used by {@link java.util.SplittableRandom} to advance its seed.
+   */
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+  
+  /**
+   * Number of boards that are generated ahead of the consumer per thread of the pool.
+   */
+  private static final int BOARDS_AHEAD_PER_THREAD = 4;
+  
+  private final @Getter long masterSeed;
+  private final ForkJoinPool pool;
+  
+  /**
+   * Creates a batch generator that uses the common fork-join pool.
+   */
+  public BatchBoardGenerator(long masterSeed) {
+    this(masterSeed, ForkJoinPool.commonPool());
+  }
+  
+  public BatchBoardGenerator(long masterSeed, @NonNull ForkJoinPool pool) {
+    this.masterSeed = masterSeed;
+    this.pool = pool;
+  }
+  
+  /**
+   * Returns the seed of the board with the given index. Works like
+   * {@link java.util.SplittableRandom#split()} but can be computed for any index directly.
+   */
+  public static long getBoardSeed(long masterSeed, int index) {
+    long seed = masterSeed + (index + 1L) * GOLDEN_GAMMA;
+    seed = (seed ^ (seed >>> 30)) * 0xBF58476D1CE4E5B9L;
+    seed = (seed ^ (seed >>> 27)) * 0x94D049BB133111EBL;
+    return seed ^ (seed >>> 31);
+  }
+  
+  /**
+   * Generates the given number of boards and passes them to the consumer in the order of their
+   * index. Only a bounded number of boards is generated ahead of the consumer, so arbitrary large
+   * batches can be streamed. The consumer is called on the calling thread.
+   */
+  public void generate(int boards, int components, @NonNull Consumer<GeneratedBoard> consumer) {
+    checkArgument(boards >= 0, "The number of boards must not be negative!");
+    
+    final int boardsAhead = pool.getParallelism() * BOARDS_AHEAD_PER_THREAD;
+    final Deque<CompletableFuture<GeneratedBoard>> pending = new ArrayDeque<>(boardsAhead);
+    int nextIndex = 0;
+    try {
+      while (nextIndex < boards || !pending.isEmpty()) {
+        while (nextIndex < boards && pending.size() < boardsAhead) {
+          final int index = nextIndex++;
+          pending.add(CompletableFuture.supplyAsync(() -> generateBoard(index, components), pool));
+        }
+        consumer.accept(pending.poll().join());
+      }
+    } finally {
+      // only has an effect if the consumer or a generator failed
+      pending.forEach(future -> future.cancel(false));
+    }
+  }
+  
+  /**
+   * Generates the given number of boards and returns them in the order of their index.
+   */
+  public List<GeneratedBoard> generate(int boards, int components) {
+    final List<GeneratedBoard> generatedBoards = new ArrayList<>(boards);
+    generate(boards, components, generatedBoards::add);
+    return generatedBoards;
+  }
+  
+  /**
+   * Generates the board with the given index.
+   */
+  public GeneratedBoard generateBoard(int index, int components) {
+    final long seed = getBoardSeed(masterSeed, index);
+    return new GeneratedBoard(index, seed,
+        new BoardGenerator(seed).generatePackedBoard(components));
+  }
+
+}
@@ -0,0 +1,215 @@
+package de.erikhofer.hashiwokahero;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import lombok.Value;
+
+/**
+ * Caches generated boards by their seed and number of components, because {@link BoardGenerator}
+ * always generates the same board for them. Boards are kept in memory up to a total number of
+ * tiles. When the limit is exceeded, the least recently used boards are evicted.
+ *
+ * <p>Optionally, every generated board is also written to a directory as a single board
+ * {@link PuzzleLibrary}, so that it doesn't need to be generated again after it was evicted or in
+ * a later run. Boards of older generator versions in the directory are ignored.
+ *
+ * <p>A cache can be used by multiple threads. The boards are kept as {@link BoardSnapshot}s, which
+ * never change, and every caller gets its own board. Boards are generated outside of the lock, so
+ * the same board might be generated twice if it is requested by two threads at the same time.
+ */
+public class BoardCache {
+  
+  /**
+   * Identifies a generated board.
+   */
+  @Value
+  public static class Key {
+    
+    private long seed;
+    private int components;
+    private int generatorVersion;
+  
+  }
+  
+  private final long maxTiles;
+  private final Path directory;
+  private final LinkedHashMap<Key, BoardSnapshot> boards = new LinkedHashMap<>(16, 0.75f, true);
+  private long tiles;
+  
+  private long memoryHits;
+  private long diskHits;
+  private long misses;
+  private long evictions;
+  
+  /**
+   * Creates a cache that only keeps boards in memory.
+   *
+   * @param maxTiles the maximum number of tiles of all boards in memory
+   */
+  public BoardCache(long maxTiles) {
+    this(maxTiles, null);
+  }
+  
+  /**
+   * Creates a cache that keeps boards in memory and in the given directory.
+   *
+   * @param maxTiles the maximum number of tiles of all boards in memory
+   * @param directory the directory for the boards on disk or null if they should only be kept in
+   *        memory
+   */
+  public BoardCache(long maxTiles, Path directory) {
+    checkArgument(maxTiles > 0, "The maximum number of tiles must be positive!");
+    this.maxTiles = maxTiles;
+    this.directory = directory;
+  }
+  
+  /**
+   * Returns the board that {@link BoardGenerator} generates for the given seed and number of
+   * components. It is generated only if it isn't cached. Every call returns a new board that may
+   * be modified. It shares the cells with the cache until they are changed, so this takes constant
+   * time for a board in memory.
+   *
+   * @throws UncheckedIOException if the board can't be written to the directory
+   */
+  public PackedBoard getBoard(long seed, int components) {
+    final Key key = new Key(seed, components, BoardGenerator.VERSION);
+    synchronized (this) {
+      final BoardSnapshot snapshot = boards.get(key);
+      if (snapshot != null) {
+        memoryHits++;
+        return new PackedBoard(snapshot);
+      }
+    }
+    
+    PackedBoard board = readBoard(key);
+    synchronized (this) {
+      if (board != null) {
+        diskHits++;
+      } else {
+        misses++;
+      }
+    }
+    if (board == null) {
+      board = new BoardGenerator(seed).generatePackedBoard(components);
+      writeBoard(key, board);
+    }
+    put(key, board.snapshot());
+    return board;
+  }
+  
+  /**
+   * Creates a new game with the board for the given seed and number of components.
+   */
+  public GameState getGameState(long seed, int components) {
+    return new GameState(getBoard(seed, components));
+  }
+  
+  private synchronized void put(Key key, BoardSnapshot snapshot) {
+    if (snapshot.getSize() > maxTiles) {
+      return; // it would evict everything else and itself
+    }
+    final BoardSnapshot previous = boards.put(key, snapshot);
+    tiles += snapshot.getSize() - (previous == null ? 0 : previous.getSize());
+    
+    final Iterator<BoardSnapshot> eldest = boards.values().iterator();
+    while (tiles > maxTiles) {
+      tiles -= eldest.next().getSize();
+      eldest.remove();
+      evictions++;
+    }
+  }
+  
+  private Path getFile(Key key) {
+    return directory.resolve(String.format("board-v%d-%d-%016x.hashi", key.getGeneratorVersion(),
+        key.getComponents(), key.getSeed()));
+  }
+  
+  /**
+   * Reads the board with the given key from the directory.
+   *
+   * @return the board or null if there is no directory or the board isn't in it
+   */
+  private PackedBoard readBoard(Key key) {
+    if (directory == null) {
+      return null;
+    }
+    final Path file = getFile(key);
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (PuzzleLibrary library = new PuzzleLibrary(file)) {
+      return library.getBoardCount() == 1 && library.getSeed(0) == key.getSeed()
+          ? library.getBoard(0) : null;
+    } catch (IOException e) {
+      return null; // the board is generated again and the file is replaced
+    }
+  }
+  
+  /**
+   * Writes the given board to the directory if there is one. The board is written to a temporary
+   * file first, so that other threads and processes never read an incomplete board.
+   */
+  private void writeBoard(Key key, PackedBoard board) {
+    if (directory == null) {
+      return;
+    }
+    try {
+      Files.createDirectories(directory);
+      final Path temporaryFile = Files.createTempFile(directory, "board", ".tmp");
+      try {
+        try (PuzzleLibraryWriter writer = PuzzleLibraryWriter.create(temporaryFile, 1)) {
+          writer.add(key.getSeed(), board);
+        }
+        Files.move(temporaryFile, getFile(key), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temporaryFile);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+  
+  /**
+   * Removes all boards from memory. Boards on disk are kept.
+   */
+  public synchronized void clear() {
+    boards.clear();
+    tiles = 0;
+  }
+  
+  public synchronized int getSize() {
+    return boards.size();
+  }
+  
+  /**
+   * Returns the number of tiles of all boards in memory.
+   */
+  public synchronized long getTiles() {
+    return tiles;
+  }
+  
+  public synchronized long getMemoryHits() {
+    return memoryHits;
+  }
+  
+  public synchronized long getDiskHits() {
+    return diskHits;
+  }
+  
+  public synchronized long getMisses() {
+    return misses;
+  }
+  
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+}
@@ -1,28 +1,35 @@
 package de.erikhofer.hashiwokahero;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 
+import de.erikhofer.hashiwokahero.metrics.GeneratorMetrics;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.IntSummaryStatistics;
-import java.util.List;
-import java.util.Map;
 import java.util.Random;
-import java.util.Stack;
-import java.util.stream.Collectors;
 import lombok.Getter;
 
 public class BoardGenerator {
   
+  /**
+   * Version of the generator. It has to be increased whenever a change to the generator changes
+   * the board that is generated for a seed, so that boards in a {@link BoardCache} are not reused.
+   */
+  public static final int VERSION = 1;
+  
   /**
    * Every cable is at least 1 tile long. Every subsequent tile is used with this probability (if
    * possible).
    */
   private static final double CONTINUE_CABLE_PROBABILITY = 0.3;
   
+  /**
+   * A tile without a component or cable in the grid of {@link #generatePackedBoard(int, int)}.
+   */
+  private static final int EMPTY_CELL = 0;
+  
   private final @Getter long seed;
   private final Random random;
+  private final Direction[] directions = Direction.values();
   
   /**
    * Creates a new BoardGenerator with a random seed.
@@ -42,17 +49,35 @@ public class BoardGenerator {
    * Generated a random board with the given number of components.
    */
   public Tile[][] generateBoard(int components) {
+    return generatePackedBoard(components).toTiles();
+  }
+  
+  /**
+   * Generated a random board with the given number of components.
+   */
+  public PackedBoard generatePackedBoard(int components) {
     checkArgument(components >= 2, "There must be at least 2 components on a board!");
+    final long startTime = System.nanoTime();
     
     // The algorithm is based on this paper:
     // http://liacs.leidenuniv.nl/assets/Bachelorscripties/2009-11TimoMorsink.pdf
     
     // We don't know the size of the board yet. Thus we allow arbitrary size in all directions (also
     // negative) and transform to a two-dimensional array at the end.
-    final Map<TilePosition, Tile> board = new HashMap<>();
+    final SparseBoard board = new SparseBoard(components * 3);
     
     // Place an initial component with no connections.
-    board.put(new TilePosition(0, 0), new ComponentTile(0));
+    board.put(0, 0, PackedBoard.componentCell(0, 0));
+    
+    // All components that may still be used as an origin. Components are removed lazily once they
+    // are picked and turn out to have no open direction left.
+    final long[] openComponents = new long[components];
+    openComponents[0] = SparseBoard.key(0, 0);
+    int openComponentCount = 1;
+    
+    // Counted locally and recorded once, so the loops stay fast.
+    long originPicks = 0;
+    long failedDirections = 0;
     
     for (int i = 1; i < components; i++) {
       // To place a new component, select a random existing one and try to place a cable of random
@@ -61,58 +86,70 @@ public class BoardGenerator {
       // there is always at least one component where this is possible.
       tryOrigin: while (true) {
         // Select a random origin component
-        final TilePosition originPosition = board.entrySet().stream()
-            .filter(e -> e.getValue() instanceof ComponentTile)
-            .skip(random.nextInt(i))
-            .findFirst().get().getKey();
+        checkState(openComponentCount > 0, "No component can be used as an origin!");
+        originPicks++;
+        final int originIndex = random.nextInt(openComponentCount);
+        final int originRow = SparseBoard.getRow(openComponents[originIndex]);
+        final int originCol = SparseBoard.getCol(openComponents[originIndex]);
+        if (!hasOpenDirection(originRow, originCol, board)) {
+          // This component can never be used again. Remove it in O(1) by replacing it with the
+          // last one.
+          openComponents[originIndex] = openComponents[--openComponentCount];
+          continue;
+        }
         
         // Select a random direction
-        final List<Direction> directions = Arrays.asList(Direction.values());
-        Collections.shuffle(directions, random);
+        shuffleDirections();
         tryDirection: for (Direction direction : directions) {
-          final TilePosition cableStart = originPosition.getAdjacent(direction);
-          if (board.containsKey(cableStart)) {
+          final int rowOffset = direction.getRowOffset();
+          final int colOffset = direction.getColOffset();
+          if (board.contains(originRow + rowOffset, originCol + colOffset)) {
             // Either this side is already connected or there is an adjacent crossing cable
             // (components are not placed next to each other). Try next direction.
+            failedDirections++;
             continue; 
           }
           
           final int newCableCount = random.nextInt(2) + 1; // 1 or 2
-          final Stack<TilePosition> newCablePositions = new Stack<>();
-          newCablePositions.push(cableStart);
           
-          // Advance the cable until we hit a crossing cable or decide to stop by random.
-          TilePosition current = cableStart;
+          // Advance the cable until we hit a crossing cable or decide to stop by random. The cable
+          // covers the tiles 1 to length in the direction of the origin.
+          int length = 1;
           do {
-            current = current.getAdjacent(direction);
-            newCablePositions.push(current);
-            if (board.containsKey(current)) {
+            length++;
+            if (board.contains(originRow + length * rowOffset, originCol + length * colOffset)) {
               break; // We hit a crossing cable.
             }
           } while (random.nextDouble() < CONTINUE_CABLE_PROBABILITY);
           
-          // We want to place the new component at the last newCablePosition. If this is not
-          // possible, take one step back; repeat. If no valid position is found, try next 
-          // direction.
-          TilePosition newComponentPosition;
-          while (!isComponentPlacableAt(newComponentPosition = newCablePositions.pop(), board)) {
-            if (newCablePositions.isEmpty()) {
+          // We want to place the new component at the end of the cable. If this is not possible,
+          // take one step back; repeat. If no valid position is found, try next direction.
+          while (!isComponentPlacableAt(originRow + length * rowOffset,
+              originCol + length * colOffset, board)) {
+            if (--length == 0) {
+              failedDirections++;
               continue tryDirection;
             }
           }
+          final int newComponentRow = originRow + length * rowOffset;
+          final int newComponentCol = originCol + length * colOffset;
           
           // Place new cables.
           final int randomVariant = random.nextInt(Resources.getNumberOfCableVariants());
-          newCablePositions.forEach(position -> board.put(position,
-              new CableTile(newCableCount, direction.getOrientation(), randomVariant)));
+          final int cableCell = PackedBoard.cableCell(newCableCount, direction.getOrientation(),
+              randomVariant);
+          for (int j = 1; j < length; j++) {
+            board.put(originRow + j * rowOffset, originCol + j * colOffset, cableCell);
+          }
           
           // Place new component.
-          final int connections = getAdjacentCableCount(newComponentPosition, board);
-          board.put(newComponentPosition, new ComponentTile(connections));
+          final int connections = getAdjacentCableCount(newComponentRow, newComponentCol, board);
+          board.put(newComponentRow, newComponentCol, PackedBoard.componentCell(connections, 0));
+          openComponents[openComponentCount++] = SparseBoard.key(newComponentRow, newComponentCol);
           
           // Update origin.
-          final int originConnections = getAdjacentCableCount(originPosition, board);
-          board.put(originPosition, new ComponentTile(originConnections));
+          final int originConnections = getAdjacentCableCount(originRow, originCol, board);
+          board.put(originRow, originCol, PackedBoard.componentCell(originConnections, 0));
           
           break tryOrigin;
         }
@@ -120,88 +157,310 @@ public class BoardGenerator {
       }
     }
     
-    randomizeComponentVariants(board);
-    return transformBoard(board);
+    final PackedBoard packedBoard = board.toPackedBoard();
+    randomizeComponentVariants(packedBoard);
+    GeneratorMetrics.getInstance().recordBoard(components, originPicks - (components - 1),
+        failedDirections, System.nanoTime() - startTime);
+    return packedBoard;
+  }
+  
+  /**
+   * Generates a random board that fills the given area with as many components as fit.
+   */
+  public PackedBoard generatePackedBoard(int width, int height) {
+    return generatePackedBoard(width, height, 1);
+  }
+  
+  /**
+   * Generates a random board of exactly the given size. Unlike
+   * {@link #generatePackedBoard(int)}, the board doesn't grow in every direction. The tiles are
+   * kept in an array of the given size with a ring of {@link SparseBoard#NO_CELL} tiles around it,
+   * so cables stop at the edges the same way they stop at crossing cables and no tile has to be
+   * looked up in a hash table.
+   *
+   * <p>If the cable of random length ends where no component can be placed, the component is placed
+   * further along the cable instead of giving up, so the generator never retries an origin that
+   * still has an open direction. Components can't be placed next to each other, so densities above
+   * about 0.3 are not reached. The board then has less components than asked for.
+   *
+   * @param density the number of components per tile
+   */
+  public PackedBoard generatePackedBoard(int width, int height, double density) {
+    checkArgument(width > 0 && height > 0 && (width >= 3 || height >= 3),
+        "A board of %sx%s tiles has no room for 2 components!", width, height);
+    checkArgument((long) (width + 2) * (height + 2) <= Integer.MAX_VALUE,
+        "A board of %sx%s tiles is too large!", width, height);
+    checkArgument(density > 0 && density <= 1, "Invalid density: %s", density);
+    final long startTime = System.nanoTime();
+    
+    final int size = width * height;
+    final int targetComponents = (int) Math.max(Math.round(density * size), 2);
+    // Sparse boards need longer cables to spread over the whole area. A cable with a continue
+    // probability p is 2 + p / (1 - p) tiles long on average including the new component, so
+    // choose p such that this is about the distance between components at the given density.
+    final double cableLength = 1 / Math.sqrt(density);
+    final double continueCableProbability = Math.max(CONTINUE_CABLE_PROBABILITY,
+        (cableLength - 2) / (cableLength - 1));
+    final int stride = width + 2;
+    final int[] grid = new int[stride * (height + 2)];
+    Arrays.fill(grid, 0, stride, SparseBoard.NO_CELL);
+    Arrays.fill(grid, grid.length - stride, grid.length, SparseBoard.NO_CELL);
+    for (int row = 1; row <= height; row++) {
+      grid[row * stride] = SparseBoard.NO_CELL;
+      grid[row * stride + width + 1] = SparseBoard.NO_CELL;
+    }
+    
+    // Place an initial component anywhere a cable can leave it.
+    int first;
+    do {
+      first = (random.nextInt(height) + 1) * stride + random.nextInt(width) + 1;
+    } while (!hasOpenGridDirection(first, stride, grid));
+    grid[first] = PackedBoard.componentCell(0, 0);
+    
+    final int[] openComponents = new int[Math.min(targetComponents, size)];
+    openComponents[0] = first;
+    int openComponentCount = 1;
+    int components = 1;
+    long originPicks = 0;
+    long failedDirections = 0;
+    
+    // Same as generatePackedBoard(int), but with grid indexes instead of positions.
+    while (components < targetComponents && openComponentCount > 0) {
+      originPicks++;
+      final int originIndex = random.nextInt(openComponentCount);
+      final int origin = openComponents[originIndex];
+      if (!hasOpenGridDirection(origin, stride, grid)) {
+        openComponents[originIndex] = openComponents[--openComponentCount];
+        continue;
+      }
+      
+      shuffleDirections();
+      for (Direction direction : directions) {
+        final int offset = getOffset(direction, stride);
+        if (grid[origin + offset] != EMPTY_CELL) {
+          failedDirections++;
+          continue;
+        }
+        
+        final int newCableCount = random.nextInt(2) + 1; // 1 or 2
+        int length = 1;
+        do {
+          length++;
+          if (grid[origin + length * offset] != EMPTY_CELL) {
+            break; // We hit a crossing cable or the edge.
+          }
+        } while (random.nextDouble() < continueCableProbability);
+        
+        length = findComponentDistance(origin, offset, length, stride, grid);
+        if (length == 0) {
+          failedDirections++;
+          continue;
+        }
+        final int newComponent = origin + length * offset;
+        
+        final int randomVariant = random.nextInt(Resources.getNumberOfCableVariants());
+        final int cableCell = PackedBoard.cableCell(newCableCount, direction.getOrientation(),
+            randomVariant);
+        for (int j = 1; j < length; j++) {
+          grid[origin + j * offset] = cableCell;
+        }
+        grid[newComponent] = PackedBoard.componentCell(
+            getAdjacentGridCableCount(newComponent, stride, grid), 0);
+        openComponents[openComponentCount++] = newComponent;
+        grid[origin] = PackedBoard.componentCell(
+            getAdjacentGridCableCount(origin, stride, grid), 0);
+        components++;
+        break;
+      }
+    }
+    
+    final PackedBoard packedBoard = new PackedBoard(width, height);
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        packedBoard.set(packedBoard.getIndex(row, col), grid[(row + 1) * stride + col + 1]);
+      }
+    }
+    randomizeComponentVariants(packedBoard);
+    GeneratorMetrics.getInstance().recordBoard(components, originPicks - (components - 1),
+        failedDirections, System.nanoTime() - startTime);
+    return packedBoard;
   }
   
-  private boolean isComponentPlacableAt(TilePosition tilePosition, Map<TilePosition, Tile> board) {
-    if (board.get(tilePosition) instanceof ComponentTile) {
+  /**
+   * Shuffles {@link #directions} the same way {@link java.util.Collections#shuffle} does.
+   */
+  private void shuffleDirections() {
+    for (int i = directions.length; i > 1; i--) {
+      final int j = random.nextInt(i);
+      final Direction direction = directions[i - 1];
+      directions[i - 1] = directions[j];
+      directions[j] = direction;
+    }
+  }
+  
+  private boolean hasOpenDirection(int row, int col, SparseBoard board) {
+    for (Direction direction: Direction.values()) {
+      if (isDirectionOpen(row, col, direction, board)) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Returns whether a new component could be placed in the given direction of the origin with a
+   * long enough cable. As the board only grows, a direction that is closed once stays closed.
+   */
+  private boolean isDirectionOpen(int originRow, int originCol, Direction direction,
+      SparseBoard board) {
+    int row = originRow + direction.getRowOffset();
+    int col = originCol + direction.getColOffset();
+    if (board.contains(row, col)) {
+      return false;
+    }
+    // Follow the cable the same way generatePackedBoard does. The first tile is always adjacent to
+    // the origin.
+    do {
+      row += direction.getRowOffset();
+      col += direction.getColOffset();
+      if (isComponentPlacableAt(row, col, board)) {
+        return true;
+      }
+    } while (!board.contains(row, col));
+    return false;
+  }
+  
+  private boolean isComponentPlacableAt(int row, int col, SparseBoard board) {
+    if (isComponent(board.get(row, col))) {
       return false; // There already is a component on this tile.
     }
     for (Direction direction: Direction.values()) {
-      Tile adjacentTile = board.get(tilePosition.getAdjacent(direction));
-      if (adjacentTile instanceof ComponentTile) {
+      if (isComponent(board.get(row + direction.getRowOffset(), col + direction.getColOffset()))) {
         return false; // Components can't be placed next to each other.
       }
     }
     return true;
   }
   
-  private int getAdjacentCableCount(TilePosition tilePosition, Map<TilePosition, Tile> board) {
+  private static int getOffset(Direction direction, int stride) {
+    return direction.getRowOffset() * stride + direction.getColOffset();
+  }
+  
+  private boolean hasOpenGridDirection(int index, int stride, int[] grid) {
+    for (Direction direction: Direction.values()) {
+      final int offset = getOffset(direction, stride);
+      int tile = index + offset;
+      if (grid[tile] != EMPTY_CELL) {
+        continue;
+      }
+      do {
+        tile += offset;
+        if (isComponentPlacableInGrid(tile, stride, grid)) {
+          return true;
+        }
+      } while (grid[tile] == EMPTY_CELL);
+    }
+    return false;
+  }
+  
+  /**
+   * Returns the distance from the origin at which the new component can be placed. The tiles from
+   * the given distance back to the origin are tried first, then the tiles beyond it up to the next
+   * crossing cable or the edge.
+   *
+   * @return the distance or 0 if there is no such tile
+   */
+  private static int findComponentDistance(int origin, int offset, int distance, int stride,
+      int[] grid) {
+    for (int length = distance; length > 1; length--) {
+      if (isComponentPlacableInGrid(origin + length * offset, stride, grid)) {
+        return length;
+      }
+    }
+    for (int length = distance; grid[origin + length * offset] == EMPTY_CELL; ) {
+      length++;
+      if (isComponentPlacableInGrid(origin + length * offset, stride, grid)) {
+        return length;
+      }
+    }
+    return 0;
+  }
+  
+  private static boolean isComponentPlacableInGrid(int index, int stride, int[] grid) {
+    if (grid[index] == SparseBoard.NO_CELL || isComponent(grid[index])) {
+      return false; // The tile is outside of the board or already has a component.
+    }
+    for (Direction direction: Direction.values()) {
+      if (isComponent(grid[index + getOffset(direction, stride)])) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  private static int getAdjacentGridCableCount(int index, int stride, int[] grid) {
     int cables = 0;
     for (Direction direction: Direction.values()) {
-      Tile adjacentTile = board.get(tilePosition.getAdjacent(direction));
-      if (adjacentTile instanceof CableTile) {
-        cables += ((CableTile) adjacentTile).getCables();
+      final int adjacentCell = grid[index + getOffset(direction, stride)];
+      if (adjacentCell != SparseBoard.NO_CELL && !PackedBoard.isComponentCell(adjacentCell)
+          && PackedBoard.getOrientationOfCell(adjacentCell) == direction.getOrientation()) {
+        cables += PackedBoard.getCount(adjacentCell);
       }
     }
     return cables;
   }
   
-  private Tile[][] transformBoard(Map<TilePosition, Tile> board) {
-    
-    final IntSummaryStatistics rowSummary = board.keySet().stream()
-        .collect(Collectors.summarizingInt(TilePosition::getRow));
-    final IntSummaryStatistics colSummary = board.keySet().stream()
-        .collect(Collectors.summarizingInt(TilePosition::getCol));
-    
-    final int boardHeight = rowSummary.getMax() - rowSummary.getMin() + 1;
-    final int boardWidth = colSummary.getMax() - colSummary.getMin() + 1;
-    
-    final Tile[][] transformedBoard = new Tile[boardHeight][boardWidth];
-    
-    for (int row = 0; row < boardHeight; row++) {
-      for (int col = 0; col < boardWidth; col++) {
-        Tile tile = board.get(
-            new TilePosition(row + rowSummary.getMin(), col + colSummary.getMin()));
-        
-        transformedBoard[row][col] = tile == null ? new CableTile() : tile;
+  private static boolean isComponent(int cell) {
+    return cell != SparseBoard.NO_CELL && PackedBoard.isComponentCell(cell);
+  }
+  
+  /**
+   * Counts the cables that lead into the given tile. Cables that only pass by are not counted.
+   */
+  private int getAdjacentCableCount(int row, int col, SparseBoard board) {
+    int cables = 0;
+    for (Direction direction: Direction.values()) {
+      final int adjacentCell = board.get(row + direction.getRowOffset(),
+          col + direction.getColOffset());
+      if (adjacentCell != SparseBoard.NO_CELL && !PackedBoard.isComponentCell(adjacentCell)
+          && PackedBoard.getOrientationOfCell(adjacentCell) == direction.getOrientation()) {
+        cables += PackedBoard.getCount(adjacentCell);
       }
     }
-    
-    return transformedBoard;
+    return cables;
   }
   
-  private void randomizeComponentVariants(Map<TilePosition, Tile> board) {
+  private void randomizeComponentVariants(PackedBoard board) {
     boolean usedNegativePole = false;
     boolean usedPositivePole = false;
     
     
-    for (Tile tile: board.values()) {
-      if (!(tile instanceof ComponentTile)) {
+    for (int index = 0; index < board.getSize(); index++) {
+      if (!board.isComponent(index)) {
         continue;
       }
         
-      final int connections = ((ComponentTile) tile).getConnections();
+      final int connections = board.getConnections(index);
 
       switch (connections) {
         case 1:
           if (!usedNegativePole) {
-            tile.setVariant(Resources.VARIANT_1_NEGATIVE);
+            board.setVariant(index, Resources.VARIANT_1_NEGATIVE);
             usedNegativePole = true;
           } else if (!usedPositivePole) {
-            tile.setVariant(Resources.VARIANT_1_POSITIVE);
+            board.setVariant(index, Resources.VARIANT_1_POSITIVE);
             usedPositivePole = true;
           } else {
-            tile.setVariant(Resources.VARIANT_1_MISC);
+            board.setVariant(index, Resources.VARIANT_1_MISC);
           }
           break;
         case 2:
-          tile.setVariant(random.nextBoolean() 
+          board.setVariant(index, random.nextBoolean() 
               ? Resources.VARIANT_2_GREEN_OFF : Resources.VARIANT_2_RED_OFF);
           break;
         default:
-          tile.setVariant(random.nextInt(Resources.getNumberOfComponentVariants(connections)));
+          board.setVariant(index,
+              random.nextInt(Resources.getNumberOfComponentVariants(connections)));
       }
     }
   }
@@ -0,0 +1,206 @@
+package de.erikhofer.hashiwokahero;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageIO;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Renders boards to images and writes them as PNG files without a display, e.g. for thumbnails or
+ * print sheets. Large boards are split into square chunks that are rendered in parallel into the
+ * same image. Batches of boards are rendered in parallel with one board per task instead.
+ */
+public class BoardImageExporter {
+  
+  /**
+   * Approximate width and height of a chunk in px. Chunks always contain whole tiles.
+   */
+  private static final int CHUNK_SIZE = 512;
+  
+  /**
+   * What is shown of a board.
+   */
+  public enum View {
+    
+    /**
+     * Only the components, i.e. the puzzle as it is presented to the player.
+     */
+    PUZZLE,
+    
+    /**
+     * The components and the cables of the solution.
+     */
+    SOLUTION
+  
+  }
+  
+  private final @Getter int tileSize;
+  private final ForkJoinPool pool;
+  private final ThreadLocal<BoardRenderer> boardRenderers =
+      ThreadLocal.withInitial(BoardRenderer::new);
+  
+  /**
+   * Creates an exporter that draws tiles with the given size in px and uses the common fork-join
+   * pool.
+   */
+  public BoardImageExporter(int tileSize) {
+    this(tileSize, ForkJoinPool.commonPool());
+  }
+  
+  /**
+   * Creates an exporter that draws tiles with the given size in px.
+   */
+  public BoardImageExporter(int tileSize, @NonNull ForkJoinPool pool) {
+    checkArgument(tileSize > 0, "The tile size must be positive!");
+    this.tileSize = tileSize;
+    this.pool = pool;
+  }
+  
+  /**
+   * Returns the board that shows the given view of the given solution.
+   */
+  public static PackedBoard getBoard(@NonNull PackedBoard solution, @NonNull View view) {
+    if (view == View.SOLUTION) {
+      return solution;
+    }
+    final PackedBoard puzzle = new PackedBoard(solution);
+    for (int index = 0; index < puzzle.getSize(); index++) {
+      if (puzzle.isCable(index)) {
+        puzzle.setCables(index, 0);
+      }
+    }
+    return puzzle;
+  }
+  
+  /**
+   * Renders the given view of the board of the given game state. The progress of the player is
+   * ignored.
+   */
+  public BufferedImage render(@NonNull GameState gameState, @NonNull View view) {
+    return render(gameState.getSolution(), view);
+  }
+  
+  /**
+   * Renders the given view of the given solution. The chunks of the image are rendered in parallel.
+   */
+  public BufferedImage render(@NonNull PackedBoard solution, @NonNull View view) {
+    return render(getBoard(solution, view), true);
+  }
+  
+  private BufferedImage render(PackedBoard board, boolean parallel) {
+    final long width = (long) board.getWidth() * tileSize;
+    final long height = (long) board.getHeight() * tileSize;
+    checkArgument(width * height <= Integer.MAX_VALUE, "The image would be too large!");
+    final BufferedImage image = new BufferedImage((int) width, (int) height,
+        BufferedImage.TYPE_INT_RGB);
+    
+    final int chunkSize = Math.max(CHUNK_SIZE / tileSize, 1) * tileSize;
+    final List<CompletableFuture<Void>> chunks = new ArrayList<>();
+    for (int y = 0; y < height; y += chunkSize) {
+      for (int x = 0; x < width; x += chunkSize) {
+        final int chunkX = x;
+        final int chunkY = y;
+        final int chunkWidth = (int) Math.min(chunkSize, width - x);
+        final int chunkHeight = (int) Math.min(chunkSize, height - y);
+        if (parallel) {
+          chunks.add(CompletableFuture.runAsync(
+              () -> renderChunk(image, board, chunkX, chunkY, chunkWidth, chunkHeight), pool));
+        } else {
+          renderChunk(image, board, chunkX, chunkY, chunkWidth, chunkHeight);
+        }
+      }
+    }
+    CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[chunks.size()])).join();
+    return image;
+  }
+  
+  /**
+   * Renders a part of the image. Chunks don't overlap, so they can be rendered concurrently into
+   * the same image.
+   */
+  private void renderChunk(BufferedImage image, PackedBoard board, int x, int y, int width,
+      int height) {
+    final Graphics2D g = image.getSubimage(x, y, width, height).createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.translate(-x, -y);
+      boardRenderers.get().render(g, board, false, tileSize, x, y, width, height);
+    } finally {
+      g.dispose();
+    }
+  }
+  
+  /**
+   * Writes the given view of the board of the given game state to a PNG file.
+   */
+  public void export(@NonNull GameState gameState, @NonNull View view, @NonNull Path file)
+      throws IOException {
+    export(gameState.getSolution(), view, file);
+  }
+  
+  /**
+   * Writes the given view of the given solution to a PNG file.
+   */
+  public void export(@NonNull PackedBoard solution, @NonNull View view, @NonNull Path file)
+      throws IOException {
+    write(render(solution, view), file);
+  }
+  
+  /**
+   * Writes the given view of all given boards to PNG files in the given directory. The files are
+   * named after the view and the index of the board, e.g. {@code puzzle-42.png}. Boards are
+   * rendered and written in parallel.
+   *
+   * @return the files in the order of the boards
+   */
+  public List<Path> exportAll(@NonNull List<GeneratedBoard> boards, @NonNull View view,
+      @NonNull Path directory) throws IOException {
+    Files.createDirectories(directory);
+    final List<Path> files = new ArrayList<>(boards.size());
+    final List<CompletableFuture<Void>> exports = new ArrayList<>(boards.size());
+    for (GeneratedBoard board : boards) {
+      final Path file = directory.resolve(
+          view.name().toLowerCase(Locale.ROOT) + "-" + board.getIndex() + ".png");
+      files.add(file);
+      exports.add(CompletableFuture.runAsync(() -> {
+        try {
+          write(render(getBoard(board.getBoard(), view), false), file);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }, pool));
+    }
+    
+    try {
+      CompletableFuture.allOf(exports.toArray(new CompletableFuture<?>[exports.size()])).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw e;
+    }
+    return files;
+  }
+  
+  private static void write(BufferedImage image, Path file) throws IOException {
+    if (!ImageIO.write(image, "png", file.toFile())) {
+      throw new IOException("No PNG writer available!");
+    }
+  }
+
+}
@@ -0,0 +1,321 @@
+package de.erikhofer.hashiwokahero;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Draws the tiles of a board. Tiles are composited from the images in {@link Resources} once and
+ * cached together with smaller prerendered versions (mipmaps) of them. Tiles that are smaller than
+ * the smallest mipmap are drawn as a single color. Nothing here needs a display, so this also
+ * works with {@code java.awt.headless=true}.
+ *
+ * <p>A renderer is not thread-safe because of its caches. Use one renderer per thread.
+ */
+public class BoardRenderer {
+  
+  /**
+   * Size of a tile in px when it isn't scaled.
+   */
+  public static final int TILE_SIZE = 96;
+  public static final Color BACKGROUND_COLOR = new Color(62, 75, 48);
+  
+  /**
+   * Tiles are prerendered at {@code TILE_SIZE >> level} px for the levels up to this one.
+   */
+  public static final int MAX_MIPMAP_LEVEL = 3;
+  
+  /**
+   * Tiles smaller than this are drawn as a single color, see {@link #getTileColor(int)}.
+   */
+  public static final int MIN_SPRITE_TILE_SIZE = TILE_SIZE >> MAX_MIPMAP_LEVEL;
+  
+  private static final int TILE_PADDING = 16;
+  private static final Font DIGIT_FONT = new Font("Monospaced", Font.BOLD, 15);
+  private static final Color HIGHLIGHT_COLOR = Color.RED;
+  
+  /**
+   * Maximum number of composited tiles that are cached, including their mipmaps. There are a few
+   * thousand possible keys, but a board usually needs only a small part of them.
+   */
+  private static final int MAX_CACHED_TILES = 1024;
+  
+  /**
+   * Key value of a direction without an adjacent tile, see
+   * {@link #getTileKey(PackedBoard, int, boolean)}.
+   */
+  private static final int NO_ADJACENT_TILE = 3;
+  private static final int HIGHLIGHTED_FLAG = 1 << 8;
+  private static final int MIPMAP_LEVEL_SHIFT = 17;
+  private static final int CABLE_TILE_FLAG = 1 << 19;
+  
+  private final SpriteCache tiles = new SpriteCache(MAX_CACHED_TILES, this::createTile);
+  
+  /**
+   * The average color of each tile image by its key (without mipmap level).
+   */
+  private final Map<Integer, Integer> tileColors = new HashMap<>();
+  
+  /**
+   * Returns the mipmap level with the smallest tiles that are at least as large as the given size.
+   */
+  public static int getMipmapLevel(int tileSize) {
+    int level = 0;
+    while (level < MAX_MIPMAP_LEVEL && (TILE_SIZE >> (level + 1)) >= tileSize) {
+      level++;
+    }
+    return level;
+  }
+  
+  /**
+   * Renders all tiles of the board that intersect the given area. The graphics context uses the
+   * coordinates of the whole board drawn with the given tile size.
+   */
+  public void render(Graphics g, PackedBoard board, boolean highlightWrong, int tileSize, int x,
+      int y, int width, int height) {
+    final int fromRow = Math.max(y / tileSize, 0);
+    final int toRow = Math.min((y + height - 1) / tileSize, board.getHeight() - 1);
+    final int fromCol = Math.max(x / tileSize, 0);
+    final int toCol = Math.min((x + width - 1) / tileSize, board.getWidth() - 1);
+    final int level = getMipmapLevel(tileSize);
+    for (int row = fromRow; row <= toRow; row++) {
+      for (int col = fromCol; col <= toCol; col++) {
+        final int key = getTileKey(board, board.getIndex(row, col), highlightWrong);
+        renderTile(g, key, level, col * tileSize, row * tileSize, tileSize);
+      }
+    }
+  }
+  
+  /**
+   * Renders the tile with the given key at the given position. The mipmap of the given level is
+   * scaled to the given size, or the color of the tile is used if the size is smaller than
+   * {@link #MIN_SPRITE_TILE_SIZE}.
+   */
+  public void renderTile(Graphics g, int key, int level, int x, int y, int size) {
+    if (size < MIN_SPRITE_TILE_SIZE) {
+      g.setColor(new Color(getTileColor(key)));
+      g.fillRect(x, y, size, size);
+    } else {
+      g.drawImage(tiles.get(key | (level << MIPMAP_LEVEL_SHIFT)), x, y, size, size, null);
+    }
+  }
+  
+  /**
+   * Returns the RGB color that represents the tile with the given key when it is too small to be
+   * drawn. This is the average color of its image, but components with a highlighted digit are
+   * colored completely.
+   */
+  public int getTileColor(int key) {
+    if ((key & (CABLE_TILE_FLAG | HIGHLIGHTED_FLAG)) == HIGHLIGHTED_FLAG) {
+      return HIGHLIGHT_COLOR.getRGB() & 0xFFFFFF;
+    }
+    Integer color = tileColors.get(key);
+    if (color == null) {
+      color = getAverageColor((BufferedImage) tiles.get(key));
+      tileColors.put(key, color);
+    }
+    return color;
+  }
+  
+  private static int getAverageColor(BufferedImage image) {
+    long red = 0;
+    long green = 0;
+    long blue = 0;
+    for (int y = 0; y < image.getHeight(); y++) {
+      for (int x = 0; x < image.getWidth(); x++) {
+        final int rgb = image.getRGB(x, y);
+        red += (rgb >> 16) & 0xFF;
+        green += (rgb >> 8) & 0xFF;
+        blue += rgb & 0xFF;
+      }
+    }
+    final long pixels = (long) image.getWidth() * image.getHeight();
+    return (int) (red / pixels) << 16 | (int) (green / pixels) << 8 | (int) (blue / pixels);
+  }
+  
+  /**
+   * Returns the key of everything that affects the image of the tile at the given index of the
+   * board. Bit layout of component tiles:
+   * <pre>
+   * bits 0-3    connections
+   * bits 4-7    variant
+   * bit  8      whether the digit is highlighted because the component is wrongly connected
+   * bits 9-16   connected cables per direction (2 bits each, {@link #NO_ADJACENT_TILE} if the
+   *             component is at the edge of the board)
+   * </pre>
+   * Bit layout of cable tiles:
+   * <pre>
+   * bits 0-1    cables
+   * bit  2      whether the cables are vertical
+   * bits 3-6    variant
+   * bit  19     {@link #CABLE_TILE_FLAG}
+   * </pre>
+   * Bits 17-18 are left for the mipmap level.
+   */
+  public static int getTileKey(PackedBoard board, int index, boolean highlightWrong) {
+    if (board.isCable(index)) {
+      final int cables = board.getCables(index);
+      if (cables == 0) {
+        return CABLE_TILE_FLAG; // all empty tiles look the same
+      }
+      return CABLE_TILE_FLAG | cables
+          | (board.getOrientation(index) == Orientation.VERTICAL ? 1 << 2 : 0)
+          | (board.getVariant(index) << 3);
+    }
+    
+    int key = board.getConnections(index) | (board.getVariant(index) << 4);
+    if (highlightWrong && !board.isCorrectlyConnected(index)) {
+      key |= HIGHLIGHTED_FLAG;
+    }
+    
+    final int row = board.getRow(index);
+    final int col = board.getCol(index);
+    for (Direction direction : Direction.values()) {
+      final int adjacentRow = row + direction.getRowOffset();
+      final int adjacentCol = col + direction.getColOffset();
+      
+      int connectionCount;
+      if (!board.isInBounds(adjacentRow, adjacentCol)) {
+        connectionCount = NO_ADJACENT_TILE;
+      } else {
+        // components can't be next to each other
+        final int adjacentIndex = board.getIndex(adjacentRow, adjacentCol);
+        connectionCount = direction.getOrientation() == board.getOrientation(adjacentIndex)
+            ? board.getCables(adjacentIndex) : 0;
+      }
+      key |= connectionCount << (9 + 2 * direction.ordinal());
+    }
+    return key;
+  }
+  
+  /**
+   * Creates the image of a tile with the given key, including the mipmap level.
+   */
+  private Image createTile(int key) {
+    final int level = key >>> MIPMAP_LEVEL_SHIFT & 3;
+    if (level > 0) {
+      return createMipmap(key & ~(3 << MIPMAP_LEVEL_SHIFT), level);
+    }
+    return (key & CABLE_TILE_FLAG) != 0 ? createCableTile(key) : createComponentTile(key);
+  }
+  
+  /**
+   * Scales the image of the previous level down by half, so every level averages all pixels of the
+   * full size image.
+   */
+  private Image createMipmap(int key, int level) {
+    final Image previousLevel = tiles.get(key | ((level - 1) << MIPMAP_LEVEL_SHIFT));
+    final int size = TILE_SIZE >> level;
+    final BufferedImage tile = Resources.createCompatibleImage(size, size, Transparency.OPAQUE);
+    final Graphics2D g = tile.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.drawImage(previousLevel, 0, 0, size, size, null);
+    } finally {
+      g.dispose();
+    }
+    return tile;
+  }
+  
+  /**
+   * Composites the image of a component tile with the given key.
+   */
+  private Image createComponentTile(int key) {
+    final int connections = key & 0xF;
+    final int variant = (key >>> 4) & 0xF;
+    final boolean highlighted = (key & HIGHLIGHTED_FLAG) != 0;
+    
+    final BufferedImage tile = Resources.createCompatibleImage(TILE_SIZE, TILE_SIZE,
+        Transparency.OPAQUE);
+    final Graphics g = tile.getGraphics();
+    try {
+      final Point origin = new Point(0, 0);
+      g.setColor(BACKGROUND_COLOR);
+      g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+      
+      Image image = Resources.COMPONENTS[connections][variant].get();
+      g.drawImage(image, origin.x + TILE_PADDING, origin.y + TILE_PADDING, null);
+      
+      // connections
+      for (Direction direction : Direction.values()) {
+        final int connectionCount = (key >>> (9 + 2 * direction.ordinal())) & 3;
+        if (connectionCount == NO_ADJACENT_TILE) {
+          continue; // there is no adjacent tile in this direction
+        }
+        
+        for (int i = 1; i <= 2; i++) {
+          Point connectionOrigin = getConnectionOrigin(origin, direction, i == 2);
+          Image connectionImage = connectionCount >= i 
+              ? Resources.CONNECTIONS.get(direction).get()
+              : Resources.HOLES.get(direction.getOrientation()).get();
+          g.drawImage(connectionImage, connectionOrigin.x, connectionOrigin.y, null);
+        }
+      }
+      
+      g.setColor(Color.WHITE);
+      g.fillOval(origin.x + TILE_PADDING + 2, origin.y + TILE_PADDING + 2, 15, 15);
+      g.setColor(highlighted ? HIGHLIGHT_COLOR : Color.BLACK);
+      g.setFont(DIGIT_FONT);
+      g.drawString("" + connections, origin.x + TILE_PADDING + 5, origin.y + TILE_PADDING + 15);
+    } finally {
+      g.dispose();
+    }
+    return tile;
+  }
+  
+  private Point getConnectionOrigin(Point tileOrigin, Direction direction, boolean second) {
+    Point connectionOrigin = new Point(tileOrigin);
+    if (direction.getOrientation() == Orientation.VERTICAL) {
+      connectionOrigin.x += second ? TILE_SIZE / 2 : TILE_PADDING;
+      connectionOrigin.y += direction == Direction.NORTH ? 0 : (TILE_SIZE - TILE_PADDING);
+    } else {
+      connectionOrigin.y += second ? TILE_SIZE / 2 : TILE_PADDING;
+      connectionOrigin.x += direction == Direction.WEST ? 0 : (TILE_SIZE - TILE_PADDING);
+    }
+    return connectionOrigin;
+  }
+  
+  /**
+   * Composites the image of a cable tile with the given key.
+   */
+  private Image createCableTile(int key) {
+    final int cables = key & 3;
+    final Orientation orientation = (key & (1 << 2)) != 0
+        ? Orientation.VERTICAL : Orientation.HORIZONTAL;
+    final int variant = (key >>> 3) & 0xF;
+    
+    final BufferedImage tile = Resources.createCompatibleImage(TILE_SIZE, TILE_SIZE,
+        Transparency.OPAQUE);
+    final Graphics g = tile.getGraphics();
+    try {
+      g.setColor(BACKGROUND_COLOR);
+      g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+      
+      for (int i = 0; i < cables; i++) {
+        boolean second = i == 1;
+        Point originWithOffset = new Point(0, 0);
+        if (orientation == Orientation.HORIZONTAL) {
+          originWithOffset.y += second ? TILE_SIZE / 2 : TILE_PADDING;
+        } else {
+          originWithOffset.x += second ? TILE_SIZE / 2 : TILE_PADDING;
+        }
+        
+        Image image = Resources.CABLES.get(orientation)[variant].get();
+        g.drawImage(image, originWithOffset.x, originWithOffset.y, null);
+      }
+    } finally {
+      g.dispose();
+    }
+    return tile;
+  }
+
+}
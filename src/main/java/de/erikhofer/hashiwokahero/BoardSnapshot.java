@@ -0,0 +1,155 @@
+package de.erikhofer.hashiwokahero;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * The cells of a {@link PackedBoard} at one point in time, see {@link PackedBoard#snapshot()}. A
+ * snapshot shares the chunks of cells with the board until the board changes them, so taking one
+ * is cheap even for large boards. Snapshots never change, so they can be read and written by other
+ * threads, e.g. to save a game in the background while it is played.
+ *
+ * <p>Snapshots are written in a compact format (all numbers big-endian):
+ * <pre>
+ * int magic ({@link #MAGIC}), int version, int width, int height
+ * cells  runs of empty cable tiles and the cell after each run, both as variable-length ints
+ * </pre>
+ * Variable-length ints use 7 bits per byte, least significant bits first, and set the highest bit
+ * of every byte but the last one. Empty cable tiles are written as 0, so their orientation and
+ * variant are not kept.
+ */
+public class BoardSnapshot {
+  
+  static final int MAGIC = 0x48534e50; // "HSNP"
+  static final int VERSION = 1;
+  
+  private final @Getter int width;
+  private final @Getter int height;
+  private final int chunkSize;
+  private final int[][] chunks;
+  
+  BoardSnapshot(int width, int height, int chunkSize, int[][] chunks) {
+    this.width = width;
+    this.height = height;
+    this.chunkSize = chunkSize;
+    this.chunks = chunks;
+  }
+  
+  public int getSize() {
+    return width * height;
+  }
+  
+  public int get(int index) {
+    final int chunk = index / chunkSize;
+    return chunks[chunk][index - chunk * chunkSize];
+  }
+  
+  int[] getChunk(int chunk) {
+    return chunks[chunk];
+  }
+  
+  /**
+   * Writes this snapshot. Nothing but the output is allocated, so this can be done often.
+   */
+  public void writeTo(@NonNull DataOutput out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(width);
+    out.writeInt(height);
+    int emptyCells = 0;
+    for (int[] chunk : chunks) {
+      for (int cell : chunk) {
+        if (!PackedBoard.isComponentCell(cell) && PackedBoard.getCount(cell) == 0) {
+          emptyCells++;
+        } else {
+          writeVarInt(out, emptyCells);
+          writeVarInt(out, cell);
+          emptyCells = 0;
+        }
+      }
+    }
+    if (emptyCells > 0) {
+      writeVarInt(out, emptyCells);
+    }
+  }
+  
+  /**
+   * Reads a snapshot that was written by {@link #writeTo(DataOutput)}. Chunks are only allocated
+   * when a cell in them isn't an empty cable tile, so the memory that is needed depends on the
+   * cells in the input and not only on the size in its header.
+   */
+  public static BoardSnapshot readFrom(@NonNull DataInput in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a board snapshot!");
+    }
+    final int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported version of board snapshot: " + version);
+    }
+    final int width = in.readInt();
+    final int height = in.readInt();
+    if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+      throw new IOException("Invalid size of board snapshot: " + width + "x" + height);
+    }
+    
+    final int size = width * height;
+    final int chunkSize = PackedBoard.getChunkSize(width);
+    final int[][] chunks = new int[(size - 1) / chunkSize + 1][];
+    int index = 0;
+    while (index < size) {
+      index += readVarInt(in);
+      if (index < 0 || index > size) {
+        throw new IOException("The board snapshot is corrupt!");
+      }
+      if (index < size) {
+        final int chunk = index / chunkSize;
+        if (chunks[chunk] == null) {
+          chunks[chunk] = new int[Math.min(chunkSize, size - chunk * chunkSize)];
+        }
+        chunks[chunk][index - chunk * chunkSize] = readVarInt(in);
+        index++;
+      }
+    }
+    
+    // snapshots never change, so the full chunks without cells can share one array
+    int[] emptyChunk = null;
+    for (int chunk = 0; chunk < chunks.length; chunk++) {
+      if (chunks[chunk] == null) {
+        final int chunkLength = Math.min(chunkSize, size - chunk * chunkSize);
+        if (chunkLength < chunkSize) {
+          chunks[chunk] = new int[chunkLength];
+        } else {
+          if (emptyChunk == null) {
+            emptyChunk = new int[chunkSize];
+          }
+          chunks[chunk] = emptyChunk;
+        }
+      }
+    }
+    return new BoardSnapshot(width, height, chunkSize, chunks);
+  }
+  
+  private static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte(value & 0x7F | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+  
+  private static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+      final int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("The board snapshot is corrupt!");
+  }
+
+}
@@ -30,8 +30,8 @@ public class CableTile extends Tile {
    */
   public CableTile(CableTile cableTile) {
     super(cableTile);
-    cables = cableTile.cables;
-    orientation = cableTile.orientation;
+    cables = cableTile.getCables();
+    orientation = cableTile.getOrientation();
   }
   
   public void setCables(int cables) {
@@ -43,8 +43,8 @@ public class CableTile extends Tile {
    * Removes one cable from this tile if possible.
    */
   public void decreaseCables() {
-    if (cables > 0) {
-      cables--;
+    if (getCables() > 0) {
+      setCables(getCables() - 1);
     }
   }
   
@@ -52,8 +52,8 @@ public class CableTile extends Tile {
    * Adds one cable to this tile if possible.
    */
   public void increaseCables() {
-    if (cables < 2) {
-      cables++;
+    if (getCables() < 2) {
+      setCables(getCables() + 1);
     }
   }
 
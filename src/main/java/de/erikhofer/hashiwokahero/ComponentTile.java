@@ -15,8 +15,8 @@ public class ComponentTile extends Tile {
    */
   public ComponentTile(ComponentTile componentTile) {
     super(componentTile);
-    connections = componentTile.connections;
-    correctlyConnected = componentTile.correctlyConnected;
+    connections = componentTile.getConnections();
+    correctlyConnected = componentTile.isCorrectlyConnected();
   }
   
 }
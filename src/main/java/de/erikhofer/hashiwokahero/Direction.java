@@ -7,10 +7,10 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public enum Direction {
   
-  NORTH(Orientation.VERTICAL),
-  EAST(Orientation.HORIZONTAL),
-  SOUTH(Orientation.VERTICAL),
-  WEST(Orientation.HORIZONTAL);
+  NORTH(Orientation.VERTICAL, -1, 0),
+  EAST(Orientation.HORIZONTAL, 0, 1),
+  SOUTH(Orientation.VERTICAL, 1, 0),
+  WEST(Orientation.HORIZONTAL, 0, -1);
   
   /**
    * Returns a list of all direction with the given orientation.
@@ -26,6 +26,23 @@ public enum Direction {
     return builder.build();
   }
   
+  /**
+   * Returns the direction that points the other way.
+   */
+  public Direction getOpposite() {
+    return values()[(ordinal() + 2) % values().length];
+  }
+  
   private final @Getter Orientation orientation;
+  
+  /**
+   * Row difference of the adjacent tile in this direction.
+   */
+  private final @Getter int rowOffset;
+  
+  /**
+   * Column difference of the adjacent tile in this direction.
+   */
+  private final @Getter int colOffset;
 
 }
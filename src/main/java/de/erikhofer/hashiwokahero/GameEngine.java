@@ -1,19 +1,50 @@
 package de.erikhofer.hashiwokahero;
 
+import de.erikhofer.hashiwokahero.metrics.FrameMetrics;
+import de.erikhofer.hashiwokahero.metrics.Metrics;
+import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Image;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.ObjectName;
 
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 
 public class GameEngine {
   
+  /**
+   * When the engine renders frames.
+   */
+  public enum FrameScheduling {
+    
+    /**
+     * Frames are rendered continuously at the configured rate. Needed for animations.
+     */
+    FIXED_RATE,
+    
+    /**
+     * Frames are only rendered after {@link GameEngine#invalidate()} was called, at most at the
+     * configured rate. The engine thread is parked while there is nothing to do.
+     */
+    ON_DEMAND
+  }
+  
   public interface MainLoop {
     
     /**
      * Advances the game state.
      * 
-     * @param period time in ms that passes during this update
+     * @param period time in ms that passes during this update, which is the time since the previous
+     *     frame when frames are rendered on demand
      */
     void update(long period);
     
@@ -28,26 +59,65 @@ public class GameEngine {
      * Paints the next frame. Must be synchronous so that the time taken can be measured.
      */
     void paint(Image buffer);
+    
+    /**
+     * Called before rendering into a new buffer, e.g. because its size changed. The content of the
+     * previous buffer is lost.
+     */
+    default void bufferCreated(int width, int height) {}
   }
 
   /**
    * Max count of successive frames without sleep or yield.
    */
   private static final int MAX_FRAMES_WITHOUT_YIELD = 5;
-
+  
+  /**
+   * Time in ms from the start of the JVM until the first frame of any engine was painted or -1.
+   */
+  private static final AtomicLong timeToFirstFrame = new AtomicLong(-1);
+  
+  private static final AtomicInteger engineCount = new AtomicInteger();
+  
   private int framesWithoutYield;
 
   private final MainLoop mainLoopDelegate;
-  private Thread mainLoopThread;
+  private volatile Thread mainLoopThread;
   private volatile boolean running;
 
   /** Time per frame in ms. */
   private long period;
-
+  
+  /** Time per frame in ns. */
+  private volatile long periodNanos;
+  
+  /**
+   * Must be set before the engine is started.
+   */
+  private @Getter @Setter @NonNull FrameScheduling frameScheduling = FrameScheduling.FIXED_RATE;
+  
+  /**
+   * Whether a frame was requested by {@link #invalidate()} since the last one was rendered. Several
+   * requests before the next frame are coalesced.
+   */
+  private final AtomicBoolean frameRequested = new AtomicBoolean();
+  
+  /**
+   * Time in ms from the last call of {@link #start()} until the first frame was painted or -1.
+   */
+  private volatile @Getter long startToFirstFrame = -1;
+  private long startTime;
+  
   private BufferedImage buffer;
-  private int bufferWidth;
-  private int bufferHeight;
-
+  private volatile Dimension bufferSize = new Dimension(1, 1);
+  
+  /**
+   * The durations of the frames. They are exported over JMX while the engine is running.
+   */
+  private final @Getter FrameMetrics metrics = new FrameMetrics();
+  private final String metricsName = "engine-" + engineCount.incrementAndGet();
+  private ObjectName metricsObjectName;
+  
   /**
    * Creates a game engine with a default of 30 frames per second.
    */
@@ -62,7 +132,12 @@ public class GameEngine {
   public synchronized void start() {
     if (mainLoopThread == null || !running) {
       running = true;
-      mainLoopThread = new Thread(this::mainLoop);
+      frameRequested.set(true); // the first frame
+      mainLoopThread = new Thread(frameScheduling == FrameScheduling.ON_DEMAND
+          ? this::onDemandLoop : this::mainLoop);
+      startTime = System.nanoTime();
+      startToFirstFrame = -1;
+      metricsObjectName = Metrics.register(metrics, "GameEngine", metricsName);
       mainLoopThread.start();
     }
   }
@@ -72,59 +147,147 @@ public class GameEngine {
    */
   public synchronized void stop() {
     running = false;
+    LockSupport.unpark(mainLoopThread);
+    if (metricsObjectName != null) {
+      Metrics.unregister(metricsObjectName);
+      metricsObjectName = null;
+    }
   }
-
+  
+  /**
+   * Requests a frame and wakes up the main loop if it is waiting. Frames rendered on demand are
+   * only rendered after this. Has no visible effect in FIXED_RATE mode, where the next frame is
+   * rendered anyway. May be called from any thread.
+   */
+  public void invalidate() {
+    if (!frameRequested.getAndSet(true)) {
+      LockSupport.unpark(mainLoopThread);
+    }
+  }
+  
   protected void mainLoop() {
     
+    long nextFrameTime = System.nanoTime();
     while (running) {
-
-      final long startTime = System.currentTimeMillis();
-
-      // update
-      mainLoopDelegate.update(period);
-
-      // render
-      if (buffer == null) {
-        buffer = new BufferedImage(bufferWidth, bufferHeight, BufferedImage.TYPE_INT_RGB);
-      }
-      mainLoopDelegate.render(buffer.getGraphics());
-
-      // paint
-      mainLoopDelegate.paint(buffer);
-
+      
+      nextFrameTime += periodNanos;
+      renderFrame(period);
+      
       // pause
-      final long elapsedTime = System.currentTimeMillis() - startTime;
-      final long sleepTime = period - elapsedTime;
+      final long sleepTime = nextFrameTime - System.nanoTime();
       if (sleepTime > 0) {
-        try {
-          Thread.sleep(sleepTime);
-        } catch (InterruptedException e) {
-          // ignore
-        }
+        parkUntil(nextFrameTime);
         framesWithoutYield = 0;
       } else { // eventually force a yield
+        metrics.recordOverrun();
+        nextFrameTime = System.nanoTime(); // don't try to catch up
         framesWithoutYield++;
         if (framesWithoutYield > MAX_FRAMES_WITHOUT_YIELD) {
           Thread.yield();
+          metrics.recordForcedYield();
           framesWithoutYield = 0;
         }
       }
     }
   }
-
+  
+  /**
+   * Renders a frame whenever one was requested and parks the thread otherwise. Frames are rendered
+   * at most at the configured rate.
+   */
+  protected void onDemandLoop() {
+    
+    long lastFrameTime = System.nanoTime() - periodNanos;
+    while (running) {
+      
+      if (!frameRequested.getAndSet(false)) {
+        LockSupport.park(this); // until invalidate() or stop()
+        continue;
+      }
+      
+      // pace bursts of requests
+      final long frameTime = lastFrameTime + periodNanos;
+      if (frameTime - System.nanoTime() > 0) {
+        parkUntil(frameTime);
+      }
+      
+      final long startTime = System.nanoTime();
+      if (renderFrame(TimeUnit.NANOSECONDS.toMillis(startTime - lastFrameTime)) > periodNanos) {
+        metrics.recordOverrun();
+      }
+      lastFrameTime = startTime;
+    }
+  }
+  
+  /**
+   * Updates, renders and paints a frame and records the durations.
+   *
+   * @return the time the frame took in ns
+   */
+  private long renderFrame(long elapsedTime) {
+    // update
+    final long updateStart = System.nanoTime();
+    mainLoopDelegate.update(elapsedTime);
+    
+    // render
+    final long renderStart = System.nanoTime();
+    final Dimension size = bufferSize;
+    if (buffer == null || buffer.getWidth() != size.width || buffer.getHeight() != size.height) {
+      buffer = Resources.createCompatibleImage(size.width, size.height, Transparency.OPAQUE);
+      mainLoopDelegate.bufferCreated(size.width, size.height);
+    }
+    mainLoopDelegate.render(buffer.getGraphics());
+    
+    // paint
+    final long paintStart = System.nanoTime();
+    mainLoopDelegate.paint(buffer);
+    final long paintEnd = System.nanoTime();
+    metrics.recordFrame(renderStart - updateStart, paintStart - renderStart, paintEnd - paintStart);
+    
+    if (startToFirstFrame < 0) {
+      startToFirstFrame = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+      timeToFirstFrame.compareAndSet(-1, ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+    return paintEnd - updateStart;
+  }
+  
+  /**
+   * Parks the current thread until the given {@link System#nanoTime()}. Spurious wake-ups are
+   * handled, but a call to {@link #stop()} ends the wait early.
+   */
+  private void parkUntil(long time) {
+    long remaining = time - System.nanoTime();
+    while (remaining > 0 && running) {
+      LockSupport.parkNanos(this, remaining);
+      remaining = time - System.nanoTime();
+    }
+  }
+  
+  /**
+   * Sets the frames per second. When frames are rendered on demand, this is the maximum.
+   */
   public void setFps(int fps) {
     period = (long) (1000.0 / fps + 0.5);
+    periodNanos = (long) (1e9 / fps + 0.5);
   }
   
   /**
-   * Sets the size of the buffer image in px.
+   * Sets the size of the buffer image in px. May be called while the engine is running.
    */
   public void setBufferSize(int width, int height) {
-    bufferWidth = width;
-    bufferHeight = height;
-    buffer = null; // create new buffer
+    // the buffer is created again before the next frame
+    bufferSize = new Dimension(Math.max(width, 1), Math.max(height, 1));
+    invalidate();
   }
-
+  
+  /**
+   * Returns the time in ms from the start of the JVM until the first frame of any engine was
+   * painted or -1 if no frame was painted yet. This includes loading the resources.
+   */
+  public static long getTimeToFirstFrame() {
+    return timeToFirstFrame.get();
+  }
+  
   public synchronized boolean isRunning() {
     return running;
   }
@@ -1,106 +1,308 @@
 package de.erikhofer.hashiwokahero;
 
-import com.google.common.collect.ImmutableList;
+import static com.google.common.base.Preconditions.checkState;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import lombok.Getter;
+import lombok.NonNull;
 
+/**
+ * The board of a running game and its solution.
+ *
+ * <p>The state keeps track of how many cables every component is still missing and of which
+ * components are connected with each other, so the solution can be verified without scanning the
+ * board. Cables therefore have to be changed through this class and not through tile views.
+ *
+ * <p>Every change of the cables by the player is recorded in a {@link MoveLog}, so it can be
+ * undone and redone by changing only the tiles of that cable.
+ */
 public class GameState {
   
-  private @Getter Tile[][] board;
-  private final Tile[][] solution;
+  private static final int NO_COMPONENT = -1;
+  
+  /**
+   * Returned instead of a move if nothing was changed.
+   */
+  public static final int NO_MOVE = -1;
+  
+  private final @Getter PackedBoard board;
+  
+  /**
+   * The board that was generated. It must not be modified.
+   */
+  private final @Getter PackedBoard solution;
   private final @Getter int boardWidth;
   private final @Getter int boardHeight;
-  private final @Getter ImmutableList<TilePosition> allTilePositions;
   private final Random random = new Random();
   
+  /**
+   * The number of the component on each board index or -1. Components are numbered in index
+   * order.
+   */
+  private final int[] componentAt;
+  private final int[] componentIndexes;
+  
+  /**
+   * The next component to the east and to the south of each component or -1. Cables can only lead
+   * to these.
+   */
+  private final int[] eastNeighbours;
+  private final int[] southNeighbours;
+  
+  /**
+   * The number of cables each component is missing. This is negative if it has too many.
+   */
+  private final int[] deficits;
+  private int wronglyConnectedComponents;
+  
+  /**
+   * The components that are connected by cables. Removing the last cable between two components
+   * can split a set, so the sets are only rebuilt when they are needed again.
+   */
+  private final UnionFind connectedComponents;
+  private boolean connectedComponentsOutdated;
+  
+  private final @Getter MoveLog moveLog = new MoveLog();
+  
   /**
    * Creates a game state with a randomly generated board with the given number of components.
    */
   public GameState(int components) {
-    this(new BoardGenerator().generateBoard(components));
+    this(new BoardGenerator().generatePackedBoard(components));
   }
   
   /**
    * Creates a new game state based on the given solution.
    */
   public GameState(Tile[][] solution) {
+    this(PackedBoard.fromTiles(solution));
+  }
+  
+  /**
+   * Creates a new game state based on the given solution. The components of the solution are
+   * marked as correctly connected.
+   */
+  public GameState(PackedBoard solution) {
     this.solution = solution;
-    boardHeight = solution.length;
-    boardWidth = solution[0].length;
-    
-    // cache a list of all tile positions
-    ImmutableList.Builder<TilePosition> allTilePositionsBuilder = 
-        ImmutableList.builderWithExpectedSize(boardHeight * boardWidth);
-    for (int row = 0; row < boardHeight; row++) {
-      for (int col = 0; col < boardWidth; col++) {
-        allTilePositionsBuilder.add(new TilePosition(row, col));
+    boardHeight = solution.getHeight();
+    boardWidth = solution.getWidth();
+    // the flags of the board are then the same as in the solution when it is shown, so showing it
+    // doesn't copy the cells
+    for (int index = 0; index < solution.getSize(); index++) {
+      if (solution.isComponent(index)) {
+        solution.setCorrectlyConnected(index, true);
       }
     }
-    allTilePositions = allTilePositionsBuilder.build();
+    board = new PackedBoard(solution);
+    
+    componentAt = new int[board.getSize()];
+    int components = 0;
+    for (int index = 0; index < board.getSize(); index++) {
+      componentAt[index] = board.isComponent(index) ? components++ : NO_COMPONENT;
+    }
+    componentIndexes = new int[components];
+    eastNeighbours = new int[components];
+    southNeighbours = new int[components];
+    findNeighbours();
+    deficits = new int[components];
+    connectedComponents = new UnionFind(components);
     
     setBoardToSolution(true);
   }
   
-  private void setBoardToSolution(boolean removeCables) {
-    board = new Tile[boardHeight][boardWidth]; 
+  private void findNeighbours() {
+    final int[] lastInCol = new int[boardWidth];
+    Arrays.fill(lastInCol, NO_COMPONENT);
     for (int row = 0; row < boardHeight; row++) {
+      int lastInRow = NO_COMPONENT;
       for (int col = 0; col < boardWidth; col++) {
-        Tile solutionTile = solution[row][col];
-        if (solutionTile instanceof ComponentTile) {
-          board[row][col] = new ComponentTile((ComponentTile) solutionTile);
-        } else if (solutionTile instanceof CableTile) {
-          CableTile boardTile = new CableTile((CableTile) solutionTile);
-          if (removeCables) {
-            boardTile.setCables(0);
-          }
-          board[row][col] = boardTile;
-        } else {
-          throw new RuntimeException("Unknown tile type!");
+        final int index = board.getIndex(row, col);
+        final int component = componentAt[index];
+        if (component == NO_COMPONENT) {
+          continue;
+        }
+        componentIndexes[component] = index;
+        eastNeighbours[component] = NO_COMPONENT;
+        southNeighbours[component] = NO_COMPONENT;
+        if (lastInRow != NO_COMPONENT) {
+          eastNeighbours[lastInRow] = component;
+        }
+        if (lastInCol[col] != NO_COMPONENT) {
+          southNeighbours[lastInCol[col]] = component;
+        }
+        lastInRow = component;
+        lastInCol[col] = component;
+      }
+    }
+  }
+  
+  private void setBoardToSolution(boolean removeCables) {
+    board.copyFrom(solution);
+    if (removeCables) {
+      for (int index = 0; index < board.getSize(); index++) {
+        if (board.isCable(index)) {
+          board.setCables(index, 0);
         }
       }
     }
+    
+    wronglyConnectedComponents = 0;
+    for (int component = 0; component < deficits.length; component++) {
+      final int index = componentIndexes[component];
+      deficits[component] = board.getConnections(index) - getAdjacentCableCount(index);
+      board.setCorrectlyConnected(index, deficits[component] == 0);
+      if (deficits[component] != 0) {
+        wronglyConnectedComponents++;
+      }
+    }
+    connectedComponentsOutdated = true;
   }
   
+  /**
+   * Shows the solution. The board shares the cells with the solution until they are changed, so
+   * this doesn't copy the board. The moves that were made so far can't be undone afterwards.
+   */
   public void setBoardToSolution() {
     setBoardToSolution(false);
+    moveLog.clear();
+  }
+  
+  /**
+   * Returns the current board, e.g. to restore it later or to save the game in the background.
+   * This takes constant time, the cells are only copied when they are changed.
+   */
+  public BoardSnapshot snapshot() {
+    return board.snapshot();
+  }
+  
+  /**
+   * Replaces the board with the given snapshot of a board of this game. Only the chunks of the
+   * board that differ are replaced and only the components in and next to them are updated. The
+   * moves that were made so far can't be undone afterwards.
+   *
+   * @throws IllegalArgumentException if the snapshot has other components
+   */
+  public void restore(@NonNull BoardSnapshot snapshot) {
+    final BoardSnapshot previous = board.snapshot();
+    final BitSet replacedChunks = board.restore(snapshot);
+    final int chunkRows = board.getChunkRows();
+    for (int chunk = replacedChunks.nextSetBit(0); chunk >= 0;
+        chunk = replacedChunks.nextSetBit(chunk + 1)) {
+      final int fromIndex = chunk * chunkRows * boardWidth;
+      final int toIndex = Math.min(fromIndex + chunkRows * boardWidth, board.getSize());
+      for (int index = fromIndex; index < toIndex; index++) {
+        final boolean component = componentAt[index] != NO_COMPONENT;
+        if (board.isComponent(index) != component
+            || component && board.getConnections(index) != solution.getConnections(index)) {
+          board.restore(previous);
+          throw new IllegalArgumentException("The snapshot belongs to another game!");
+        }
+      }
+    }
+    
+    for (int chunk = replacedChunks.nextSetBit(0); chunk >= 0;
+        chunk = replacedChunks.nextSetBit(chunk + 1)) {
+      // cables next to a component can be in the rows of the chunks before and after
+      final int fromRow = Math.max(chunk * chunkRows - 1, 0);
+      final int toRow = Math.min((chunk + 1) * chunkRows, boardHeight - 1);
+      for (int index = board.getIndex(fromRow, 0); index < board.getIndex(toRow + 1, 0);
+          index++) {
+        if (componentAt[index] != NO_COMPONENT) {
+          updateDeficit(componentAt[index]);
+        }
+      }
+    }
+    connectedComponentsOutdated = true;
+    moveLog.clear();
+  }
+  
+  /**
+   * Counts the cables of the given component again.
+   */
+  private void updateDeficit(int component) {
+    final int index = componentIndexes[component];
+    final int deficit = board.getConnections(index) - getAdjacentCableCount(index);
+    if ((deficit == 0) != (deficits[component] == 0)) {
+      wronglyConnectedComponents += deficit == 0 ? -1 : 1;
+    }
+    deficits[component] = deficit;
+    board.setCorrectlyConnected(index, deficit == 0);
   }
   
   /**
-   * Checks if the current board is solved correctly. Calls
-   * {@link ComponentTile#setCorrectlyConnected(boolean)} on all components accordingly.
-   * 
+   * Checks if the current board is solved correctly, i.e. every component has as many cables as
+   * connections and all components are connected with each other. The correctly connected flags of
+   * the components are always kept up to date, so this doesn't need to scan the board.
+   *
    * @return whether the board is solved correctly
    */
   public boolean verifySolution() {
     // We can't simply compare the current board to the saved solution because there could be more
-    // than one.
-    
-    boolean allComponentsCorrectlyConnected = true;
-    for (TilePosition tilePosition : allTilePositions) {
-      if (!isComponentTile(tilePosition)) {
-        continue;
-      }
-      final ComponentTile componentTile = getTileAtPosition(tilePosition);
-      final boolean correctlyConnected = getAdjacentCableCount(tilePosition)
-          == componentTile.getConnections();
-      componentTile.setCorrectlyConnected(correctlyConnected);
-      if (!correctlyConnected) {
-        allComponentsCorrectlyConnected = false;
+    // than one (unless the board comes from a UniqueBoardGenerator).
+    return wronglyConnectedComponents == 0 && areAllComponentsConnected();
+  }
+  
+  /**
+   * Returns whether all components are connected with each other by cables. This only takes time
+   * if a connection between two components was removed since the last call.
+   */
+  public boolean areAllComponentsConnected() {
+    if (connectedComponentsOutdated) {
+      connectedComponents.reset();
+      for (int component = 0; component < componentIndexes.length; component++) {
+        final int index = componentIndexes[component];
+        if (eastNeighbours[component] != NO_COMPONENT
+            && hasCables(index + 1, Orientation.HORIZONTAL)) {
+          connectedComponents.union(component, eastNeighbours[component]);
+        }
+        if (southNeighbours[component] != NO_COMPONENT
+            && hasCables(index + boardWidth, Orientation.VERTICAL)) {
+          connectedComponents.union(component, southNeighbours[component]);
+        }
       }
+      connectedComponentsOutdated = false;
+    }
+    return connectedComponents.getSets() <= 1;
+  }
+  
+  private boolean hasCables(int index, Orientation orientation) {
+    return board.getCables(index) > 0 && board.getOrientation(index) == orientation;
+  }
+  
+  /**
+   * Changes the number of cables of the given component and updates its correctly connected flag.
+   */
+  private void changeCables(int component, int change) {
+    final boolean wasCorrectlyConnected = deficits[component] == 0;
+    deficits[component] -= change;
+    final boolean correctlyConnected = deficits[component] == 0;
+    if (correctlyConnected != wasCorrectlyConnected) {
+      board.setCorrectlyConnected(componentIndexes[component], correctlyConnected);
+      wronglyConnectedComponents += correctlyConnected ? -1 : 1;
     }
-    
-    return allComponentsCorrectlyConnected;
   }
   
-  private int getAdjacentCableCount(TilePosition tilePosition) {
+  /**
+   * Counts the cables that lead into the given tile. Cables that only pass by are not counted.
+   */
+  private int getAdjacentCableCount(int index) {
+    final int row = board.getRow(index);
+    final int col = board.getCol(index);
     int cables = 0;
     for (Direction direction: Direction.values()) {
-      TilePosition adjacentTilePosition = tilePosition.getAdjacent(direction);
-      if (!isOutOfBoardBounds(adjacentTilePosition) && isCableTile(adjacentTilePosition)) {
-        cables += this.<CableTile>getTileAtPosition(adjacentTilePosition).getCables();
+      final int adjacentRow = row + direction.getRowOffset();
+      final int adjacentCol = col + direction.getColOffset();
+      if (board.isInBounds(adjacentRow, adjacentCol)) {
+        final int adjacentIndex = board.getIndex(adjacentRow, adjacentCol);
+        if (board.isCable(adjacentIndex)
+            && board.getOrientation(adjacentIndex) == direction.getOrientation()) {
+          cables += board.getCables(adjacentIndex);
+        }
       }
     }
     return cables;
@@ -110,89 +312,250 @@ public class GameState {
    * Returns whether the given tile position is outside of the board.
    */
   public boolean isOutOfBoardBounds(TilePosition tilePosition) {
-    return tilePosition.getRow() < 0
-        || tilePosition.getCol() < 0
-        || tilePosition.getRow() >= boardHeight
-        || tilePosition.getCol() >= boardWidth;
+    return !board.isInBounds(tilePosition.getRow(), tilePosition.getCol());
   }
-
+  
   public boolean isComponentTile(TilePosition tilePosition) {
-    return getTileAtPosition(tilePosition) instanceof ComponentTile;
+    return isComponentTile(tilePosition.getRow(), tilePosition.getCol());
   }
-
+  
+  public boolean isComponentTile(int row, int col) {
+    return board.isComponent(board.getIndex(row, col));
+  }
+  
   public boolean isCableTile(TilePosition tilePosition) {
-    return getTileAtPosition(tilePosition) instanceof CableTile;
+    return isCableTile(tilePosition.getRow(), tilePosition.getCol());
   }
-
-  @SuppressWarnings("unchecked")
+  
+  public boolean isCableTile(int row, int col) {
+    return board.isCable(board.getIndex(row, col));
+  }
+  
   public <T extends Tile> T getTileAtPosition(TilePosition tilePosition) {
-    return (T) board[tilePosition.getRow()][tilePosition.getCol()];
+    return getTileAtPosition(tilePosition.getRow(), tilePosition.getCol());
   }
-
+  
+  /**
+   * Returns a view of the tile at the given position. Changes to the tile are applied to the board.
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends Tile> T getTileAtPosition(int row, int col) {
+    return (T) board.getTile(board.getIndex(row, col));
+  }
+  
   /**
    * Adds a cable between the given components, if possible.
    */
   public void tryToAddCableBetweenComponents(TilePosition component1, TilePosition component2) {
-    Direction relativeDirection = component1.getDirectionRelativeTo(component2);
+    final Direction relativeDirection = component1.getDirectionRelativeTo(component2);
     if (relativeDirection == null) {
       return;
     }
+    final int move = addCable(board.getIndex(component2.getRow(), component2.getCol()),
+        relativeDirection);
+    if (move != NO_MOVE) {
+      moveLog.record(move);
+    }
+  }
+  
+  /**
+   * Adds a cable from the component at the given index to the next component in the given
+   * direction, if possible.
+   *
+   * @return the move or {@link #NO_MOVE} if no cable was added
+   */
+  private int addCable(int componentIndex, Direction direction) {
+    final Orientation orientation = direction.getOrientation();
+    final int step = board.getIndexOffset(direction);
+    final int start = componentIndex + step;
     
-    TilePosition current = component2.getAdjacent(relativeDirection);
-    List<CableTile> cableTiles = new ArrayList<>();
-    while (isCableTile(current)) {
-      CableTile cableTile = getTileAtPosition(current);
-      if (cableTile.getCables() == 2 || (cableTile.getCables() > 0 
-          && cableTile.getOrientation() != relativeDirection.getOrientation())) {
-        return; // there are already 2 cables or there is a crossing cable
+    int end = start;
+    while (board.isCable(end)) {
+      final int cables = board.getCables(end);
+      if (cables == 2 || (cables > 0 && board.getOrientation(end) != orientation)) {
+        return NO_MOVE; // there are already 2 cables or there is a crossing cable
       }
-      cableTiles.add(cableTile);
-      current = current.getAdjacent(relativeDirection);
+      end += step;
+    }
+    if (end == start) {
+      return NO_MOVE; // the components are next to each other
     }
     
+    final boolean firstCable = board.getCables(start) == 0;
     final int randomVariant = random.nextInt(Resources.getNumberOfCableVariants());
     
-    cableTiles.forEach(cableTile -> {
-      if (cableTile.getCables() == 0) {
-        cableTile.setVariant(randomVariant);
+    for (int index = start; index != end; index += step) {
+      final int cables = board.getCables(index);
+      int cell = PackedBoard.withCount(board.get(index), cables + 1);
+      if (cables == 0) {
+        cell = PackedBoard.withVariant(cell, randomVariant);
       }
-      cableTile.increaseCables();
-      cableTile.setOrientation(relativeDirection.getOrientation());
-    });
+      board.set(index, PackedBoard.withOrientation(cell, orientation));
+    }
+    
+    final int firstComponent = componentAt[componentIndex];
+    final int lastComponent = componentAt[end];
+    changeCables(firstComponent, 1);
+    changeCables(lastComponent, 1);
+    if (firstCable && !connectedComponentsOutdated) {
+      connectedComponents.union(firstComponent, lastComponent);
+    }
+    return MoveLog.move(Math.min(componentIndex, end), orientation, false);
   }
-
+  
+  /**
+   * Removes one cable from the cable(s) on the given tile position, if there are any.
+   */
+  public void removeCable(TilePosition tilePosition) {
+    final int move = removeCable(board.getIndex(tilePosition.getRow(), tilePosition.getCol()));
+    if (move != NO_MOVE) {
+      moveLog.record(move);
+    }
+  }
+  
+  /**
+   * Removes one cable from the cable(s) on the tile with the given index, if there are any.
+   *
+   * @return the move or {@link #NO_MOVE} if no cable was removed
+   */
+  private int removeCable(int index) {
+    if (board.isComponent(index) || board.getCables(index) == 0) {
+      return NO_MOVE;
+    }
+    
+    final Orientation orientation = board.getOrientation(index);
+    final List<Direction> directions = Direction.forOrientation(orientation);
+    final int backward = board.getIndexOffset(directions.get(0));
+    final int forward = board.getIndexOffset(directions.get(1));
+    int start = index;
+    while (board.isCable(start + backward)) { // this can't be out of bounds
+      start += backward;
+    }
+    int end = start;
+    for (; board.isCable(end); end += forward) {
+      board.setCables(end, board.getCables(end) - 1);
+    }
+    
+    changeCables(componentAt[start + backward], -1);
+    changeCables(componentAt[end], -1);
+    if (board.getCables(index) == 0) {
+      connectedComponentsOutdated = true;
+    }
+    return MoveLog.move(Math.min(start + backward, end), orientation, true);
+  }
+  
+  /**
+   * Reverts the last move that wasn't undone yet.
+   *
+   * @return the move that was undone or {@link #NO_MOVE} if there is none
+   */
+  public int undo() {
+    if (!moveLog.canUndo()) {
+      return NO_MOVE;
+    }
+    final int move = moveLog.undo();
+    checkState(applyMove(MoveLog.invert(move)), "The move log doesn't match the board!");
+    return move;
+  }
+  
+  /**
+   * Makes the last move that was undone again.
+   *
+   * @return the move that was redone or {@link #NO_MOVE} if there is none
+   */
+  public int redo() {
+    if (!moveLog.canRedo()) {
+      return NO_MOVE;
+    }
+    final int move = moveLog.redo();
+    checkState(applyMove(move), "The move log doesn't match the board!");
+    return move;
+  }
+  
+  /**
+   * Makes the moves of the given log that are applied, e.g. to rebuild a game from a saved log,
+   * and records them. Moves that aren't possible on the current board are skipped.
+   *
+   * @return the number of moves that were made
+   */
+  public int replay(@NonNull MoveLog log) {
+    int applied = 0;
+    for (int i = 0; i < log.getPosition(); i++) {
+      if (makeMove(log.get(i))) {
+        applied++;
+      }
+    }
+    return applied;
+  }
+  
+  /**
+   * Makes the given move and records it, e.g. a move of a client. The move is checked first, see
+   * {@link MoveLog#move(int, Orientation, boolean)}.
+   *
+   * @return whether the move was possible
+   */
+  public boolean makeMove(int move) {
+    if (!applyMove(move)) {
+      return false;
+    }
+    moveLog.record(move);
+    return true;
+  }
+  
+  /**
+   * Makes the given move without recording it. The move is checked first, so moves from any log
+   * can be made safely.
+   *
+   * @return whether the move was possible
+   */
+  private boolean applyMove(int move) {
+    final int index = MoveLog.getComponentIndex(move);
+    if (index >= board.getSize() || componentAt[index] == NO_COMPONENT) {
+      return false;
+    }
+    final boolean vertical = MoveLog.getOrientation(move) == Orientation.VERTICAL;
+    final int neighbour = vertical ? southNeighbours[componentAt[index]]
+        : eastNeighbours[componentAt[index]];
+    if (neighbour == NO_COMPONENT) {
+      return false;
+    }
+    
+    final Direction direction = vertical ? Direction.SOUTH : Direction.EAST;
+    if (!MoveLog.isRemoval(move)) {
+      return addCable(index, direction) != NO_MOVE;
+    }
+    final int cableIndex = index + board.getIndexOffset(direction);
+    if (cableIndex == componentIndexes[neighbour]
+        || board.getOrientation(cableIndex) != direction.getOrientation()) {
+      return false;
+    }
+    return removeCable(cableIndex) != NO_MOVE;
+  }
+  
   /**
    * Returns all tile position that are belong to the same cable(s) as the given one or an empty
    * list if there is no cable on the given tile.
    */
   public List<CableTile> getFullCable(TilePosition tilePosition) {
     
-    final CableTile cableTile = getTileAtPosition(tilePosition);
-    if (cableTile.getCables() == 0) {
+    final int index = board.getIndex(tilePosition.getRow(), tilePosition.getCol());
+    if (board.getCables(index) == 0) {
       return Collections.emptyList();
     }
     
     // look for the start in one direction
-    final List<Direction> directions = Direction.forOrientation(cableTile.getOrientation());
-    TilePosition start = tilePosition;
-    while (true) {
-      final TilePosition next = start.getAdjacent(directions.get(0));
-      if (!isCableTile(next)) { // this can't be out of bounds
-        break;
-      }
-      start = next;
+    final List<Direction> directions = Direction.forOrientation(board.getOrientation(index));
+    final int backward = board.getIndexOffset(directions.get(0));
+    final int forward = board.getIndexOffset(directions.get(1));
+    int start = index;
+    while (board.isCable(start + backward)) { // this can't be out of bounds
+      start += backward;
     }
     
     // add tiles in the other direction
     final List<CableTile> fullCable = new ArrayList<>();
-    TilePosition current = start;
-    while (true) {
-      fullCable.add(getTileAtPosition(current));
-      final TilePosition next = current.getAdjacent(directions.get(1));
-      if (!isCableTile(next)) { // this can't be out of bounds
-        break;
-      }
-      current = next;
+    for (int current = start; board.isCable(current); current += forward) {
+      fullCable.add((CableTile) board.getTile(current));
     }
     
     return fullCable;
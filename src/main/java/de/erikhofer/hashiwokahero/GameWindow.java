@@ -1,33 +1,78 @@
 package de.erikhofer.hashiwokahero;
 
+import de.erikhofer.hashiwokahero.metrics.FrameMetrics;
+import de.erikhofer.hashiwokahero.metrics.HistogramSummary;
+import de.erikhofer.hashiwokahero.solver.Hint;
+import de.erikhofer.hashiwokahero.solver.HintEngine;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.GridLayout;
 import java.awt.Image;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import javax.swing.AbstractAction;
 import javax.swing.JButton;
+import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.KeyStroke;
 
+/**
+ * The window of a running game. Only the visible part of the board is rendered into a buffer of
+ * the size of the canvas, so the memory needed doesn't depend on the size of the board.
+ *
+ * <p>The view is scrolled with the mouse wheel (horizontally with shift) or by dragging, and zoomed
+ * with the mouse wheel while control is pressed. Zoomed out tiles are drawn from smaller
+ * prerendered versions and finally as single colors. Moves are undone with control + Z and redone
+ * with control + Y. F3 shows the frame times in the top left corner.
+ */
 public class GameWindow extends JFrame implements GameEngine.MainLoop, MouseListener,
-    MouseMotionListener {
-
+    MouseMotionListener, MouseWheelListener {
+  
   private static final long serialVersionUID = 1L;
   
-  private static final int TILE_SIZE = 96;
-  private static final int TILE_PADDING = 16;
-  private static final Color BACKGROUND_COLOR = new Color(62, 75, 48);
-  private static final Font DIGIT_FONT = new Font("Monospaced", Font.BOLD, 15);
+  private static final int TILE_SIZE = BoardRenderer.TILE_SIZE;
+  
+  /**
+   * Maximum size of the canvas when the window is opened.
+   */
+  private static final int DEFAULT_VIEW_WIDTH = 1280;
+  private static final int DEFAULT_VIEW_HEIGHT = 800;
+  
+  /**
+   * Limits of the size of a tile on the screen in px.
+   */
+  private static final int MIN_ZOOMED_TILE_SIZE = 1;
+  private static final int MAX_ZOOMED_TILE_SIZE = 2 * TILE_SIZE;
+  
+  private static final int METRICS_OVERLAY_WIDTH = 330;
+  private static final int METRICS_OVERLAY_LINE_HEIGHT = 15;
+  
+  private static final double ZOOM_FACTOR = 1.25;
+  private static final int SCROLL_STEP = TILE_SIZE / 2;
   
   private JPanel canvas;
   private GameEngine gameEngine;
@@ -36,11 +81,77 @@ public class GameWindow extends JFrame implements GameEngine.MainLoop, MouseList
   private TilePosition hoverTilePostion;
   private boolean displayVerificationResult;
   private Point mousePosition;
+  private Point dragPosition;
+  
+  /**
+   * Created when the player asks for a hint for the first time. The hint is shown until the next
+   * click.
+   */
+  private HintEngine hintEngine;
+  private Hint hint;
   
   /**
-   * Creates a new game window.
+   * Whether the metrics of the game engine are shown on top of the board.
+   */
+  private volatile boolean metricsShown;
+  
+  /**
+   * The tiles that have to be rendered again, by board index. Marked on the event dispatch thread
+   * after the change and consumed by the render thread, so access to the set and to the view below
+   * is synchronized on the set.
+   */
+  private final BitSet dirtyTiles = new BitSet();
+  private final BitSet renderedTiles = new BitSet();
+  private boolean allTilesDirty;
+  private boolean viewChanged;
+  
+  /**
+   * The position of the view on the zoomed board in px and the size of a tile on the screen.
+   */
+  private int viewX;
+  private int viewY;
+  private int zoomedTileSize = TILE_SIZE;
+  
+  /**
+   * The size of the current buffer. Only used by the render thread.
+   */
+  private int bufferWidth;
+  private int bufferHeight;
+  private boolean newBuffer;
+  
+  /**
+   * The areas of the buffer that were rendered in the current frame and have to be painted.
+   */
+  private final List<Rectangle> paintRegions = new ArrayList<>();
+  
+  /**
+   * The buffer of the last frame. The canvas paints it completely when it has to be repainted by
+   * Swing, e.g. after it was covered by another window.
+   */
+  private Image buffer;
+  private final Object bufferLock = new Object();
+  
+  private final BoardRenderer boardRenderer = new BoardRenderer();
+  
+  /**
+   * One pixel in the color of each tile of the board. It is created when the view is zoomed out
+   * that far for the first time and then kept up to date with the dirty tiles.
+   */
+  private BufferedImage boardRaster;
+  private int[] boardRasterPixels;
+  private boolean boardRasterOutdated;
+  
+  /**
+   * Creates a new game window with a randomly generated board.
    */
   public GameWindow(int components, Consumer<GameWindow> closeHandler) {
+    this(new GameState(components), closeHandler);
+  }
+  
+  /**
+   * Creates a new game window for the given game state.
+   */
+  public GameWindow(GameState gameState, Consumer<GameWindow> closeHandler) {
     setTitle("Hashiwoka Hero");
     setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
     addWindowListener(new WindowAdapter() {
@@ -49,67 +160,417 @@ public class GameWindow extends JFrame implements GameEngine.MainLoop, MouseList
         closeHandler.accept(GameWindow.this);
       }
     });
-    setResizable(false);
     setLayout(new BorderLayout());
     
-    gameState = new GameState(components);
+    this.gameState = gameState;
     
-    final int canvasWidth = gameState.getBoardWidth() * TILE_SIZE;
-    final int canvasHeight = gameState.getBoardHeight() * TILE_SIZE;
+    final int canvasWidth = Math.min(gameState.getBoardWidth() * TILE_SIZE, DEFAULT_VIEW_WIDTH);
+    final int canvasHeight = Math.min(gameState.getBoardHeight() * TILE_SIZE,
+        DEFAULT_VIEW_HEIGHT);
     
     // set up canvas
-    canvas = new JPanel();
+    canvas = new BufferCanvas();
     canvas.setPreferredSize(new Dimension(canvasWidth, canvasHeight));
     canvas.setDoubleBuffered(false); // we do our own double buffering
     canvas.addMouseListener(this);
     canvas.addMouseMotionListener(this);
+    canvas.addMouseWheelListener(this);
+    canvas.addComponentListener(new ComponentAdapter() {
+      @Override
+      public void componentResized(ComponentEvent e) {
+        gameEngine.setBufferSize(canvas.getWidth(), canvas.getHeight());
+        scrollTo(viewX, viewY, zoomedTileSize); // keep the view within the board
+      }
+    });
     add(canvas, BorderLayout.CENTER);
     
     // set up controls
     JPanel controlPanel = new JPanel();
-    controlPanel.setLayout(new GridLayout(1, 2));
+    controlPanel.setLayout(new GridLayout(1, 5));
+    JButton undoButton = new JButton("Undo");
+    undoButton.addActionListener(e -> changeMove(gameState::undo));
+    controlPanel.add(undoButton);
+    JButton redoButton = new JButton("Redo");
+    redoButton.addActionListener(e -> changeMove(gameState::redo));
+    controlPanel.add(redoButton);
     JButton verifySolutionButton = new JButton("Verify Solution");
     verifySolutionButton.addActionListener(e -> verifySolution());
     controlPanel.add(verifySolutionButton);
+    JButton hintButton = new JButton("Hint");
+    hintButton.addActionListener(e -> showHint());
+    controlPanel.add(hintButton);
     JButton showSolutionButton = new JButton("Show Solution");
-    showSolutionButton.addActionListener(e -> gameState.setBoardToSolution());
+    showSolutionButton.addActionListener(e -> {
+      gameState.setBoardToSolution();
+      if (hintEngine != null) {
+        hintEngine.synchronize();
+      }
+      markAllTilesDirty();
+    });
     controlPanel.add(showSolutionButton);
     add(controlPanel, BorderLayout.SOUTH);
+    addKeyBinding(KeyEvent.VK_Z, gameState::undo);
+    addKeyBinding(KeyEvent.VK_Y, gameState::redo);
+    getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(
+        KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), "toggleMetrics");
+    getRootPane().getActionMap().put("toggleMetrics", new AbstractAction() {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        metricsShown = !metricsShown;
+        markViewChanged(); // remove the overlay
+      }
+    });
     
     gameEngine = new GameEngine(this);
+    gameEngine.setFrameScheduling(GameEngine.FrameScheduling.ON_DEMAND); // nothing is animated
     gameEngine.setBufferSize(canvasWidth, canvasHeight);
+    markAllTilesDirty();
   }
-
+  
+  /**
+   * Makes the next frame render the whole view again because all tiles might have changed and
+   * requests it.
+   */
+  public void markAllTilesDirty() {
+    synchronized (dirtyTiles) {
+      allTilesDirty = true;
+    }
+    gameEngine.invalidate();
+  }
+  
+  /**
+   * Makes the next frame render the whole view again because the view changed and requests it.
+   */
+  private void markViewChanged() {
+    synchronized (dirtyTiles) {
+      viewChanged = true;
+    }
+    gameEngine.invalidate();
+  }
+  
+  /**
+   * Marks all tiles in the rectangle spanned by the given rows and columns as dirty. Parts outside
+   * of the board are ignored.
+   */
+  private void markTilesDirty(int row1, int col1, int row2, int col2) {
+    final int fromRow = Math.max(Math.min(row1, row2), 0);
+    final int toRow = Math.min(Math.max(row1, row2), gameState.getBoardHeight() - 1);
+    final int fromCol = Math.max(Math.min(col1, col2), 0);
+    final int toCol = Math.min(Math.max(col1, col2), gameState.getBoardWidth() - 1);
+    synchronized (dirtyTiles) {
+      for (int row = fromRow; row <= toRow; row++) {
+        final int rowStart = row * gameState.getBoardWidth();
+        dirtyTiles.set(rowStart + fromCol, rowStart + toCol + 1);
+      }
+    }
+    gameEngine.invalidate();
+  }
+  
+  private void markTilesDirty(TilePosition from, TilePosition to) {
+    markTilesDirty(from.getRow(), from.getCol(), to.getRow(), to.getCol());
+  }
+  
+  private void markTileDirty(TilePosition tilePosition) {
+    if (tilePosition != null) {
+      markTilesDirty(tilePosition, tilePosition);
+    }
+  }
+  
+  private TilePosition findCableEnd(TilePosition tilePosition, Direction direction) {
+    TilePosition current = tilePosition;
+    while (gameState.isCableTile(current)) { // cables always end at a component
+      current = current.getAdjacent(direction);
+    }
+    return current;
+  }
+  
+  /**
+   * Marks the tiles under the line from the given selected component to the given mouse position
+   * as dirty.
+   */
+  private void markSelectionLineDirty(TilePosition selectedComponent, Point mouse) {
+    if (selectedComponent != null && mouse != null) {
+      markTilesDirty(selectedComponent, getTilePosition(mouse));
+    }
+  }
+  
+  /**
+   * Moves the view to the given position on the board zoomed to the given tile size. The position
+   * is limited so that the view doesn't leave the board.
+   */
+  private void scrollTo(int x, int y, int tileSize) {
+    final int maxX = Math.max(gameState.getBoardWidth() * tileSize - canvas.getWidth(), 0);
+    final int maxY = Math.max(gameState.getBoardHeight() * tileSize - canvas.getHeight(), 0);
+    synchronized (dirtyTiles) {
+      viewX = Math.max(Math.min(x, maxX), 0);
+      viewY = Math.max(Math.min(y, maxY), 0);
+      zoomedTileSize = tileSize;
+    }
+    markViewChanged();
+  }
+  
+  /**
+   * Zooms the view by the given factor while the given point of the canvas stays in place.
+   */
+  private void zoom(double factor, Point fixedPoint) {
+    int tileSize = (int) Math.round(zoomedTileSize * factor);
+    if (tileSize == zoomedTileSize) { // small tiles need at least one step
+      tileSize += factor > 1 ? 1 : -1;
+    }
+    tileSize = Math.max(Math.min(tileSize, MAX_ZOOMED_TILE_SIZE), MIN_ZOOMED_TILE_SIZE);
+    final double scale = (double) tileSize / zoomedTileSize;
+    scrollTo((int) Math.round((viewX + fixedPoint.x) * scale) - fixedPoint.x,
+        (int) Math.round((viewY + fixedPoint.y) * scale) - fixedPoint.y, tileSize);
+  }
+  
   @Override
   public void update(long period) {
     // this game doesn't have any time-based updates
   }
-
+  
+  @Override
+  public void bufferCreated(int width, int height) {
+    bufferWidth = width;
+    bufferHeight = height;
+    newBuffer = true;
+  }
+  
+  /**
+   * Renders the dirty tiles in the view and the overlays on top of them. The buffer keeps the rest
+   * of the previous frame, so nothing is rendered if nothing changed. Tiles outside of the view are
+   * skipped before they are looked up.
+   *
+   * <p>Depending on the zoom, tiles are drawn from prerendered mipmaps or as a single color from
+   * the board raster.
+   */
   @Override
   public void render(Graphics g) {
-    g.setColor(BACKGROUND_COLOR);
-    g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight()); // clear
+    final boolean boardChanged;
+    final boolean renderAllTiles;
+    final int x;
+    final int y;
+    final int tileSize;
+    synchronized (dirtyTiles) {
+      renderedTiles.clear();
+      renderedTiles.or(dirtyTiles);
+      dirtyTiles.clear();
+      boardChanged = allTilesDirty;
+      renderAllTiles = allTilesDirty || viewChanged || newBuffer;
+      allTilesDirty = false;
+      viewChanged = false;
+      newBuffer = false;
+      x = viewX;
+      y = viewY;
+      tileSize = zoomedTileSize;
+    }
+    paintRegions.clear();
+    updateBoardRaster(boardChanged);
+    final boolean renderMetrics = metricsShown;
+    if (!renderAllTiles && renderedTiles.isEmpty() && !renderMetrics) {
+      return;
+    }
     
-    gameState.getAllTilePositions().stream().forEach(tilePosition -> {
-      final Point origin = new Point(tilePosition.getCol() * TILE_SIZE,
-          tilePosition.getRow() * TILE_SIZE);
+    // visible tiles
+    final int fromRow = y / tileSize;
+    final int toRow = Math.min((y + bufferHeight - 1) / tileSize, gameState.getBoardHeight() - 1);
+    final int fromCol = x / tileSize;
+    final int toCol = Math.min((x + bufferWidth - 1) / tileSize, gameState.getBoardWidth() - 1);
+    final boolean useRaster = tileSize < BoardRenderer.MIN_SPRITE_TILE_SIZE;
+    final int level = BoardRenderer.getMipmapLevel(tileSize);
+    
+    synchronized (bufferLock) {
+      if (renderAllTiles) {
+        g.setColor(BoardRenderer.BACKGROUND_COLOR);
+        g.fillRect(0, 0, bufferWidth, bufferHeight); // the board might be smaller than the view
+        paintRegions.add(new Rectangle(0, 0, bufferWidth, bufferHeight));
+      }
+      
+      final Graphics2D boardGraphics = (Graphics2D) g.create();
+      try {
+        boardGraphics.translate(-x, -y);
+        boardGraphics.scale((double) tileSize / TILE_SIZE, (double) tileSize / TILE_SIZE);
+        if (useRaster && renderAllTiles) {
+          renderBoardRaster(boardGraphics, fromRow, toRow, fromCol, toCol);
+        } else {
+          for (int row = fromRow; row <= toRow; row++) {
+            renderTiles(boardGraphics, row, fromCol, toCol, renderAllTiles, useRaster, level, x, y,
+                tileSize);
+          }
+        }
+        if (!useRaster) {
+          renderHintMarker(boardGraphics);
+          renderHoverMarker(boardGraphics);
+        }
+      } finally {
+        boardGraphics.dispose();
+      }
+      renderSelectionLine(g, x, y, tileSize);
+      if (renderMetrics) {
+        renderMetricsOverlay(g);
+      }
+    }
+  }
+  
+  /**
+   * Renders the frame times in the top left corner of the canvas. The overlay is opaque, so it
+   * only has to be rendered again and not the tiles below it. It shows the state of the previous
+   * frame.
+   */
+  private void renderMetricsOverlay(Graphics g) {
+    final FrameMetrics metrics = gameEngine.getMetrics();
+    final String[] lines = {
+        "frames " + metrics.getFrames() + ", overruns " + metrics.getOverrunFrames()
+            + ", forced yields " + metrics.getForcedYields(),
+        formatTimes("frame", metrics.getFrameTimes()),
+        formatTimes("update", metrics.getUpdateTimes()),
+        formatTimes("render", metrics.getRenderTimes()),
+        formatTimes("paint", metrics.getPaintTimes())};
+    final int height = (lines.length + 1) * METRICS_OVERLAY_LINE_HEIGHT;
+    g.setColor(Color.BLACK);
+    g.fillRect(0, 0, METRICS_OVERLAY_WIDTH, height);
+    g.setColor(Color.WHITE);
+    for (int i = 0; i < lines.length; i++) {
+      g.drawString(lines[i], 5, (i + 1) * METRICS_OVERLAY_LINE_HEIGHT);
+    }
+    paintRegions.add(new Rectangle(0, 0, METRICS_OVERLAY_WIDTH, height));
+  }
+  
+  private static String formatTimes(String name, HistogramSummary times) {
+    return String.format("%s  p50 %.2f  p99 %.2f  max %.2f ms", name, times.getMedian() / 1000,
+        times.getPercentile99() / 1000, times.getMax() / 1000);
+  }
+  
+  /**
+   * Renders the tiles of a row in the given range that are in {@link #renderedTiles} (or all of
+   * them) and collects runs of them as paint regions. The graphics context uses board coordinates.
+   */
+  private void renderTiles(Graphics g, int row, int fromCol, int toCol, boolean renderAllTiles,
+      boolean useRaster, int level, int x, int y, int tileSize) {
+    final int rowStart = row * gameState.getBoardWidth();
+    Rectangle region = null;
+    int previousCol = -1;
+    for (int col = nextTile(rowStart, fromCol, toCol, renderAllTiles); col >= 0;
+        col = nextTile(rowStart, col + 1, toCol, renderAllTiles)) {
+      final int originX = col * TILE_SIZE;
+      final int originY = row * TILE_SIZE;
+      if (useRaster) {
+        g.setColor(new Color(boardRasterPixels[rowStart + col]));
+        g.fillRect(originX, originY, TILE_SIZE, TILE_SIZE);
+      } else {
+        boardRenderer.renderTile(g, getTileKey(rowStart + col), level, originX, originY,
+            TILE_SIZE);
+      }
       
-      if (gameState.isComponentTile(tilePosition)) {
-        renderComponentTile(tilePosition, g, origin);
-      } else if (gameState.isCableTile(tilePosition)) {
-        renderCableTile(tilePosition, g, origin);
+      if (renderAllTiles) {
+        continue; // the whole buffer is painted anyway
+      }
+      if (region != null && col == previousCol + 1) {
+        region.width += tileSize;
       } else {
-        throw new RuntimeException("Unknown tile type");
+        region = new Rectangle(col * tileSize - x, row * tileSize - y, tileSize, tileSize);
+        paintRegions.add(region);
       }
-    });
+      previousCol = col;
+    }
+  }
+  
+  /**
+   * Returns the next column from the given one up to the last one that has to be rendered or -1.
+   */
+  private int nextTile(int rowStart, int fromCol, int toCol, boolean renderAllTiles) {
+    if (fromCol > toCol) {
+      return -1;
+    }
+    if (renderAllTiles) {
+      return fromCol;
+    }
+    final int index = renderedTiles.nextSetBit(rowStart + fromCol);
+    return index >= 0 && index <= rowStart + toCol ? index - rowStart : -1;
+  }
+  
+  /**
+   * Draws the given range of the board raster scaled to the tiles. The graphics context uses board
+   * coordinates.
+   */
+  private void renderBoardRaster(Graphics g, int fromRow, int toRow, int fromCol, int toCol) {
+    if (fromRow > toRow || fromCol > toCol) {
+      return;
+    }
+    g.drawImage(boardRaster, fromCol * TILE_SIZE, fromRow * TILE_SIZE, (toCol + 1) * TILE_SIZE,
+        (toRow + 1) * TILE_SIZE, fromCol, fromRow, toCol + 1, toRow + 1, this);
+  }
+  
+  /**
+   * Brings the board raster up to date with the dirty tiles if it exists. Creates it if the view
+   * is zoomed out far enough to need it.
+   */
+  private void updateBoardRaster(boolean boardChanged) {
+    if (boardRaster == null) {
+      if (zoomedTileSize >= BoardRenderer.MIN_SPRITE_TILE_SIZE) {
+        return;
+      }
+      boardRaster = new BufferedImage(gameState.getBoardWidth(), gameState.getBoardHeight(),
+          BufferedImage.TYPE_INT_RGB);
+      boardRasterPixels = ((DataBufferInt) boardRaster.getRaster().getDataBuffer()).getData();
+      boardRasterOutdated = true;
+    }
     
+    if (boardChanged) {
+      boardRasterOutdated = true;
+    }
+    if (boardRasterOutdated) {
+      if (zoomedTileSize >= BoardRenderer.MIN_SPRITE_TILE_SIZE) {
+        return; // until it is needed again
+      }
+      for (int index = 0; index < boardRasterPixels.length; index++) {
+        boardRasterPixels[index] = boardRenderer.getTileColor(getTileKey(index));
+      }
+      boardRasterOutdated = false;
+    } else {
+      for (int index = renderedTiles.nextSetBit(0); index >= 0;
+          index = renderedTiles.nextSetBit(index + 1)) {
+        boardRasterPixels[index] = boardRenderer.getTileColor(getTileKey(index));
+      }
+    }
+  }
+  
+  /**
+   * Renders the line from the selected component to the mouse. The graphics context uses the
+   * coordinates of the canvas. Overlays are rendered completely because they leave the buffer
+   * unchanged outside of the dirty tiles, which are marked whenever they move.
+   */
+  private void renderSelectionLine(Graphics g, int x, int y, int tileSize) {
     if (selectedComponentPostion != null) {
       g.setColor(Color.RED);
       g.drawLine(
-          selectedComponentPostion.getCol() * TILE_SIZE + TILE_SIZE / 2, 
-          selectedComponentPostion.getRow() * TILE_SIZE + TILE_SIZE / 2,
+          selectedComponentPostion.getCol() * tileSize + tileSize / 2 - x, 
+          selectedComponentPostion.getRow() * tileSize + tileSize / 2 - y,
           mousePosition.x, mousePosition.y);
     }
+  }
+  
+  /**
+   * Renders the markers of the components of the current hint. The graphics context uses board
+   * coordinates.
+   */
+  private void renderHintMarker(Graphics g) {
+    final Hint currentHint = hint;
+    if (currentHint != null) {
+      g.setColor(currentHint.getType() == Hint.Type.WRONG_CABLES ? Color.RED : Color.YELLOW);
+      for (TilePosition component : new TilePosition[] {currentHint.getComponent1(),
+          currentHint.getComponent2()}) {
+        g.fillOval(component.getCol() * TILE_SIZE + 8, component.getRow() * TILE_SIZE + 8, 16,
+            16);
+      }
+    }
+  }
+  
+  /**
+   * Renders the marker of the tile under the mouse. The graphics context uses board coordinates.
+   */
+  private void renderHoverMarker(Graphics g) {
     if (hoverTilePostion != null) {
       final Point hoverOrigin = new Point(hoverTilePostion.getCol() * TILE_SIZE,
           hoverTilePostion.getRow() * TILE_SIZE);
@@ -129,81 +590,30 @@ public class GameWindow extends JFrame implements GameEngine.MainLoop, MouseList
     }
   }
   
-  private void renderComponentTile(TilePosition tilePosition, Graphics g, Point origin) {
-    ComponentTile componentTile = gameState.getTileAtPosition(tilePosition);
-    
-    Image image = Resources.COMPONENTS[componentTile.getConnections()][componentTile.getVariant()];
-    g.drawImage(image, origin.x + TILE_PADDING, origin.y + TILE_PADDING, this);
-    
-    // connections
-    for (Direction direction : Direction.values()) {
-      TilePosition adjacentTilePosition = tilePosition.getAdjacent(direction);
-      
-      if (gameState.isOutOfBoardBounds(adjacentTilePosition)) {
-        continue; // there is no adjacent tile in this direction
-      }
-      
-      // components can't be next to each other
-      CableTile cableTile = gameState.getTileAtPosition(adjacentTilePosition);
-      
-      int connectionCount = direction.getOrientation() == cableTile.getOrientation()
-          ? cableTile.getCables() : 0;
-      
-      for (int i = 1; i <= 2; i++) {
-        Point connectionOrigin = getConnectionOrigin(origin, direction, i == 2);
-        Image connectionImage = connectionCount >= i 
-            ? Resources.CONNECTIONS.get(direction)
-            : Resources.HOLES.get(direction.getOrientation());
-        g.drawImage(connectionImage, connectionOrigin.x, connectionOrigin.y, this);
-      }
-    }
-    
-    g.setColor(Color.WHITE);
-    g.fillOval(origin.x + TILE_PADDING + 2, origin.y + TILE_PADDING + 2, 15, 15);
-    g.setColor(displayVerificationResult && !componentTile.isCorrectlyConnected() 
-        ? Color.RED : Color.BLACK);
-    g.setFont(DIGIT_FONT);
-    g.drawString("" + componentTile.getConnections(), origin.x + TILE_PADDING + 5, 
-        origin.y + TILE_PADDING + 15);
-  }
-  
-  private Point getConnectionOrigin(Point tileOrigin, Direction direction, boolean second) {
-    Point connectionOrigin = new Point(tileOrigin);
-    if (direction.getOrientation() == Orientation.VERTICAL) {
-      connectionOrigin.x += second ? TILE_SIZE / 2 : TILE_PADDING;
-      connectionOrigin.y += direction == Direction.NORTH ? 0 : (TILE_SIZE - TILE_PADDING);
-    } else {
-      connectionOrigin.y += second ? TILE_SIZE / 2 : TILE_PADDING;
-      connectionOrigin.x += direction == Direction.WEST ? 0 : (TILE_SIZE - TILE_PADDING);
-    }
-    return connectionOrigin;
-  }
-  
-  private void renderCableTile(TilePosition tilePosition, Graphics g, Point origin) {
-    CableTile cableTile = gameState.getTileAtPosition(tilePosition);
-    
-    for (int i = 0; i < cableTile.getCables(); i++) {
-      boolean second = i == 1;
-      Point originWithOffset = new Point(origin);
-      if (cableTile.getOrientation() == Orientation.HORIZONTAL) {
-        originWithOffset.y += second ? TILE_SIZE / 2 : TILE_PADDING;
-      } else {
-        originWithOffset.x += second ? TILE_SIZE / 2 : TILE_PADDING;
-      }
-      
-      Image image = Resources.CABLES.get(cableTile.getOrientation())[cableTile.getVariant()];
-      g.drawImage(image, originWithOffset.x, originWithOffset.y, this);
-    }
+  private int getTileKey(int index) {
+    return BoardRenderer.getTileKey(gameState.getBoard(), index, displayVerificationResult);
   }
   
   @Override
   public void paint(Image buffer) {
+    synchronized (bufferLock) {
+      this.buffer = buffer;
+    }
+    if (paintRegions.isEmpty()) {
+      return;
+    }
+    
     // Draw actively to the graphics context of the canvas.
     Graphics g = null;
     try {
       g = canvas.getGraphics();
       if (g != null) {
-        g.drawImage(buffer, 0, 0, this);
+        for (Rectangle region : paintRegions) {
+          final int right = region.x + region.width;
+          final int bottom = region.y + region.height;
+          g.drawImage(buffer, region.x, region.y, right, bottom, region.x, region.y, right, bottom,
+              this);
+        }
       }
     } finally {
       if (g != null) {
@@ -239,42 +649,168 @@ public class GameWindow extends JFrame implements GameEngine.MainLoop, MouseList
           JOptionPane.ERROR_MESSAGE);
     }
     displayVerificationResult = true;
+    markAllTilesDirty();
+  }
+  
+  private void addKeyBinding(int keyCode, IntSupplier moveChange) {
+    getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(
+        KeyStroke.getKeyStroke(keyCode, InputEvent.CTRL_DOWN_MASK), moveChange);
+    getRootPane().getActionMap().put(moveChange, new AbstractAction() {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        changeMove(moveChange);
+      }
+    });
+  }
+  
+  /**
+   * Undoes or redoes a move and marks the cable and the components at both ends as dirty.
+   *
+   * @param moveChange {@link GameState#undo()} or {@link GameState#redo()}
+   */
+  private void changeMove(IntSupplier moveChange) {
+    final int move = moveChange.getAsInt();
+    if (move == GameState.NO_MOVE) {
+      return;
+    }
+    clearHint();
+    final int index = MoveLog.getComponentIndex(move);
+    final TilePosition start = new TilePosition(index / gameState.getBoardWidth(),
+        index % gameState.getBoardWidth());
+    final Direction direction = MoveLog.getOrientation(move) == Orientation.VERTICAL
+        ? Direction.SOUTH : Direction.EAST;
+    final TilePosition end = findCableEnd(start.getAdjacent(direction), direction);
+    if (hintEngine != null) {
+      hintEngine.cablesChanged(start, end);
+    }
+    markTilesDirty(start, end);
+  }
+  
+  /**
+   * Shows the next hint of the hint engine on the board or a message if the board is solved.
+   */
+  private void showHint() {
+    if (hintEngine == null) {
+      hintEngine = new HintEngine(gameState);
+    }
+    clearHint();
+    hint = hintEngine.getHint();
+    if (hint == null) {
+      JOptionPane.showMessageDialog(this, "There is nothing left to do.", "Hint",
+          JOptionPane.INFORMATION_MESSAGE);
+      return;
+    }
+    if (zoomedTileSize < BoardRenderer.MIN_SPRITE_TILE_SIZE) {
+      JOptionPane.showMessageDialog(this, getHintMessage(hint), "Hint",
+          JOptionPane.INFORMATION_MESSAGE); // the markers are not rendered on the board raster
+    }
+    markTilesDirty(hint.getComponent1(), hint.getComponent2());
+  }
+  
+  private static String getHintMessage(Hint hint) {
+    final String components = "the components in row " + (hint.getComponent1().getRow() + 1)
+        + ", column " + (hint.getComponent1().getCol() + 1) + " and in row "
+        + (hint.getComponent2().getRow() + 1) + ", column " + (hint.getComponent2().getCol() + 1);
+    switch (hint.getType()) {
+      case WRONG_CABLES:
+        return "The cables between " + components + " are wrong.";
+      case FORCED_CABLES:
+        return "There must be " + hint.getCables() + " cable(s) between " + components + ".";
+      default:
+        return "The solution has " + hint.getCables() + " cable(s) between " + components + ".";
+    }
   }
   
-  private TilePosition getTilePosition(MouseEvent e) {
-    return new TilePosition(e.getY() / TILE_SIZE, e.getX() / TILE_SIZE);
+  private void clearHint() {
+    if (hint != null) {
+      markTilesDirty(hint.getComponent1(), hint.getComponent2());
+      hint = null;
+    }
+  }
+  
+  /**
+   * Returns the position of the tile under the given point of the canvas. It might be outside of
+   * the board.
+   */
+  private TilePosition getTilePosition(Point point) {
+    return new TilePosition(Math.floorDiv(point.y + viewY, zoomedTileSize),
+        Math.floorDiv(point.x + viewX, zoomedTileSize));
+  }
+  
+  /**
+   * Returns the position of the tile under the given point of the canvas or null if it is outside
+   * of the board.
+   */
+  private TilePosition getTilePositionOnBoard(Point point) {
+    final TilePosition tilePosition = getTilePosition(point);
+    return gameState.isOutOfBoardBounds(tilePosition) ? null : tilePosition;
   }
   
   @Override
   public void mouseClicked(MouseEvent e) {
-    displayVerificationResult = false;
-    TilePosition tilePosition = getTilePosition(e);
+    if (displayVerificationResult) {
+      displayVerificationResult = false;
+      markAllTilesDirty();
+    }
+    clearHint();
+    final TilePosition previousSelection = selectedComponentPostion;
+    TilePosition tilePosition = getTilePositionOnBoard(e.getPoint());
     
-    if (gameState.isCableTile(tilePosition)) {
+    if (tilePosition == null) {
+      selectedComponentPostion = null;
+    } else if (gameState.isCableTile(tilePosition)) {
       if (selectedComponentPostion == null) {
-        gameState.getFullCable(tilePosition).forEach(CableTile::decreaseCables);
+        removeCable(tilePosition);
       } else {
         selectedComponentPostion = null;
       }
-      return;
-    }
-    
-    if (selectedComponentPostion == null) {
+    } else if (selectedComponentPostion == null) {
       selectedComponentPostion = tilePosition;
     } else if (tilePosition.equals(selectedComponentPostion)) {
       selectedComponentPostion = null;
     } else {
       gameState.tryToAddCableBetweenComponents(tilePosition, selectedComponentPostion);
+      if (hintEngine != null) {
+        hintEngine.cablesChanged(tilePosition, selectedComponentPostion);
+      }
+      markTilesDirty(tilePosition, selectedComponentPostion);
       selectedComponentPostion = null;
     }
+    
+    markSelectionLineDirty(previousSelection, mousePosition);
+    markTileDirty(tilePosition);
+  }
+  
+  /**
+   * Removes a cable and marks it and the components at both ends as dirty.
+   */
+  private void removeCable(TilePosition tilePosition) {
+    final CableTile cableTile = gameState.getTileAtPosition(tilePosition);
+    if (cableTile.getCables() == 0) {
+      return;
+    }
+    final List<Direction> directions = Direction.forOrientation(cableTile.getOrientation());
+    final TilePosition start = findCableEnd(tilePosition, directions.get(0));
+    final TilePosition end = findCableEnd(tilePosition, directions.get(1));
+    gameState.removeCable(tilePosition);
+    if (hintEngine != null) {
+      hintEngine.cablesChanged(start, end);
+    }
+    markTilesDirty(start, end);
   }
-
+  
   @Override
-  public void mousePressed(MouseEvent e) {}
-
+  public void mousePressed(MouseEvent e) {
+    dragPosition = e.getPoint();
+  }
+  
   @Override
-  public void mouseReleased(MouseEvent e) {}
-
+  public void mouseReleased(MouseEvent e) {
+    dragPosition = null;
+  }
+  
   @Override
   public void mouseEntered(MouseEvent e) {}
 
@@ -282,11 +818,56 @@ public class GameWindow extends JFrame implements GameEngine.MainLoop, MouseList
   public void mouseExited(MouseEvent e) {}
 
   @Override
-  public void mouseDragged(MouseEvent e) {}
-
+  public void mouseDragged(MouseEvent e) {
+    if (dragPosition != null) {
+      scrollTo(viewX + dragPosition.x - e.getX(), viewY + dragPosition.y - e.getY(),
+          zoomedTileSize);
+      dragPosition = e.getPoint();
+    }
+    mouseMoved(e);
+  }
+  
   @Override
   public void mouseMoved(MouseEvent e) {
+    final Point previousMousePosition = mousePosition;
+    final TilePosition previousHoverTilePosition = hoverTilePostion;
     mousePosition = e.getPoint();
-    hoverTilePostion = getTilePosition(e);
+    hoverTilePostion = getTilePositionOnBoard(e.getPoint());
+    markSelectionLineDirty(selectedComponentPostion, previousMousePosition);
+    markSelectionLineDirty(selectedComponentPostion, mousePosition);
+    markTileDirty(previousHoverTilePosition);
+    markTileDirty(hoverTilePostion);
+  }
+  
+  @Override
+  public void mouseWheelMoved(MouseWheelEvent e) {
+    if ((e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0) {
+      zoom(Math.pow(ZOOM_FACTOR, -e.getWheelRotation()), e.getPoint());
+    } else if ((e.getModifiersEx() & InputEvent.SHIFT_DOWN_MASK) != 0) {
+      scrollTo(viewX + e.getWheelRotation() * SCROLL_STEP, viewY, zoomedTileSize);
+    } else {
+      scrollTo(viewX, viewY + e.getWheelRotation() * SCROLL_STEP, zoomedTileSize);
+    }
+    mouseMoved(e);
+  }
+  
+  /**
+   * Paints the whole buffer of the last frame when Swing repaints the canvas. Frames are painted
+   * actively and only where something changed.
+   */
+  private class BufferCanvas extends JPanel {
+    
+    private static final long serialVersionUID = 1L;
+    
+    @Override
+    protected void paintComponent(Graphics g) {
+      synchronized (bufferLock) {
+        if (buffer == null) {
+          super.paintComponent(g);
+        } else {
+          g.drawImage(buffer, 0, 0, this);
+        }
+      }
+    }
   }
 }
@@ -0,0 +1,24 @@
+package de.erikhofer.hashiwokahero;
+
+import lombok.Value;
+
+/**
+ * A generated board together with the values needed to generate it again.
+ */
+@Value
+public class GeneratedBoard {
+  
+  /**
+   * Index of the board within its batch or the attempt that generated it if it was generated by a
+   * {@link UniqueBoardGenerator}.
+   */
+  private int index;
+  
+  /**
+   * Seed of the {@link BoardGenerator} that generated the board.
+   */
+  private long seed;
+  
+  private PackedBoard board;
+  
+}
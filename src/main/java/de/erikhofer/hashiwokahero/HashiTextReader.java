@@ -0,0 +1,289 @@
+package de.erikhofer.hashiwokahero;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import de.erikhofer.hashiwokahero.solver.Puzzle;
+import de.erikhofer.hashiwokahero.solver.Solver;
+import de.erikhofer.hashiwokahero.solver.SolverResult;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import lombok.NonNull;
+
+/**
+ * Reads boards in the common Hashiwokakero text notation. Every line is a row of the board and
+ * every character a tile:
+ * <pre>
+ * 1 - 8          component with that many connections
+ * . or 0 or ' '  empty tile
+ * - or =         one or two horizontal cables
+ * | or " or H    one or two vertical cables
+ * </pre>
+ * Boards are separated by one or more empty lines, so a file can contain many boards. A line of
+ * spaces is a row of empty tiles. Trailing spaces are ignored and rows that are shorter than the
+ * widest row of their board are filled with empty tiles.
+ *
+ * <p>The input is parsed character by character into a buffer for the cells that is reused for
+ * every board, so no strings are created and the memory needed only depends on the largest board.
+ * Text doesn't have variants, so all tiles get the first variant.
+ */
+public class HashiTextReader implements Closeable {
+  
+  private static final int BUFFER_SIZE = 8192;
+  
+  private final Reader in;
+  private final int maxTiles;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int bufferPosition;
+  private int bufferLimit;
+  private int line = 1;
+  private int[] cells = new int[BUFFER_SIZE];
+  private int[] rowLengths = new int[64];
+  
+  public HashiTextReader(@NonNull Reader in) {
+    this(in, Integer.MAX_VALUE);
+  }
+  
+  /**
+   * Creates a reader that rejects boards with more than the given number of tiles, e.g. for boards
+   * from an untrusted source. Short rows are filled, so a board can have more tiles than the text
+   * has characters.
+   */
+  public HashiTextReader(@NonNull Reader in, int maxTiles) {
+    checkArgument(maxTiles > 0, "The maximum number of tiles must be positive!");
+    this.in = in;
+    this.maxTiles = maxTiles;
+  }
+  
+  /**
+   * Reads the next board. Cables in the text are kept.
+   *
+   * @return the board or null if there are no more boards
+   */
+  public PackedBoard readBoard() throws IOException {
+    int width = 0;
+    int height = 0;
+    int size = 0;
+    long col = 0;
+    int rowLength = 0; // without trailing spaces
+    boolean emptyLine = true;
+    while (true) {
+      final int c = read();
+      if (c == '\r') {
+        continue;
+      }
+      if (c == '\n' || c == -1) {
+        final boolean endOfBoard = c == -1 || emptyLine && height > 0;
+        if (!emptyLine) {
+          checkTiles(Math.max(width, Math.max(rowLength, 1)), height + 1);
+          rowLengths = ensureCapacity(rowLengths, height + 1);
+          rowLengths[height++] = rowLength;
+          width = Math.max(width, rowLength);
+        }
+        if (c == '\n') {
+          line++;
+        }
+        if (endOfBoard) {
+          break;
+        }
+        col = 0;
+        rowLength = 0;
+        emptyLine = true;
+        continue;
+      }
+      
+      emptyLine = false;
+      if (c == ' ') {
+        col++; // the spaces are only stored if a tile follows, trailing spaces are not tiles
+        continue;
+      }
+      checkTiles(Math.max(width, col + 1), height + 1);
+      final int cell = parseCell((char) c);
+      cells = ensureCapacity(cells, size + (int) col + 1 - rowLength);
+      while (rowLength < col) {
+        cells[size++] = 0;
+        rowLength++;
+      }
+      cells[size++] = cell;
+      rowLength = (int) ++col;
+    }
+    
+    if (height == 0) {
+      return null;
+    }
+    if (width == 0) {
+      throw new IOException("The board that ends before line " + line + " has no tiles!");
+    }
+    final PackedBoard board = new PackedBoard(width, height);
+    int cell = 0;
+    for (int row = 0; row < height; row++) {
+      for (int rowCol = 0; rowCol < rowLengths[row]; rowCol++) {
+        board.set(board.getIndex(row, rowCol), cells[cell++]);
+      }
+    }
+    return board;
+  }
+  
+  /**
+   * Reads the next board as a new game. If the board has cables, they must be a solution of the
+   * board and are taken as the solution. Otherwise the board is solved first.
+   *
+   * @return the game or null if there are no more boards
+   * @throws IOException if the board can't be read, has no components, its cables are not a
+   *     solution or it has no solution
+   */
+  public GameState readGameState() throws IOException {
+    return readGameState(solver -> { });
+  }
+  
+  /**
+   * Reads the next board as a new game like {@link #readGameState()}. The solver of a board
+   * without cables is passed to the given listener before it starts, e.g. to cancel it after a
+   * timeout.
+   *
+   * @return the game or null if there are no more boards
+   * @throws IOException if the board can't be read, has no components, its cables are not a
+   *     solution, it has no solution or the solver was cancelled before it found one
+   */
+  public GameState readGameState(@NonNull Consumer<Solver> solverListener) throws IOException {
+    final PackedBoard board = readBoard();
+    if (board == null) {
+      return null;
+    }
+    boolean components = false;
+    boolean cables = false;
+    for (int index = 0; index < board.getSize(); index++) {
+      components |= board.isComponent(index);
+      cables |= board.isCable(index) && board.getCables(index) > 0;
+    }
+    if (!components) {
+      throw new IOException("The board that ends before line " + line + " has no components!");
+    }
+    if (cables) {
+      if (!isSolution(board)) {
+        throw new IOException("The cables of the board that ends before line " + line
+            + " are not a solution!");
+      }
+      return new GameState(board);
+    }
+    
+    final Solver solver = new Solver(Puzzle.fromBoard(board));
+    solverListener.accept(solver);
+    final SolverResult result = solver.solve();
+    if (!result.isSolvable()) {
+      throw new IOException(result.isComplete()
+          ? "The board that ends before line " + line + " has no solution!"
+          : "The solver of the board that ends before line " + line + " was cancelled!");
+    }
+    return new GameState(result.getSolutionBoard());
+  }
+  
+  /**
+   * Returns whether the cables on the given board are a solution: Every cable runs straight from
+   * one component to another without crossing other cables, every component has as many cables as
+   * connections and all components are connected with each other.
+   */
+  private static boolean isSolution(PackedBoard board) {
+    final Puzzle puzzle = Puzzle.fromBoard(board);
+    final int[] cables = puzzle.readCables(board);
+    for (int edge = 0; edge < cables.length; edge++) {
+      if (cables[edge] == 0) {
+        continue;
+      }
+      for (int i = 0; i < puzzle.getCrossingCount(edge); i++) {
+        if (cables[puzzle.getCrossing(edge, i)] > 0) {
+          return false;
+        }
+      }
+    }
+    // the board of the edges has different cells if a cable doesn't end at components
+    if (!puzzle.toBoard(cables).equals(board)) {
+      return false;
+    }
+    
+    final int[] deficits = new int[puzzle.getIslandCount()];
+    final UnionFind networks = new UnionFind(puzzle.getIslandCount());
+    for (int island = 0; island < deficits.length; island++) {
+      deficits[island] = puzzle.getDegree(island);
+    }
+    for (int edge = 0; edge < cables.length; edge++) {
+      if (cables[edge] > 0) {
+        deficits[puzzle.getFirstIsland(edge)] -= cables[edge];
+        deficits[puzzle.getSecondIsland(edge)] -= cables[edge];
+        networks.union(puzzle.getFirstIsland(edge), puzzle.getSecondIsland(edge));
+      }
+    }
+    for (int deficit : deficits) {
+      if (deficit != 0) {
+        return false;
+      }
+    }
+    return networks.getSets() == 1;
+  }
+  
+  /**
+   * Throws an exception if a board of the given size would have more than the maximum number of
+   * tiles. It is checked while a board is read, so the buffer never gets larger than the maximum.
+   */
+  private void checkTiles(long width, long height) throws IOException {
+    if (width * height > maxTiles) {
+      throw new IOException("The board in line " + line + " has more than " + maxTiles
+          + " tiles!");
+    }
+  }
+  
+  private int parseCell(char c) throws IOException {
+    switch (c) {
+      case '.':
+      case '0':
+        return 0;
+      case '-':
+        return PackedBoard.cableCell(1, Orientation.HORIZONTAL, 0);
+      case '=':
+        return PackedBoard.cableCell(2, Orientation.HORIZONTAL, 0);
+      case '|':
+        return PackedBoard.cableCell(1, Orientation.VERTICAL, 0);
+      case '"':
+      case 'H':
+        return PackedBoard.cableCell(2, Orientation.VERTICAL, 0);
+      default:
+        if (c >= '1' && c <= '8') {
+          return PackedBoard.componentCell(c - '0', 0);
+        }
+        throw new IOException("Unexpected character '" + c + "' in line " + line + "!");
+    }
+  }
+  
+  /**
+   * Returns the given buffer or a larger copy of it if it is smaller than the given capacity.
+   */
+  private static int[] ensureCapacity(int[] array, int capacity) {
+    if (capacity > array.length) {
+      return Arrays.copyOf(array, Math.max(array.length * 2, capacity));
+    }
+    return array;
+  }
+  
+  /**
+   * Returns the next character or -1 at the end of the input.
+   */
+  private int read() throws IOException {
+    if (bufferPosition == bufferLimit) {
+      bufferLimit = in.read(buffer);
+      bufferPosition = 0;
+      if (bufferLimit <= 0) {
+        bufferLimit = 0;
+        return -1;
+      }
+    }
+    return buffer[bufferPosition++];
+  }
+  
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+}
@@ -0,0 +1,88 @@
+package de.erikhofer.hashiwokahero;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import lombok.NonNull;
+
+/**
+ * Writes boards in the common Hashiwokakero text notation, see {@link HashiTextReader}. Empty tiles
+ * are written as {@code .} and double vertical cables as {@code "}. Boards are separated by a blank
+ * line.
+ *
+ * <p>Every row is collected in a buffer that is reused and then written at once, so the memory
+ * needed only depends on the width of the widest board.
+ */
+public class HashiTextWriter implements Closeable, Flushable {
+  
+  private final Writer out;
+  private char[] row = new char[0];
+  private boolean firstBoard = true;
+  
+  public HashiTextWriter(@NonNull Writer out) {
+    this.out = out;
+  }
+  
+  /**
+   * Writes the puzzle of the given game, i.e. only the components.
+   */
+  public void writePuzzle(@NonNull GameState gameState) throws IOException {
+    write(gameState.getSolution(), false);
+  }
+  
+  /**
+   * Writes the solution of the given game.
+   */
+  public void writeSolution(@NonNull GameState gameState) throws IOException {
+    write(gameState.getSolution(), true);
+  }
+  
+  /**
+   * Writes the given board.
+   *
+   * @param cables whether the cables of the board are written or only the components
+   */
+  public void write(@NonNull PackedBoard board, boolean cables) throws IOException {
+    if (!firstBoard) {
+      out.write('\n');
+    }
+    firstBoard = false;
+    
+    if (row.length < board.getWidth() + 1) {
+      row = new char[board.getWidth() + 1];
+    }
+    row[board.getWidth()] = '\n';
+    for (int rowIndex = 0; rowIndex < board.getHeight(); rowIndex++) {
+      for (int col = 0; col < board.getWidth(); col++) {
+        row[col] = toChar(board.get(board.getIndex(rowIndex, col)), cables);
+      }
+      out.write(row, 0, board.getWidth() + 1);
+    }
+  }
+  
+  private static char toChar(int cell, boolean cables) {
+    final int count = PackedBoard.getCount(cell);
+    if (PackedBoard.isComponentCell(cell)) {
+      return (char) ('0' + count);
+    }
+    if (!cables || count == 0) {
+      return '.';
+    }
+    if (PackedBoard.getOrientationOfCell(cell) == Orientation.HORIZONTAL) {
+      return count == 1 ? '-' : '=';
+    }
+    return count == 1 ? '|' : '"';
+  }
+  
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+  
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+}
@@ -0,0 +1,58 @@
+package de.erikhofer.hashiwokahero;
+
+import java.awt.Image;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import lombok.NonNull;
+
+/**
+ * A handle of an image that is loaded in the background. Loading starts with the first call of
+ * {@link #load()} or {@link #get()}, and {@link #get()} only blocks until this image is loaded.
+ */
+public class LazyImage {
+  
+  private final Supplier<Image> loader;
+  private final Executor executor;
+  private volatile CompletableFuture<Image> image;
+  
+  /**
+   * Creates a handle that runs the given loader on the given executor.
+   */
+  public LazyImage(@NonNull Supplier<Image> loader, @NonNull Executor executor) {
+    this.loader = loader;
+    this.executor = executor;
+  }
+  
+  /**
+   * Starts loading the image if that didn't happen yet.
+   *
+   * @return a future of the image
+   */
+  public CompletableFuture<Image> load() {
+    CompletableFuture<Image> result = image;
+    if (result == null) {
+      synchronized (this) {
+        result = image;
+        if (result == null) {
+          result = CompletableFuture.supplyAsync(loader, executor);
+          image = result;
+        }
+      }
+    }
+    return result;
+  }
+  
+  /**
+   * Returns the image and waits until it is loaded if necessary.
+   */
+  public Image get() {
+    return load().join();
+  }
+  
+  public boolean isLoaded() {
+    final CompletableFuture<Image> result = image;
+    return result != null && result.isDone();
+  }
+
+}
@@ -0,0 +1,141 @@
+package de.erikhofer.hashiwokahero;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Arrays;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * The moves of a game in the order they were made, see {@link GameState#getMoveLog()}. Every move
+ * is packed into an int, so a log of many thousand moves is a single small array:
+ * <pre>
+ * bits 2 - 31  board index of the west or north component of the cable
+ * bit 1        1 if the cable is vertical
+ * bit 0        1 if a cable was removed, 0 if one was added
+ * </pre>
+ * Moves that were undone are kept until a new move is recorded, so they can be redone.
+ */
+public class MoveLog {
+  
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int VERTICAL_BIT = 1 << 1;
+  private static final int REMOVAL_BIT = 1;
+  
+  private int[] moves;
+  
+  /**
+   * The number of moves that were recorded, including the ones that were undone.
+   */
+  private @Getter int size;
+  
+  /**
+   * The number of moves that are applied. The moves from here to {@link #size} can be redone.
+   */
+  private @Getter int position;
+  
+  public MoveLog() {
+    moves = new int[INITIAL_CAPACITY];
+  }
+  
+  /**
+   * Creates a log with the given moves, e.g. from {@link #toArray()}. All of them are applied.
+   */
+  public MoveLog(@NonNull int[] moves) {
+    this.moves = Arrays.copyOf(moves, Math.max(moves.length, INITIAL_CAPACITY));
+    size = moves.length;
+    position = size;
+  }
+  
+  /**
+   * Packs a move.
+   *
+   * @param componentIndex the board index of the west or north component of the cable
+   */
+  public static int move(int componentIndex, @NonNull Orientation orientation, boolean removal) {
+    checkArgument(componentIndex >= 0 && componentIndex < 1 << 30,
+        "Unsupported board index: %s", componentIndex);
+    return componentIndex << 2 | (orientation == Orientation.VERTICAL ? VERTICAL_BIT : 0)
+        | (removal ? REMOVAL_BIT : 0);
+  }
+  
+  public static int getComponentIndex(int move) {
+    return move >>> 2;
+  }
+  
+  public static Orientation getOrientation(int move) {
+    return (move & VERTICAL_BIT) != 0 ? Orientation.VERTICAL : Orientation.HORIZONTAL;
+  }
+  
+  public static boolean isRemoval(int move) {
+    return (move & REMOVAL_BIT) != 0;
+  }
+  
+  /**
+   * Returns the move that reverts the given one.
+   */
+  public static int invert(int move) {
+    return move ^ REMOVAL_BIT;
+  }
+  
+  /**
+   * Appends a move that was made. The moves that were undone can't be redone anymore.
+   */
+  public void record(int move) {
+    if (position == moves.length) {
+      moves = Arrays.copyOf(moves, moves.length * 2);
+    }
+    moves[position++] = move;
+    size = position;
+  }
+  
+  public int get(int index) {
+    checkArgument(index >= 0 && index < size, "There is no move %s!", index);
+    return moves[index];
+  }
+  
+  public boolean canUndo() {
+    return position > 0;
+  }
+  
+  public boolean canRedo() {
+    return position < size;
+  }
+  
+  /**
+   * Steps back one move.
+   *
+   * @return the move that has to be reverted
+   */
+  public int undo() {
+    checkState(canUndo(), "There is no move to undo!");
+    return moves[--position];
+  }
+  
+  /**
+   * Steps forward one move.
+   *
+   * @return the move that has to be made again
+   */
+  public int redo() {
+    checkState(canRedo(), "There is no move to redo!");
+    return moves[position++];
+  }
+  
+  /**
+   * Removes all moves.
+   */
+  public void clear() {
+    size = 0;
+    position = 0;
+  }
+  
+  /**
+   * Returns the moves that are applied, i.e. without the ones that were undone.
+   */
+  public int[] toArray() {
+    return Arrays.copyOf(moves, position);
+  }
+
+}
@@ -0,0 +1,479 @@
+package de.erikhofer.hashiwokahero;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A board that stores every tile as a single packed int. Compared to a {@code Tile[][]} this
+ * needs no object per tile and keeps the tiles of a board in a few contiguous arrays.
+ *
+ * <p>Tiles are addressed by their index ({@code row * width + col}). Bit layout of a cell:
+ * <pre>
+ * bit  0     tile type (1 = component, 0 = cable)
+ * bits 1-4   connections of a component or cables of a cable tile
+ * bit  5     orientation of the cables (0 = horizontal, 1 = vertical)
+ * bits 6-9   variant
+ * bit  10    whether the component is correctly connected
+ * </pre>
+ * An empty cable tile is represented by 0.
+ *
+ * <p>The cells are stored in chunks of whole rows that are copied on write, so {@link #snapshot()}
+ * and copies of boards only share the chunks instead of copying the cells. A chunk is copied when
+ * it is changed for the first time after it was shared.
+ *
+ * <p>The {@link Tile} API is available as views on top of the packed cells, see
+ * {@link #getTile(int)}.
+ */
+public class PackedBoard {
+  
+  private static final int COMPONENT_FLAG = 1;
+  private static final int COUNT_SHIFT = 1;
+  private static final int COUNT_MASK = 0xF << COUNT_SHIFT;
+  private static final int VERTICAL_FLAG = 1 << 5;
+  private static final int VARIANT_SHIFT = 6;
+  private static final int VARIANT_MASK = 0xF << VARIANT_SHIFT;
+  private static final int CORRECTLY_CONNECTED_FLAG = 1 << 10;
+  
+  /**
+   * Approximate number of cells in a chunk. Chunks always contain whole rows.
+   */
+  private static final int CHUNK_CELLS = 4096;
+  
+  private final @Getter int width;
+  private final @Getter int height;
+  private final int size;
+  
+  /**
+   * The number of cells in every chunk but the last one.
+   */
+  private final int chunkSize;
+  private int[][] chunks;
+  
+  /**
+   * Whether the array of chunks is shared with a snapshot, so it has to be copied before a chunk
+   * is replaced.
+   */
+  private boolean chunksShared;
+  
+  /**
+   * The generation in which each chunk was copied. Chunks of older generations are shared with a
+   * snapshot or another board. Taking a snapshot starts a new generation, so all chunks become
+   * shared at once.
+   */
+  private final int[] chunkGenerations;
+  private int generation;
+  
+  /**
+   * Creates a new board of the given size filled with empty cable tiles.
+   */
+  public PackedBoard(int width, int height) {
+    this(width, height, null);
+  }
+  
+  /**
+   * Creates a copy of the given board. The cells are only copied when they are changed.
+   */
+  public PackedBoard(PackedBoard packedBoard) {
+    this(packedBoard.width, packedBoard.height, packedBoard.snapshot());
+  }
+  
+  /**
+   * Creates a board with the cells of the given snapshot. The cells are only copied when they are
+   * changed.
+   */
+  public PackedBoard(BoardSnapshot snapshot) {
+    this(snapshot.getWidth(), snapshot.getHeight(), snapshot);
+  }
+  
+  private PackedBoard(int width, int height, BoardSnapshot snapshot) {
+    checkArgument(width > 0 && height > 0, "The board must not be empty!");
+    checkArgument((long) width * height <= Integer.MAX_VALUE, "The board is too large!");
+    this.width = width;
+    this.height = height;
+    size = width * height;
+    chunkSize = getChunkSize(width);
+    final int chunkCount = (size - 1) / chunkSize + 1;
+    chunks = new int[chunkCount][];
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      chunks[chunk] = snapshot == null
+          ? new int[Math.min(chunkSize, size - chunk * chunkSize)] : snapshot.getChunk(chunk);
+    }
+    chunkGenerations = new int[chunkCount];
+    if (snapshot != null) {
+      generation = 1; // all chunks are shared
+    }
+  }
+  
+  /**
+   * Returns the number of cells in every chunk but the last one of a board with the given width.
+   */
+  static int getChunkSize(int width) {
+    return Math.max(CHUNK_CELLS / width, 1) * width;
+  }
+  
+  /**
+   * Creates a packed board from the given tiles.
+   */
+  public static PackedBoard fromTiles(Tile[][] tiles) {
+    final PackedBoard packedBoard = new PackedBoard(tiles[0].length, tiles.length);
+    for (int row = 0; row < packedBoard.height; row++) {
+      for (int col = 0; col < packedBoard.width; col++) {
+        packedBoard.set(packedBoard.getIndex(row, col), pack(tiles[row][col]));
+      }
+    }
+    return packedBoard;
+  }
+  
+  /**
+   * Creates detached tiles for this board. Changes to the tiles are not written back.
+   */
+  public Tile[][] toTiles() {
+    final Tile[][] tiles = new Tile[height][width];
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        tiles[row][col] = unpack(get(getIndex(row, col)));
+      }
+    }
+    return tiles;
+  }
+  
+  public int getSize() {
+    return size;
+  }
+  
+  public int getIndex(int row, int col) {
+    return row * width + col;
+  }
+  
+  public int getRow(int index) {
+    return index / width;
+  }
+  
+  public int getCol(int index) {
+    return index % width;
+  }
+  
+  public boolean isInBounds(int row, int col) {
+    return row >= 0 && col >= 0 && row < height && col < width;
+  }
+  
+  /**
+   * Returns the difference of the index of an adjacent tile in the given direction.
+   */
+  public int getIndexOffset(Direction direction) {
+    return direction.getRowOffset() * width + direction.getColOffset();
+  }
+  
+  public int get(int index) {
+    final int chunk = index / chunkSize;
+    return chunks[chunk][index - chunk * chunkSize];
+  }
+  
+  /**
+   * Sets the cell at the given index. Shared chunks are only copied if the cell changes.
+   */
+  public void set(int index, int cell) {
+    final int chunk = index / chunkSize;
+    final int offset = index - chunk * chunkSize;
+    if (chunks[chunk][offset] != cell) {
+      getWritableChunk(chunk)[offset] = cell;
+    }
+  }
+  
+  /**
+   * Returns the given chunk after copying it if it is shared.
+   */
+  private int[] getWritableChunk(int chunk) {
+    if (chunkGenerations[chunk] != generation) {
+      if (chunksShared) {
+        chunks = chunks.clone();
+        chunksShared = false;
+      }
+      chunks[chunk] = chunks[chunk].clone();
+      chunkGenerations[chunk] = generation;
+    }
+    return chunks[chunk];
+  }
+  
+  /**
+   * Overwrites all tiles of this board with the ones of the given board of the same size. The
+   * cells are only copied when they are changed.
+   */
+  public void copyFrom(PackedBoard packedBoard) {
+    restore(packedBoard.snapshot());
+  }
+  
+  /**
+   * Returns the current cells of this board. This takes constant time because the snapshot shares
+   * the chunks with the board.
+   */
+  public BoardSnapshot snapshot() {
+    generation++;
+    chunksShared = true;
+    return new BoardSnapshot(width, height, chunkSize, chunks);
+  }
+  
+  /**
+   * Overwrites all tiles of this board with the ones of the given snapshot of a board of the same
+   * size. Only the chunks that differ are replaced and no cells are copied.
+   *
+   * @return the chunks that were replaced, see {@link #getChunkRows()}
+   */
+  public BitSet restore(@NonNull BoardSnapshot snapshot) {
+    checkArgument(snapshot.getWidth() == width && snapshot.getHeight() == height,
+        "Boards must have the same size!");
+    final BitSet replacedChunks = new BitSet();
+    for (int chunk = 0; chunk < chunks.length; chunk++) {
+      final int[] snapshotChunk = snapshot.getChunk(chunk);
+      if (chunks[chunk] != snapshotChunk) {
+        if (chunksShared) {
+          chunks = chunks.clone();
+          chunksShared = false;
+        }
+        chunks[chunk] = snapshotChunk;
+        chunkGenerations[chunk] = generation - 1; // shared with the snapshot
+        replacedChunks.set(chunk);
+      }
+    }
+    return replacedChunks;
+  }
+  
+  /**
+   * Returns the number of rows in every chunk but the last one.
+   */
+  public int getChunkRows() {
+    return chunkSize / width;
+  }
+  
+  public boolean isComponent(int index) {
+    return isComponentCell(get(index));
+  }
+  
+  public boolean isCable(int index) {
+    return !isComponentCell(get(index));
+  }
+  
+  public int getConnections(int index) {
+    return getCount(get(index));
+  }
+  
+  public int getCables(int index) {
+    return getCount(get(index));
+  }
+  
+  public void setCables(int index, int cables) {
+    checkArgument(cables >= 0 && cables <= 2);
+    set(index, withCount(get(index), cables));
+  }
+  
+  public Orientation getOrientation(int index) {
+    return getOrientationOfCell(get(index));
+  }
+  
+  public void setOrientation(int index, Orientation orientation) {
+    set(index, withOrientation(get(index), orientation));
+  }
+  
+  public int getVariant(int index) {
+    return getVariantOfCell(get(index));
+  }
+  
+  public void setVariant(int index, int variant) {
+    set(index, withVariant(get(index), variant));
+  }
+  
+  public boolean isCorrectlyConnected(int index) {
+    return (get(index) & CORRECTLY_CONNECTED_FLAG) != 0;
+  }
+  
+  /**
+   * Sets the correctly connected flag of the component at the given index.
+   */
+  public void setCorrectlyConnected(int index, boolean correctlyConnected) {
+    set(index, correctlyConnected
+        ? get(index) | CORRECTLY_CONNECTED_FLAG
+        : get(index) & ~CORRECTLY_CONNECTED_FLAG);
+  }
+  
+  /**
+   * Returns a view of the tile at the given index. Changes to the view are written to this board.
+   */
+  public Tile getTile(int index) {
+    return isComponent(index) ? new ComponentTileView(index) : new CableTileView(index);
+  }
+  
+  /**
+   * Returns a packed component cell.
+   */
+  public static int componentCell(int connections, int variant) {
+    return COMPONENT_FLAG | (connections << COUNT_SHIFT) | (variant << VARIANT_SHIFT);
+  }
+  
+  /**
+   * Returns a packed cable cell.
+   */
+  public static int cableCell(int cables, Orientation orientation, int variant) {
+    return withOrientation(cables << COUNT_SHIFT, orientation) | (variant << VARIANT_SHIFT);
+  }
+  
+  public static boolean isComponentCell(int cell) {
+    return (cell & COMPONENT_FLAG) != 0;
+  }
+  
+  /**
+   * Returns the connections of a component cell or the cables of a cable cell.
+   */
+  public static int getCount(int cell) {
+    return (cell & COUNT_MASK) >>> COUNT_SHIFT;
+  }
+  
+  public static int withCount(int cell, int count) {
+    return (cell & ~COUNT_MASK) | (count << COUNT_SHIFT);
+  }
+  
+  public static Orientation getOrientationOfCell(int cell) {
+    return (cell & VERTICAL_FLAG) != 0 ? Orientation.VERTICAL : Orientation.HORIZONTAL;
+  }
+  
+  public static int withOrientation(int cell, Orientation orientation) {
+    return orientation == Orientation.VERTICAL ? cell | VERTICAL_FLAG : cell & ~VERTICAL_FLAG;
+  }
+  
+  public static int getVariantOfCell(int cell) {
+    return (cell & VARIANT_MASK) >>> VARIANT_SHIFT;
+  }
+  
+  public static int withVariant(int cell, int variant) {
+    return (cell & ~VARIANT_MASK) | (variant << VARIANT_SHIFT);
+  }
+  
+  /**
+   * Returns the packed cell of the given tile.
+   */
+  public static int pack(Tile tile) {
+    if (tile instanceof ComponentTile) {
+      final ComponentTile componentTile = (ComponentTile) tile;
+      final int cell = componentCell(componentTile.getConnections(), componentTile.getVariant());
+      return componentTile.isCorrectlyConnected() ? cell | CORRECTLY_CONNECTED_FLAG : cell;
+    } else if (tile instanceof CableTile) {
+      final CableTile cableTile = (CableTile) tile;
+      final Orientation orientation = cableTile.getOrientation() == null
+          ? Orientation.HORIZONTAL : cableTile.getOrientation();
+      return cableCell(cableTile.getCables(), orientation, cableTile.getVariant());
+    } else {
+      throw new RuntimeException("Unknown tile type!");
+    }
+  }
+  
+  /**
+   * Returns a new detached tile for the given packed cell.
+   */
+  public static Tile unpack(int cell) {
+    if (isComponentCell(cell)) {
+      final ComponentTile componentTile = new ComponentTile(getCount(cell));
+      componentTile.setVariant(getVariantOfCell(cell));
+      componentTile.setCorrectlyConnected((cell & CORRECTLY_CONNECTED_FLAG) != 0);
+      return componentTile;
+    }
+    return new CableTile(getCount(cell), getOrientationOfCell(cell), getVariantOfCell(cell));
+  }
+  
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof PackedBoard)) {
+      return false;
+    }
+    final PackedBoard other = (PackedBoard) obj;
+    if (width != other.width || height != other.height) {
+      return false;
+    }
+    for (int chunk = 0; chunk < chunks.length; chunk++) {
+      if (!Arrays.equals(chunks[chunk], other.chunks[chunk])) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  @Override
+  public int hashCode() {
+    int hashCode = 31 * width + height;
+    for (int[] chunk : chunks) {
+      hashCode = 31 * hashCode + Arrays.hashCode(chunk);
+    }
+    return hashCode;
+  }
+  
+  private class ComponentTileView extends ComponentTile {
+    
+    private final int index;
+    
+    ComponentTileView(int index) {
+      super(PackedBoard.this.getConnections(index));
+      this.index = index;
+    }
+    
+    @Override
+    public int getVariant() {
+      return PackedBoard.this.getVariant(index);
+    }
+    
+    @Override
+    public void setVariant(int variant) {
+      PackedBoard.this.setVariant(index, variant);
+    }
+    
+    @Override
+    public boolean isCorrectlyConnected() {
+      return PackedBoard.this.isCorrectlyConnected(index);
+    }
+    
+    @Override
+    public void setCorrectlyConnected(boolean correctlyConnected) {
+      PackedBoard.this.setCorrectlyConnected(index, correctlyConnected);
+    }
+  }
+  
+  private class CableTileView extends CableTile {
+    
+    private final int index;
+    
+    CableTileView(int index) {
+      this.index = index;
+    }
+    
+    @Override
+    public int getVariant() {
+      return PackedBoard.this.getVariant(index);
+    }
+    
+    @Override
+    public void setVariant(int variant) {
+      PackedBoard.this.setVariant(index, variant);
+    }
+    
+    @Override
+    public int getCables() {
+      return PackedBoard.this.getCables(index);
+    }
+    
+    @Override
+    public void setCables(int cables) {
+      PackedBoard.this.setCables(index, cables);
+    }
+    
+    @Override
+    public Orientation getOrientation() {
+      return PackedBoard.this.getOrientation(index);
+    }
+    
+    @Override
+    public void setOrientation(Orientation orientation) {
+      PackedBoard.this.setOrientation(index, orientation);
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package de.erikhofer.hashiwokahero;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.Getter;
+
+/**
+ * A file of many boards that are read with random access. The file is memory-mapped, so reading a
+ * board only touches the pages of its index entry and its cells.
+ *
+ * <p>Format (all numbers big-endian):
+ * <pre>
+ * header   int magic ({@link #MAGIC}), int version, int capacity, int number of boards,
+ *          padded to {@link #HEADER_SIZE} bytes
+ * index    one long per possible board (capacity) with the file offset of the board
+ * boards   long seed, int width, int height, cells (bit-packed, padded to whole bytes)
+ * </pre>
+ * The index has a fixed size so that boards can be appended without moving anything, see
+ * {@link PuzzleLibraryWriter}. Cells are stored in index order as bit strings, most significant
+ * bit first:
+ * <pre>
+ * 0                                              empty cable tile
+ * 10 cables - 1 (1) vertical (1) variant (3)    cable tile
+ * 11 connections - 1 (3) variant (2)            component
+ * </pre>
+ * Only the solution is stored. Whether components are correctly connected is computed again by
+ * {@link GameState}.
+ *
+ * <p>A library can be read by multiple threads at the same time.
+ */
+public class PuzzleLibrary implements Closeable {
+  
+  static final int MAGIC = 0x48415348; // "HASH"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  static final int CAPACITY_OFFSET = 8;
+  static final int BOARD_COUNT_OFFSET = 12;
+  static final int INDEX_ENTRY_SIZE = Long.BYTES;
+  static final int BOARD_HEADER_SIZE = Long.BYTES + 2 * Integer.BYTES;
+  static final int CABLE_VARIANT_BITS = 3;
+  static final int COMPONENT_VARIANT_BITS = 2;
+  
+  private final FileChannel channel;
+  
+  /**
+   * The whole file or null if it is too large to be mapped at once. Boards are mapped one at a
+   * time then.
+   */
+  private final ByteBuffer data;
+  private final long size;
+  private final ByteBuffer index;
+  
+  private final @Getter int capacity;
+  private final @Getter int boardCount;
+  
+  /**
+   * Opens the library in the given file. Boards that are appended after it was opened are not
+   * visible.
+   */
+  public PuzzleLibrary(Path file) throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      size = channel.size();
+      if (size < HEADER_SIZE) {
+        throw new IOException("Not a puzzle library: " + file);
+      }
+      data = size <= Integer.MAX_VALUE
+          ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+      final ByteBuffer header = map(0, HEADER_SIZE);
+      if (header.getInt(0) != MAGIC) {
+        throw new IOException("Not a puzzle library: " + file);
+      }
+      if (header.getInt(4) != VERSION) {
+        throw new IOException("Unsupported version of puzzle library: " + header.getInt(4));
+      }
+      capacity = header.getInt(CAPACITY_OFFSET);
+      boardCount = header.getInt(BOARD_COUNT_OFFSET);
+      index = map(HEADER_SIZE, (long) capacity * INDEX_ENTRY_SIZE);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+  
+  /**
+   * Returns the seed of the generator of the board with the given number.
+   */
+  public long getSeed(int board) throws IOException {
+    return map(getOffset(board), BOARD_HEADER_SIZE).getLong(0);
+  }
+  
+  /**
+   * Decodes the board with the given number.
+   */
+  public PackedBoard getBoard(int board) throws IOException {
+    final long offset = getOffset(board);
+    final ByteBuffer boardHeader = map(offset, BOARD_HEADER_SIZE);
+    final int width = boardHeader.getInt(Long.BYTES);
+    final int height = boardHeader.getInt(Long.BYTES + Integer.BYTES);
+    final long end = board + 1 < boardCount ? getOffset(board + 1) : size;
+    final ByteBuffer cells = map(offset + BOARD_HEADER_SIZE, end - offset - BOARD_HEADER_SIZE);
+    
+    final PackedBoard packedBoard = new PackedBoard(width, height);
+    long bit = 0;
+    for (int cell = 0; cell < packedBoard.getSize(); cell++) {
+      if (!getBit(cells, bit++)) {
+        continue; // empty cable tile
+      }
+      if (getBit(cells, bit++)) {
+        final int connections = getBits(cells, bit, 3) + 1;
+        final int variant = getBits(cells, bit + 3, COMPONENT_VARIANT_BITS);
+        bit += 3 + COMPONENT_VARIANT_BITS;
+        packedBoard.set(cell, PackedBoard.componentCell(connections, variant));
+      } else {
+        final int cables = getBits(cells, bit, 1) + 1;
+        final Orientation orientation = getBit(cells, bit + 1)
+            ? Orientation.VERTICAL : Orientation.HORIZONTAL;
+        final int variant = getBits(cells, bit + 2, CABLE_VARIANT_BITS);
+        bit += 2 + CABLE_VARIANT_BITS;
+        packedBoard.set(cell, PackedBoard.cableCell(cables, orientation, variant));
+      }
+    }
+    return packedBoard;
+  }
+  
+  /**
+   * Decodes the board with the given number together with its seed. The index of the result is
+   * the number of the board.
+   */
+  public GeneratedBoard getGeneratedBoard(int board) throws IOException {
+    return new GeneratedBoard(board, getSeed(board), getBoard(board));
+  }
+  
+  /**
+   * Decodes the board with the given number into a new game.
+   */
+  public GameState getGameState(int board) throws IOException {
+    return new GameState(getBoard(board));
+  }
+  
+  private long getOffset(int board) {
+    checkArgument(board >= 0 && board < boardCount, "There is no board %s!", board);
+    return index.getLong(board * INDEX_ENTRY_SIZE);
+  }
+  
+  /**
+   * Returns a buffer with the given part of the file that starts at position 0.
+   */
+  private ByteBuffer map(long offset, long length) throws IOException {
+    if (offset < 0 || length < 0 || offset + length > size) {
+      throw new IOException("The puzzle library is corrupt!");
+    }
+    if (data == null) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+    // the position of the shared buffer is never changed, so it can be duplicated concurrently
+    final ByteBuffer duplicate = data.duplicate();
+    duplicate.position((int) offset);
+    duplicate.limit((int) (offset + length));
+    return duplicate.slice();
+  }
+  
+  private static boolean getBit(ByteBuffer buffer, long bit) {
+    return (buffer.get((int) (bit >>> 3)) & (0x80 >>> (bit & 7))) != 0;
+  }
+  
+  private static int getBits(ByteBuffer buffer, long bit, int bits) {
+    int value = 0;
+    for (int i = 0; i < bits; i++) {
+      value = value << 1 | (getBit(buffer, bit + i) ? 1 : 0);
+    }
+    return value;
+  }
+  
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
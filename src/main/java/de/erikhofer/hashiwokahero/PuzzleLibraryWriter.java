@@ -0,0 +1,247 @@
+package de.erikhofer.hashiwokahero;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Appends boards to a {@link PuzzleLibrary}. Boards are encoded one after the other into a buffer
+ * that is written when it is full, so boards can be streamed from a generator with
+ * {@link #addBatch(BatchBoardGenerator, int, int)}.
+ *
+ * <p>The number of boards in the header and their index entries are updated by {@link #flush()}
+ * and {@link #close()}. Until then, readers don't see the new boards. A writer is not thread-safe.
+ */
+public class PuzzleLibraryWriter implements Closeable {
+  
+  private static final int BUFFER_SIZE = 1 << 16;
+  
+  private final FileChannel channel;
+  private final @Getter int capacity;
+  private @Getter int boardCount;
+  
+  /**
+   * The boards of which the index entries haven't been written yet start at this number.
+   */
+  private int flushedBoardCount;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final ByteBuffer indexBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  
+  /**
+   * The file offset of the end of the last board.
+   */
+  private long position;
+  
+  /**
+   * The bits that haven't been put into the buffer yet, aligned to the most significant bit.
+   */
+  private long bits;
+  private int bitCount;
+  
+  private PuzzleLibraryWriter(FileChannel channel, int capacity, int boardCount, long position) {
+    this.channel = channel;
+    this.capacity = capacity;
+    this.boardCount = boardCount;
+    flushedBoardCount = boardCount;
+    this.position = position;
+  }
+  
+  /**
+   * Creates a new empty library in the given file, which is replaced if it exists. The index is
+   * allocated for the given number of boards, so that no more can be added.
+   */
+  public static PuzzleLibraryWriter create(@NonNull Path file, int capacity) throws IOException {
+    checkArgument(capacity >= 0, "The capacity must not be negative!");
+    final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    final PuzzleLibraryWriter writer = new PuzzleLibraryWriter(channel, capacity, 0,
+        PuzzleLibrary.HEADER_SIZE + (long) capacity * PuzzleLibrary.INDEX_ENTRY_SIZE);
+    try {
+      final ByteBuffer header = ByteBuffer.allocate(PuzzleLibrary.HEADER_SIZE);
+      header.putInt(PuzzleLibrary.MAGIC);
+      header.putInt(PuzzleLibrary.VERSION);
+      header.putInt(capacity);
+      header.putInt(0);
+      header.clear();
+      writeFully(channel, header, 0);
+      writeFully(channel, ByteBuffer.allocate(1), writer.position - 1); // allocate the index
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    return writer;
+  }
+  
+  /**
+   * Opens an existing library to add more boards to it.
+   */
+  public static PuzzleLibraryWriter append(@NonNull Path file) throws IOException {
+    final int capacity;
+    final int boardCount;
+    try (PuzzleLibrary library = new PuzzleLibrary(file)) {
+      capacity = library.getCapacity();
+      boardCount = library.getBoardCount();
+    }
+    final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+    return new PuzzleLibraryWriter(channel, capacity, boardCount, channel.size());
+  }
+  
+  /**
+   * Generates the given number of boards and appends them in the order of their index while they
+   * are generated, so the batch doesn't have to fit into memory.
+   */
+  public void addBatch(@NonNull BatchBoardGenerator generator, int boards, int components)
+      throws IOException {
+    try {
+      generator.generate(boards, components, generatedBoard -> {
+        try {
+          add(generatedBoard);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+  
+  /**
+   * Appends the given board with the seed it was generated with.
+   */
+  public void add(@NonNull GeneratedBoard generatedBoard) throws IOException {
+    add(generatedBoard.getSeed(), generatedBoard.getBoard());
+  }
+  
+  /**
+   * Appends the given solution with the seed it was generated with. The correctly connected flags
+   * and the orientation and variant of empty cable tiles are not stored.
+   */
+  public void add(long seed, @NonNull PackedBoard solution) throws IOException {
+    checkState(channel.isOpen(), "The writer is closed!");
+    checkState(boardCount < capacity, "The library is full!");
+    for (int index = 0; index < solution.getSize(); index++) {
+      checkCell(solution.get(index));
+    }
+    if (indexBuffer.remaining() < PuzzleLibrary.INDEX_ENTRY_SIZE) {
+      flush();
+    }
+    indexBuffer.putLong(position + buffer.position());
+    boardCount++;
+    
+    ensureRemaining(PuzzleLibrary.BOARD_HEADER_SIZE);
+    buffer.putLong(seed);
+    buffer.putInt(solution.getWidth());
+    buffer.putInt(solution.getHeight());
+    for (int index = 0; index < solution.getSize(); index++) {
+      final int cell = solution.get(index);
+      final int count = PackedBoard.getCount(cell);
+      final int variant = PackedBoard.getVariantOfCell(cell);
+      if (PackedBoard.isComponentCell(cell)) {
+        putBits(0b11, 2);
+        putBits(count - 1, 3);
+        putBits(variant, PuzzleLibrary.COMPONENT_VARIANT_BITS);
+      } else if (count == 0) {
+        putBits(0, 1);
+      } else {
+        putBits(0b10, 2);
+        putBits(count - 1, 1);
+        putBits(PackedBoard.getOrientationOfCell(cell) == Orientation.VERTICAL ? 1 : 0, 1);
+        putBits(variant, PuzzleLibrary.CABLE_VARIANT_BITS);
+      }
+    }
+    if (bitCount > 0) {
+      putBits(0, 8 - bitCount); // pad to a whole byte
+    }
+  }
+  
+  /**
+   * Checks that the given cell can be stored, so that a board is either added completely or not
+   * at all.
+   */
+  private static void checkCell(int cell) {
+    final int count = PackedBoard.getCount(cell);
+    final int variant = PackedBoard.getVariantOfCell(cell);
+    if (PackedBoard.isComponentCell(cell)) {
+      checkArgument(count >= 1 && count <= 8, "Components must have 1 to 8 connections!");
+      checkArgument(variant < 1 << PuzzleLibrary.COMPONENT_VARIANT_BITS,
+          "Unsupported component variant: %s", variant);
+    } else if (count > 0) {
+      checkArgument(count <= 2, "Cable tiles must have at most 2 cables!");
+      checkArgument(variant < 1 << PuzzleLibrary.CABLE_VARIANT_BITS,
+          "Unsupported cable variant: %s", variant);
+    }
+  }
+  
+  /**
+   * Appends the lowest given number of bits of the given value.
+   */
+  private void putBits(int value, int count) throws IOException {
+    bits |= (long) value << (64 - bitCount - count);
+    bitCount += count;
+    while (bitCount >= 8) {
+      ensureRemaining(1);
+      buffer.put((byte) (bits >>> 56));
+      bits <<= 8;
+      bitCount -= 8;
+    }
+  }
+  
+  private void ensureRemaining(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      writeBuffer();
+    }
+  }
+  
+  private void writeBuffer() throws IOException {
+    buffer.flip();
+    position += writeFully(channel, buffer, position);
+    buffer.clear();
+  }
+  
+  /**
+   * Writes all boards that were added so far and makes them visible to readers that are opened
+   * afterwards.
+   */
+  public void flush() throws IOException {
+    writeBuffer();
+    indexBuffer.flip();
+    writeFully(channel, indexBuffer, PuzzleLibrary.HEADER_SIZE
+        + (long) flushedBoardCount * PuzzleLibrary.INDEX_ENTRY_SIZE);
+    indexBuffer.clear();
+    flushedBoardCount = boardCount;
+    
+    final ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+    count.putInt(0, boardCount);
+    writeFully(channel, count, PuzzleLibrary.BOARD_COUNT_OFFSET);
+  }
+  
+  private static int writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    int written = 0;
+    while (buffer.hasRemaining()) {
+      written += channel.write(buffer, position + written);
+    }
+    return written;
+  }
+  
+  @Override
+  public void close() throws IOException {
+    if (channel.isOpen()) {
+      try {
+        flush();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+}
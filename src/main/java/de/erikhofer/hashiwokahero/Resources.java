@@ -1,13 +1,30 @@
 package de.erikhofer.hashiwokahero;
 
 import com.google.common.collect.ImmutableMap;
+import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
 import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.ImageIO;
 
+/**
+ * The images of the game. All images are converted to the format of the screen when they are
+ * loaded, so Java2D can keep them in video memory and draw them without converting them.
+ *
+ * <p>Images are only decoded when they are needed or after {@link #preload()}. They are decoded in
+ * parallel on the common fork-join pool.
+ */
 public class Resources {
   
+  private static final List<LazyImage> ALL_IMAGES = new ArrayList<>();
+  
   public static final int VARIANT_1_POSITIVE = 0;
   public static final int VARIANT_1_NEGATIVE = 1;
   public static final int VARIANT_1_MISC = 2;
@@ -20,7 +37,7 @@ public class Resources {
    * Image resources for component tiles. Dimension 1 = number of connections; Dimension 2 =
    * variant.
    */
-  public static final Image[][] COMPONENTS = new Image[][] {
+  public static final LazyImage[][] COMPONENTS = new LazyImage[][] {
     {}, // there is no component with 0 connections
     { loadImage("component-1-red.png"), loadImage("component-1-black.png"),
       loadImage("component-1-blue.png") },
@@ -37,7 +54,7 @@ public class Resources {
   /**
    * Image resources for connected cables for each direction.
    */
-  public static final ImmutableMap<Direction, Image> CONNECTIONS = ImmutableMap.of(
+  public static final ImmutableMap<Direction, LazyImage> CONNECTIONS = ImmutableMap.of(
       Direction.NORTH, loadImage("hole-n.png"),
       Direction.EAST, loadImage("hole-e.png"),
       Direction.SOUTH, loadImage("hole-s.png"),
@@ -47,7 +64,7 @@ public class Resources {
   /**
    * Image resources for holes (unconnected connections).
    */
-  public static final ImmutableMap<Orientation, Image> HOLES = ImmutableMap.of(
+  public static final ImmutableMap<Orientation, LazyImage> HOLES = ImmutableMap.of(
       Orientation.HORIZONTAL, loadImage("hole-h.png"),
       Orientation.VERTICAL, loadImage("hole-v.png")
   );
@@ -55,15 +72,15 @@ public class Resources {
   /**
    * Image resources for cable tiles. Dimension 1 = variant.
    */
-  public static final ImmutableMap<Orientation, Image[]> CABLES = ImmutableMap.of(
-      Orientation.HORIZONTAL, new Image[] {
+  public static final ImmutableMap<Orientation, LazyImage[]> CABLES = ImmutableMap.of(
+      Orientation.HORIZONTAL, new LazyImage[] {
         loadImage("cable-h-blue.png"),
         loadImage("cable-h-brown.png"),
         loadImage("cable-h-green.png"),
         loadImage("cable-h-white.png"),
         loadImage("cable-h-yellow.png")
       },
-      Orientation.VERTICAL, new Image[] {
+      Orientation.VERTICAL, new LazyImage[] {
         loadImage("cable-v-blue.png"),
         loadImage("cable-v-brown.png"),
         loadImage("cable-v-green.png"),
@@ -72,6 +89,17 @@ public class Resources {
       }
   );
   
+  /**
+   * Starts decoding all images in the background. This should be called as early as possible.
+   *
+   * @return a future that completes when all images are loaded
+   */
+  public static CompletableFuture<Void> preload() {
+    return CompletableFuture.allOf(ALL_IMAGES.stream()
+        .map(LazyImage::load)
+        .toArray(CompletableFuture<?>[]::new));
+  }
+  
   public static int getNumberOfCableVariants() {
     return CABLES.get(Orientation.HORIZONTAL).length;
   }
@@ -80,9 +108,46 @@ public class Resources {
     return COMPONENTS[connections].length;
   }
   
-  private static Image loadImage(String fileName) {
+  /**
+   * Creates an image in the format of the default screen. In a headless environment an image with
+   * integer pixels is created instead.
+   *
+   * @param transparency one of the constants of {@link Transparency}
+   */
+  public static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+    if (GraphicsEnvironment.isHeadless()) {
+      return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+          ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    }
+    return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+        .getDefaultConfiguration().createCompatibleImage(width, height, transparency);
+  }
+  
+  /**
+   * Returns a copy of the given image in the format of the default screen.
+   */
+  public static BufferedImage toCompatibleImage(BufferedImage image) {
+    final BufferedImage compatibleImage = createCompatibleImage(image.getWidth(),
+        image.getHeight(), image.getTransparency());
+    final Graphics g = compatibleImage.getGraphics();
+    try {
+      g.drawImage(image, 0, 0, null);
+    } finally {
+      g.dispose();
+    }
+    return compatibleImage;
+  }
+  
+  private static LazyImage loadImage(String fileName) {
+    final LazyImage image = new LazyImage(() -> decodeImage(fileName), ForkJoinPool.commonPool());
+    ALL_IMAGES.add(image);
+    return image;
+  }
+  
+  private static Image decodeImage(String fileName) {
     try {
-      return ImageIO.read(Resources.class.getResourceAsStream("/img/" + fileName));
+      return toCompatibleImage(
+          ImageIO.read(Resources.class.getResourceAsStream("/img/" + fileName)));
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -1,19 +1,39 @@
 package de.erikhofer.hashiwokahero;
 
 import java.awt.GridLayout;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSpinner;
+import javax.swing.JTextField;
+import javax.swing.ProgressMonitor;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 public class SettingsWindow extends JFrame {
 
   private static final long serialVersionUID = 1L;
   
+  /**
+   * Number of candidates that are checked for a board with a unique solution before giving up.
+   */
+  private static final int MAX_UNIQUE_ATTEMPTS = 10_000;
+  
+  /**
+   * Boards of games with a seed are cached, so that playing the same seed again, e.g. a daily
+   * puzzle, doesn't generate the board again.
+   */
+  private static final BoardCache BOARD_CACHE = new BoardCache(1 << 22);
+  
   public static void main(String[] args) {
+    Resources.preload(); // decode the images while the settings are shown
     new SettingsWindow();
   }
   
@@ -27,17 +47,39 @@ public class SettingsWindow extends JFrame {
     
     JPanel content = new JPanel();
     content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-    content.setLayout(new GridLayout(3, 1, 10, 10));
+    content.setLayout(new GridLayout(6, 1, 10, 10));
     setContentPane(content);
     
     content.add(new JLabel("Number of Components"));
     JSpinner componentsSpinner = new JSpinner(new SpinnerNumberModel(10, 2, Integer.MAX_VALUE, 1));
     content.add(componentsSpinner);
     
+    content.add(new JLabel("Seed (optional)"));
+    JTextField seedField = new JTextField();
+    content.add(seedField);
+    
+    JCheckBox uniqueSolutionCheckBox = new JCheckBox("Unique Solution");
+    content.add(uniqueSolutionCheckBox);
+    
     JButton startButton = new JButton("Start Game");
     startButton.addActionListener(e -> {
-      new GameWindow((int) componentsSpinner.getValue(), this::closeGameWindow).setVisible(true);
-      setVisible(false);
+      final int components = (int) componentsSpinner.getValue();
+      final String seedText = seedField.getText().trim();
+      final Long seed;
+      try {
+        seed = seedText.isEmpty() ? null : Long.parseLong(seedText);
+      } catch (NumberFormatException ex) {
+        JOptionPane.showMessageDialog(this, "The seed must be a whole number.", "Seed",
+            JOptionPane.WARNING_MESSAGE);
+        return;
+      }
+      if (uniqueSolutionCheckBox.isSelected()) {
+        generateUniqueBoard(components, seed, startButton);
+      } else if (seed != null) {
+        startGame(BOARD_CACHE.getGameState(seed, components));
+      } else {
+        startGame(new GameState(components));
+      }
     });
     content.add(startButton);
     
@@ -46,6 +88,67 @@ public class SettingsWindow extends JFrame {
     setVisible(true);
   }
   
+  private void startGame(GameState gameState) {
+    new GameWindow(gameState, this::closeGameWindow).setVisible(true);
+    setVisible(false);
+  }
+  
+  /**
+   * Generates a board with a unique solution in the background and starts a game with it. The
+   * attempts are shown in a progress dialog that can cancel the generation.
+   *
+   * @param seed the master seed of the generator or null for a random one
+   */
+  private void generateUniqueBoard(int components, Long seed, JButton startButton) {
+    startButton.setEnabled(false);
+    final UniqueBoardGenerator generator = seed == null
+        ? new UniqueBoardGenerator() : new UniqueBoardGenerator(seed);
+    final ProgressMonitor progressMonitor = new ProgressMonitor(this,
+        "Generating a board with a unique solution", "", 0, MAX_UNIQUE_ATTEMPTS);
+    final Timer cancelTimer = new Timer(100, e -> {
+      if (progressMonitor.isCanceled()) {
+        generator.cancel();
+      }
+    });
+    
+    new SwingWorker<GeneratedBoard, Integer>() {
+      
+      @Override
+      protected GeneratedBoard doInBackground() {
+        return generator.generate(components, MAX_UNIQUE_ATTEMPTS, attempts -> publish(attempts));
+      }
+      
+      @Override
+      protected void process(List<Integer> attempts) {
+        final int lastAttempts = attempts.get(attempts.size() - 1);
+        progressMonitor.setProgress(lastAttempts);
+        progressMonitor.setNote(lastAttempts + " boards checked");
+      }
+      
+      @Override
+      protected void done() {
+        cancelTimer.stop();
+        progressMonitor.close();
+        startButton.setEnabled(true);
+        final GeneratedBoard board;
+        try {
+          board = get();
+        } catch (InterruptedException | ExecutionException e) {
+          throw new IllegalStateException("The board could not be generated!", e);
+        }
+        if (board != null) {
+          startGame(new GameState(board.getBoard()));
+        } else if (!generator.isCancelled()) {
+          JOptionPane.showMessageDialog(SettingsWindow.this, "No board with a unique solution was "
+              + "found after " + MAX_UNIQUE_ATTEMPTS + " attempts. Try fewer components.",
+              "Unique Solution", JOptionPane.WARNING_MESSAGE);
+        }
+      }
+    
+    }.execute();
+    cancelTimer.start();
+  }
+  
   private void closeGameWindow(GameWindow gameWindow) {
     gameWindow.dispose();
     setVisible(true);
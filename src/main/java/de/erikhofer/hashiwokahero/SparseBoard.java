@@ -0,0 +1,158 @@
+package de.erikhofer.hashiwokahero;
+
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * An unbounded board that only stores occupied tiles. Tiles are packed cells as described in
+ * {@link PackedBoard} and are kept in an open-addressing hash table keyed by the position packed
+ * into a long, so neither lookups nor insertions allocate any objects.
+ *
+ * <p>The bounding box of all stored tiles is tracked, so the board can be transformed into a
+ * {@link PackedBoard} without scanning it first.
+ */
+public class SparseBoard {
+  
+  /**
+   * Returned by {@link #get(int, int)} for tiles that are not stored. Packed cells are never
+   * negative.
+   */
+  public static final int NO_CELL = -1;
+  
+  /**
+   * Marks an unused slot. This is the key of row {@code Integer.MIN_VALUE}, col -1, which can't be
+   * reached when growing a board from the origin.
+   */
+  private static final long FREE_KEY = Long.MIN_VALUE | 0xFFFFFFFFL;
+  
+  private static final int MIN_CAPACITY = 16;
+  
+  private long[] keys;
+  private int[] cells;
+  private int mask;
+  private @Getter int size;
+  
+  private @Getter int minRow = Integer.MAX_VALUE;
+  private @Getter int maxRow = Integer.MIN_VALUE;
+  private @Getter int minCol = Integer.MAX_VALUE;
+  private @Getter int maxCol = Integer.MIN_VALUE;
+  
+  public SparseBoard() {
+    this(MIN_CAPACITY);
+  }
+  
+  /**
+   * Creates an empty board that can store the given number of tiles without growing.
+   */
+  public SparseBoard(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+  
+  public static long key(int row, int col) {
+    return ((long) row << 32) | (col & 0xFFFFFFFFL);
+  }
+  
+  public static int getRow(long key) {
+    return (int) (key >> 32);
+  }
+  
+  public static int getCol(long key) {
+    return (int) key;
+  }
+  
+  /**
+   * Returns the packed cell at the given position or {@link #NO_CELL} if there is none.
+   */
+  public int get(int row, int col) {
+    final long key = key(row, col);
+    for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+      final long slotKey = keys[slot];
+      if (slotKey == key) {
+        return cells[slot];
+      }
+      if (slotKey == FREE_KEY) {
+        return NO_CELL;
+      }
+    }
+  }
+  
+  public boolean contains(int row, int col) {
+    return get(row, col) != NO_CELL;
+  }
+  
+  /**
+   * Stores the given packed cell at the given position, replacing any previous one.
+   */
+  public void put(int row, int col, int cell) {
+    final long key = key(row, col);
+    int slot = hash(key) & mask;
+    while (keys[slot] != FREE_KEY) {
+      if (keys[slot] == key) {
+        cells[slot] = cell;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    cells[slot] = cell;
+    size++;
+    
+    minRow = Math.min(minRow, row);
+    maxRow = Math.max(maxRow, row);
+    minCol = Math.min(minCol, col);
+    maxCol = Math.max(maxCol, col);
+    
+    if (size * 2 > keys.length) {
+      rehash(keys.length << 1);
+    }
+  }
+  
+  /**
+   * Returns a dense board that covers the bounding box of all stored tiles. Missing tiles become
+   * empty cable tiles.
+   */
+  public PackedBoard toPackedBoard() {
+    final PackedBoard packedBoard = new PackedBoard(maxCol - minCol + 1, maxRow - minRow + 1);
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != FREE_KEY) {
+        packedBoard.set(packedBoard.getIndex(getRow(keys[slot]) - minRow,
+            getCol(keys[slot]) - minCol), cells[slot]);
+      }
+    }
+    return packedBoard;
+  }
+  
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    Arrays.fill(keys, FREE_KEY);
+    cells = new int[capacity];
+    mask = capacity - 1;
+  }
+  
+  private void rehash(int capacity) {
+    final long[] oldKeys = keys;
+    final int[] oldCells = cells;
+    allocate(capacity);
+    for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+      if (oldKeys[oldSlot] != FREE_KEY) {
+        int slot = hash(oldKeys[oldSlot]) & mask;
+        while (keys[slot] != FREE_KEY) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[oldSlot];
+        cells[slot] = oldCells[oldSlot];
+      }
+    }
+  }
+  
+  private static int hash(long key) {
+    // Neighbouring positions differ in only a few bits, so spread them over the whole table.
+    final long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32));
+  }
+
+}
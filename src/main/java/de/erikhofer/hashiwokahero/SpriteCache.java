@@ -0,0 +1,73 @@
+package de.erikhofer.hashiwokahero;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.awt.Image;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A bounded cache of rendered sprites identified by an int key. Missing sprites are created by a
+ * factory. When the cache is full, the least recently used sprite is evicted.
+ *
+ * <p>A cache is not thread-safe. It is meant to be used by the render thread only.
+ */
+public class SpriteCache {
+  
+  private final @Getter int capacity;
+  private final IntFunction<Image> factory;
+  private final LinkedHashMap<Integer, Image> sprites;
+  
+  private @Getter long hits;
+  private @Getter long misses;
+  private @Getter long evictions;
+  
+  /**
+   * Creates an empty cache that holds at most the given number of sprites.
+   */
+  public SpriteCache(int capacity, @NonNull IntFunction<Image> factory) {
+    checkArgument(capacity > 0, "The capacity must be positive!");
+    this.capacity = capacity;
+    this.factory = factory;
+    sprites = new LinkedHashMap<Integer, Image>(16, 0.75f, true) {
+      
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Image> eldest) {
+        if (size() > SpriteCache.this.capacity) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+  
+  /**
+   * Returns the sprite with the given key and creates it if it isn't cached.
+   */
+  public Image get(int key) {
+    Image sprite = sprites.get(key);
+    if (sprite != null) {
+      hits++;
+      return sprite;
+    }
+    misses++;
+    sprite = factory.apply(key);
+    sprites.put(key, sprite);
+    return sprite;
+  }
+  
+  public int getSize() {
+    return sprites.size();
+  }
+  
+  public void clear() {
+    sprites.clear();
+  }
+
+}
@@ -12,6 +12,6 @@ public abstract class Tile {
   protected Tile() {}
   
   protected Tile(Tile tile) {
-    variant = tile.variant;
+    variant = tile.getVariant();
   }
 }
@@ -0,0 +1,73 @@
+package de.erikhofer.hashiwokahero;
+
+import lombok.Getter;
+
+/**
+ * Disjoint sets of the elements {@code 0} to {@code size - 1} with union by size and path halving.
+ * Sets can only be merged, so removing a connection requires a {@link #reset()} and merging the
+ * remaining connections again.
+ */
+public class UnionFind {
+  
+  private final int[] parents;
+  private final int[] sizes;
+  
+  /**
+   * The number of disjoint sets.
+   */
+  private @Getter int sets;
+  
+  /**
+   * Creates a union-find structure where every element is in its own set.
+   */
+  public UnionFind(int size) {
+    parents = new int[size];
+    sizes = new int[size];
+    reset();
+  }
+  
+  /**
+   * Puts every element back into its own set.
+   */
+  public void reset() {
+    for (int element = 0; element < parents.length; element++) {
+      parents[element] = element;
+      sizes[element] = 1;
+    }
+    sets = parents.length;
+  }
+  
+  /**
+   * Returns the representative of the set of the given element.
+   */
+  public int find(int element) {
+    while (parents[element] != element) {
+      parents[element] = parents[parents[element]];
+      element = parents[element];
+    }
+    return element;
+  }
+  
+  /**
+   * Merges the sets of the given elements.
+   *
+   * @return whether the elements were in different sets before
+   */
+  public boolean union(int element1, int element2) {
+    int root1 = find(element1);
+    int root2 = find(element2);
+    if (root1 == root2) {
+      return false;
+    }
+    if (sizes[root1] < sizes[root2]) {
+      final int swap = root1;
+      root1 = root2;
+      root2 = swap;
+    }
+    parents[root2] = root1;
+    sizes[root1] += sizes[root2];
+    sets--;
+    return true;
+  }
+
+}
@@ -0,0 +1,225 @@
+package de.erikhofer.hashiwokahero;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import de.erikhofer.hashiwokahero.metrics.GeneratorMetrics;
+import de.erikhofer.hashiwokahero.solver.Puzzle;
+import de.erikhofer.hashiwokahero.solver.Solver;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Generates boards that have exactly one solution. Random boards are generated and checked by a
+ * {@link Solver} that stops at the second solution until a unique one is found.
+ *
+ * <p>Several candidates are checked speculatively in parallel. Attempt {@code i} uses the seed
+ * {@link BatchBoardGenerator#getBoardSeed(long, int)} and the unique candidate with the lowest
+ * attempt is accepted, so the output doesn't depend on the number of threads. Candidates after an
+ * accepted one are cancelled.
+ *
+ * <p>Unique boards get rare quickly with more components, so this is meant for boards of up to a
+ * few hundred components, and a generation gives up after a maximum number of attempts. A
+ * generator is not thread-safe, only {@link #cancel()} may be called from any thread.
+ */
+public class UniqueBoardGenerator {
+  
+  /**
+   * Number of candidates that are checked at the same time per thread of the pool.
+   */
+  private static final int CANDIDATES_PER_THREAD = 2;
+  
+  /**
+   * Number of candidates after which {@link #generate(int)} gives up.
+   */
+  public static final int DEFAULT_MAX_ATTEMPTS = 100_000;
+  
+  private final @Getter long masterSeed;
+  private final ForkJoinPool pool;
+  private int nextAttempt;
+  private volatile boolean cancelled;
+  
+  /**
+   * The candidates that are being checked, so they can be cancelled.
+   */
+  private volatile Candidate[] runningCandidates;
+  
+  /**
+   * Number of candidates that were needed for the accepted boards, including the accepted ones.
+   */
+  private @Getter long attempts;
+  
+  /**
+   * Number of candidates that were checked speculatively but turned out not to be needed.
+   */
+  private @Getter long wastedAttempts;
+  
+  private @Getter long acceptedBoards;
+  
+  /**
+   * Creates a generator with a random master seed that uses the common fork-join pool.
+   */
+  public UniqueBoardGenerator() {
+    this(new Random().nextLong());
+  }
+  
+  /**
+   * Creates a generator that uses the common fork-join pool.
+   */
+  public UniqueBoardGenerator(long masterSeed) {
+    this(masterSeed, ForkJoinPool.commonPool());
+  }
+  
+  public UniqueBoardGenerator(long masterSeed, @NonNull ForkJoinPool pool) {
+    this.masterSeed = masterSeed;
+    this.pool = pool;
+  }
+  
+  /**
+   * Returns the average number of candidates that were needed per accepted board.
+   */
+  public double getAttemptsPerBoard() {
+    return acceptedBoards == 0 ? 0 : (double) attempts / acceptedBoards;
+  }
+  
+  /**
+   * Generates the next board with the given number of components that has exactly one solution.
+   * The index of the result is the attempt that generated the board.
+   *
+   * @throws IllegalStateException if no such board was found within
+   *     {@link #DEFAULT_MAX_ATTEMPTS} attempts or the generator was cancelled
+   */
+  public GeneratedBoard generate(int components) {
+    final GeneratedBoard board = generate(components, DEFAULT_MAX_ATTEMPTS, attempts -> { });
+    checkState(board != null, "No board with %s components and a unique solution was found!",
+        components);
+    return board;
+  }
+  
+  /**
+   * Generates the next board with the given number of components that has exactly one solution,
+   * but gives up after the given number of attempts. The index of the result is the attempt that
+   * generated the board.
+   *
+   * @param progressListener receives the number of attempts of this call after every round of
+   *     candidates
+   * @return the board or null if none was found or the generator was cancelled
+   */
+  public GeneratedBoard generate(int components, int maxAttempts,
+      @NonNull IntConsumer progressListener) {
+    checkArgument(maxAttempts > 0, "The maximum number of attempts must be positive!");
+    final int parallelCandidates = pool.getParallelism() * CANDIDATES_PER_THREAD;
+    int attemptsOfCall = 0;
+    while (attemptsOfCall < maxAttempts && !cancelled) {
+      final int candidateCount = Math.min(parallelCandidates, maxAttempts - attemptsOfCall);
+      final Candidate[] candidates = new Candidate[candidateCount];
+      for (int i = 0; i < candidateCount; i++) {
+        final int attempt = nextAttempt + i;
+        final long seed = BatchBoardGenerator.getBoardSeed(masterSeed, attempt);
+        candidates[i] = new Candidate(attempt, seed);
+      }
+      final AtomicInteger firstUnique = new AtomicInteger(Integer.MAX_VALUE);
+      final CompletableFuture<?>[] checks = new CompletableFuture<?>[candidateCount];
+      runningCandidates = candidates;
+      for (int i = 0; i < candidateCount; i++) {
+        final int position = i;
+        checks[i] = CompletableFuture.runAsync(
+            () -> checkCandidate(candidates, position, components, firstUnique), pool);
+      }
+      CompletableFuture.allOf(checks).join();
+      runningCandidates = null;
+      
+      final int winner = firstUnique.get();
+      if (winner == Integer.MAX_VALUE) {
+        GeneratorMetrics.getInstance().recordRejectedBoards(candidateCount);
+        attempts += candidateCount;
+        nextAttempt += candidateCount;
+        attemptsOfCall += candidateCount;
+        progressListener.accept(attemptsOfCall);
+        continue;
+      }
+      for (int i = winner + 1; i < candidateCount; i++) {
+        if (candidates[i].solver != null) {
+          wastedAttempts++;
+        }
+      }
+      GeneratorMetrics.getInstance().recordRejectedBoards(winner);
+      attempts += winner + 1;
+      nextAttempt += winner + 1;
+      acceptedBoards++;
+      progressListener.accept(attemptsOfCall + winner + 1);
+      final Candidate candidate = candidates[winner];
+      return new GeneratedBoard(candidate.attempt, candidate.seed, candidate.board);
+    }
+    return null;
+  }
+  
+  /**
+   * Stops the current generation and all future generations as soon as possible. They return
+   * null. May be called from any thread.
+   */
+  public void cancel() {
+    cancelled = true;
+    final Candidate[] candidates = runningCandidates;
+    if (candidates != null) {
+      for (Candidate candidate : candidates) {
+        final Solver solver = candidate.solver;
+        if (solver != null) {
+          solver.cancel();
+        }
+      }
+    }
+  }
+  
+  public boolean isCancelled() {
+    return cancelled;
+  }
+  
+  /**
+   * Generates and checks the candidate at the given position unless a unique candidate before it
+   * was already found. Cancels all candidates after it if it is unique.
+   */
+  private void checkCandidate(Candidate[] candidates, int position, int components,
+      AtomicInteger firstUnique) {
+    if (position > firstUnique.get() || cancelled) {
+      return;
+    }
+    final Candidate candidate = candidates[position];
+    candidate.board = new BoardGenerator(candidate.seed).generatePackedBoard(components);
+    final Solver solver = new Solver(Puzzle.fromBoard(candidate.board));
+    candidate.solver = solver;
+    // check again in case a unique candidate was found or the generator was cancelled while the
+    // solver wasn't visible yet
+    if (position > firstUnique.get() || cancelled || !solver.solve(2).isUnique()) {
+      return;
+    }
+    
+    final int first = firstUnique.accumulateAndGet(position, Math::min);
+    for (int i = first + 1; i < candidates.length; i++) {
+      final Solver otherSolver = candidates[i].solver;
+      if (otherSolver != null) {
+        otherSolver.cancel();
+      }
+    }
+  }
+  
+  private static class Candidate {
+    
+    private final int attempt;
+    private final long seed;
+    private PackedBoard board;
+    private volatile Solver solver;
+    
+    private Candidate(int attempt, long seed) {
+      this.attempt = attempt;
+      this.seed = seed;
+    }
+  
+  }
+
+}
@@ -0,0 +1,85 @@
+package de.erikhofer.hashiwokahero.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+
+/**
+ * Measures the frames of a game engine. The engine records the durations of every frame and the
+ * metrics can be read by any thread, e.g. over JMX or by an overlay in the game itself.
+ */
+public class FrameMetrics implements FrameMetricsBean {
+  
+  private final AtomicLong frames = new AtomicLong();
+  private final AtomicLong overrunFrames = new AtomicLong();
+  private final AtomicLong forcedYields = new AtomicLong();
+  private final @Getter Histogram updateHistogram = new Histogram();
+  private final @Getter Histogram renderHistogram = new Histogram();
+  private final @Getter Histogram paintHistogram = new Histogram();
+  private final @Getter Histogram frameHistogram = new Histogram();
+  
+  /**
+   * Records the durations of the parts of a frame in ns.
+   */
+  public void recordFrame(long updateTime, long renderTime, long paintTime) {
+    frames.incrementAndGet();
+    updateHistogram.record(updateTime);
+    renderHistogram.record(renderTime);
+    paintHistogram.record(paintTime);
+    frameHistogram.record(updateTime + renderTime + paintTime);
+  }
+  
+  public void recordOverrun() {
+    overrunFrames.incrementAndGet();
+  }
+  
+  public void recordForcedYield() {
+    forcedYields.incrementAndGet();
+  }
+  
+  @Override
+  public long getFrames() {
+    return frames.get();
+  }
+  
+  @Override
+  public long getOverrunFrames() {
+    return overrunFrames.get();
+  }
+  
+  @Override
+  public long getForcedYields() {
+    return forcedYields.get();
+  }
+  
+  @Override
+  public HistogramSummary getUpdateTimes() {
+    return updateHistogram.getSummary();
+  }
+  
+  @Override
+  public HistogramSummary getRenderTimes() {
+    return renderHistogram.getSummary();
+  }
+  
+  @Override
+  public HistogramSummary getPaintTimes() {
+    return paintHistogram.getSummary();
+  }
+  
+  @Override
+  public HistogramSummary getFrameTimes() {
+    return frameHistogram.getSummary();
+  }
+  
+  @Override
+  public void reset() {
+    frames.set(0);
+    overrunFrames.set(0);
+    forcedYields.set(0);
+    updateHistogram.reset();
+    renderHistogram.reset();
+    paintHistogram.reset();
+    frameHistogram.reset();
+  }
+
+}
@@ -0,0 +1,37 @@
+package de.erikhofer.hashiwokahero.metrics;
+
+import javax.management.MXBean;
+
+/**
+ * The frame times of a game engine as they are exported over JMX. All durations are in
+ * microseconds.
+ */
+@MXBean
+public interface FrameMetricsBean {
+  
+  long getFrames();
+  
+  /**
+   * Returns the number of frames that took longer than the period of a frame.
+   */
+  long getOverrunFrames();
+  
+  /**
+   * Returns the number of times the engine yielded because too many frames overran in a row.
+   */
+  long getForcedYields();
+  
+  HistogramSummary getUpdateTimes();
+  
+  HistogramSummary getRenderTimes();
+  
+  HistogramSummary getPaintTimes();
+  
+  /**
+   * Returns the times of whole frames, i.e. update, render and paint.
+   */
+  HistogramSummary getFrameTimes();
+  
+  void reset();
+
+}
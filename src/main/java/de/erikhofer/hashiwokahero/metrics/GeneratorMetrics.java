@@ -0,0 +1,93 @@
+package de.erikhofer.hashiwokahero.metrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the work of all board generators of the JVM. Generators count their retries locally
+ * and record them once per board, so this doesn't slow down the generation. Boards are generated
+ * in parallel, so everything can be recorded by multiple threads.
+ *
+ * <p>The metrics are registered over JMX when they are used for the first time. If that fails, they
+ * are still recorded.
+ */
+public class GeneratorMetrics implements GeneratorMetricsBean {
+  
+  private static final GeneratorMetrics INSTANCE = new GeneratorMetrics();
+  private static final AtomicBoolean registered = new AtomicBoolean();
+  
+  private final LongAdder boards = new LongAdder();
+  private final LongAdder components = new LongAdder();
+  private final LongAdder originRetries = new LongAdder();
+  private final LongAdder failedDirections = new LongAdder();
+  private final LongAdder rejectedBoards = new LongAdder();
+  private final Histogram timesPerComponent = new Histogram();
+  
+  /**
+   * Returns the metrics of all generators and registers them over JMX on the first call.
+   */
+  public static GeneratorMetrics getInstance() {
+    if (!registered.get() && registered.compareAndSet(false, true)) {
+      Metrics.register(INSTANCE, "BoardGenerator", null);
+    }
+    return INSTANCE;
+  }
+  
+  /**
+   * Records a board that was generated.
+   *
+   * @param time the time it took in ns
+   */
+  public void recordBoard(int components, long originRetries, long failedDirections, long time) {
+    boards.increment();
+    this.components.add(components);
+    this.originRetries.add(originRetries);
+    this.failedDirections.add(failedDirections);
+    timesPerComponent.record(time / components);
+  }
+  
+  public void recordRejectedBoards(long boards) {
+    rejectedBoards.add(boards);
+  }
+  
+  @Override
+  public long getBoards() {
+    return boards.sum();
+  }
+  
+  @Override
+  public long getComponents() {
+    return components.sum();
+  }
+  
+  @Override
+  public long getOriginRetries() {
+    return originRetries.sum();
+  }
+  
+  @Override
+  public long getFailedDirections() {
+    return failedDirections.sum();
+  }
+  
+  @Override
+  public long getRejectedBoards() {
+    return rejectedBoards.sum();
+  }
+  
+  @Override
+  public HistogramSummary getTimesPerComponent() {
+    return timesPerComponent.getSummary();
+  }
+  
+  @Override
+  public void reset() {
+    boards.reset();
+    components.reset();
+    originRetries.reset();
+    failedDirections.reset();
+    rejectedBoards.reset();
+    timesPerComponent.reset();
+  }
+
+}
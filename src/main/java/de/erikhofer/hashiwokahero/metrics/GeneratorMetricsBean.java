@@ -0,0 +1,38 @@
+package de.erikhofer.hashiwokahero.metrics;
+
+import javax.management.MXBean;
+
+/**
+ * The work of all board generators as it is exported over JMX. All durations are in microseconds.
+ */
+@MXBean
+public interface GeneratorMetricsBean {
+  
+  long getBoards();
+  
+  long getComponents();
+  
+  /**
+   * Returns the number of origins that were picked but had no open direction left.
+   */
+  long getOriginRetries();
+  
+  /**
+   * Returns the number of directions that were tried but where no component could be placed.
+   */
+  long getFailedDirections();
+  
+  /**
+   * Returns the number of boards that were generated but rejected because they had more than one
+   * solution.
+   */
+  long getRejectedBoards();
+  
+  /**
+   * Returns the time per component of every board.
+   */
+  HistogramSummary getTimesPerComponent();
+  
+  void reset();
+
+}
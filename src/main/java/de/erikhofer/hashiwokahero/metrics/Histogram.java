@@ -0,0 +1,107 @@
+package de.erikhofer.hashiwokahero.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * Counts durations in ns in buckets of a fixed relative size, like an HdrHistogram. Every power of
+ * two is split into 32 buckets, so values are kept with a precision of about 3% from 1 ns up to
+ * {@link #MAX_VALUE} in a single array of a few kB. Recording a value doesn't allocate anything,
+ * so it can be done in every frame.
+ *
+ * <p>A histogram can be recorded and read by multiple threads at the same time.
+ */
+public class Histogram {
+  
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  
+  /**
+   * Larger values are counted as this value (about 18 minutes).
+   */
+  public static final long MAX_VALUE = (1L << 40) - 1;
+  
+  private final long[] counts = new long[getIndex(MAX_VALUE) + 1];
+  private long count;
+  private long sum;
+  private long max;
+  
+  /**
+   * Counts the given value. Negative values are counted as 0.
+   */
+  public synchronized void record(long value) {
+    final long clampedValue = Math.min(Math.max(value, 0), MAX_VALUE);
+    counts[getIndex(clampedValue)]++;
+    count++;
+    sum += clampedValue;
+    max = Math.max(max, clampedValue);
+  }
+  
+  public synchronized long getCount() {
+    return count;
+  }
+  
+  public synchronized long getMax() {
+    return max;
+  }
+  
+  public synchronized double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+  
+  /**
+   * Returns the value below or at which the given percentage of the values are. The result is the
+   * largest value of its bucket, but never larger than the maximum.
+   */
+  public synchronized long getValueAtPercentile(double percentile) {
+    checkArgument(percentile >= 0 && percentile <= 100, "Invalid percentile: %s", percentile);
+    final long rank = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+    long seen = 0;
+    for (int index = 0; index < counts.length; index++) {
+      seen += counts[index];
+      if (seen >= rank) {
+        return Math.min(getHighestValue(index), max);
+      }
+    }
+    return 0;
+  }
+  
+  /**
+   * Returns the most important numbers of this histogram in microseconds.
+   */
+  public synchronized HistogramSummary getSummary() {
+    return new HistogramSummary(count, getMean() / 1000, getValueAtPercentile(50) / 1000.0,
+        getValueAtPercentile(90) / 1000.0, getValueAtPercentile(99) / 1000.0,
+        getValueAtPercentile(99.9) / 1000.0, max / 1000.0);
+  }
+  
+  /**
+   * Removes all recorded values.
+   */
+  public synchronized void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    sum = 0;
+    max = 0;
+  }
+  
+  private static int getIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - 1 - SUB_BUCKET_BITS;
+    // value >>> shift is between SUB_BUCKETS and 2 * SUB_BUCKETS
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+  
+  private static long getHighestValue(int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    final long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+}
@@ -0,0 +1,20 @@
+package de.erikhofer.hashiwokahero.metrics;
+
+import lombok.Value;
+
+/**
+ * The most important numbers of a {@link Histogram} of durations. All durations are in
+ * microseconds.
+ */
+@Value
+public class HistogramSummary {
+  
+  private long count;
+  private double mean;
+  private double median;
+  private double percentile90;
+  private double percentile99;
+  private double percentile999;
+  private double max;
+
+}
@@ -0,0 +1,57 @@
+package de.erikhofer.hashiwokahero.metrics;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.NonNull;
+
+/**
+ * Registers metrics with the platform MBean server, so they can be watched with JConsole or
+ * VisualVM. All names are in the domain {@link #DOMAIN}.
+ */
+public final class Metrics {
+  
+  public static final String DOMAIN = "de.erikhofer.hashiwokahero";
+  
+  private Metrics() {}
+  
+  /**
+   * Registers the given MXBean. A bean that was registered with the same type and name before is
+   * replaced. Metrics are not essential, so a bean that can't be registered, e.g. because of a
+   * security manager, is skipped.
+   *
+   * @param name the name that distinguishes beans of the same type or null if there is only one
+   * @return the name of the bean in JMX or null if it couldn't be registered
+   */
+  public static ObjectName register(@NonNull Object bean, @NonNull String type, String name) {
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type
+          + (name == null ? "" : ",name=" + ObjectName.quote(name)));
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(bean, objectName);
+      return objectName;
+    } catch (JMException | RuntimeException e) {
+      return null;
+    }
+  }
+  
+  /**
+   * Unregisters the bean with the given name if it is registered. Failures are ignored like in
+   * {@link #register(Object, String, String)}.
+   */
+  public static void unregister(@NonNull ObjectName objectName) {
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    } catch (JMException | RuntimeException e) {
+      // the bean stays registered
+    }
+  }
+
+}
@@ -0,0 +1,486 @@
+package de.erikhofer.hashiwokahero.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.erikhofer.hashiwokahero.BoardGenerator;
+import de.erikhofer.hashiwokahero.Direction;
+import de.erikhofer.hashiwokahero.GameState;
+import de.erikhofer.hashiwokahero.HashiTextReader;
+import de.erikhofer.hashiwokahero.HashiTextWriter;
+import de.erikhofer.hashiwokahero.MoveLog;
+import de.erikhofer.hashiwokahero.PackedBoard;
+import de.erikhofer.hashiwokahero.TilePosition;
+import de.erikhofer.hashiwokahero.solver.Hint;
+import de.erikhofer.hashiwokahero.solver.HintEngine;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+
+/**
+ * Hosts many games at once without a window, e.g. for a web front end. Games are played over HTTP
+ * and boards are sent in the text notation of {@link HashiTextReader}:
+ * <pre>
+ * POST   /sessions?components=n        generates a game and returns the puzzle
+ * POST   /sessions?width=w&amp;height=h  generates a game with a board of that size
+ * POST   /sessions                     loads the game of the board in the body
+ * GET    /sessions/id                  returns the board with the cables
+ * DELETE /sessions/id                  ends the game
+ * POST   /sessions/id/bridges?bridge   adds a cable between two components
+ * DELETE /sessions/id/bridges?bridge   removes a cable between two components
+ * GET    /sessions/id/verify           returns solved or unsolved
+ * GET    /sessions/id/hint             returns type row1 col1 row2 col2 cables
+ * </pre>
+ * The components of a bridge are given as {@code row1=r&col1=c&row2=r&col2=c} and have to be
+ * neighbours. Rows and columns start at 0. Boards of a given size can also have a {@code density},
+ * see {@link BoardGenerator#generatePackedBoard(int, int, double)}. The id of a new game is sent in
+ * the {@code Location} header and hints are sent as {@code solved} if there is nothing left to do,
+ * see {@link Hint}.
+ *
+ * <p>Every session has a sequential executor on the fork-join pool of the server, so the requests
+ * of a session are handled one after another while the requests of different sessions are handled
+ * in parallel, and no thread is needed per session. A session only keeps its {@link GameState},
+ * which stores the boards packed, and a {@link HintEngine} from the first hint on. Sessions that
+ * didn't get a request within the idle timeout are evicted.
+ *
+ * <p>A board may have at most {@link #MAX_CELLS} tiles, however it was created. The number of
+ * sessions and the tiles of all their boards are limited, too, and new games are rejected with 503
+ * above them. Boards from a request body that have to be solved first are only
+ * solved for {@link #SOLVE_TIMEOUT_SECONDS}.
+ */
+public class GameServer {
+  
+  private static final String CONTEXT_PATH = "/sessions";
+  private static final int MAX_COMPONENTS = 100_000;
+  private static final int MAX_CELLS = 1 << 20;
+  private static final int MAX_BODY_BYTES = 2 * MAX_CELLS;
+  private static final int MAX_SESSIONS = 10_000;
+  private static final long MAX_TOTAL_CELLS = 1L << 28;
+  private static final long SOLVE_TIMEOUT_SECONDS = 10;
+  
+  private final HttpServer server;
+  private final ForkJoinPool pool;
+  private final boolean ownPool;
+  private final long idleTimeoutNanos;
+  
+  /**
+   * Evicts idle sessions and cancels solvers after their timeout.
+   */
+  private final ScheduledExecutorService scheduler;
+  private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+  
+  /**
+   * The number of tiles of the boards of all sessions.
+   */
+  private final AtomicLong cells = new AtomicLong();
+  private final SecureRandom random = new SecureRandom();
+  private final AtomicLong evictedSessions = new AtomicLong();
+  
+  private static class Session {
+    
+    private final GameState gameState;
+    private final Executor executor;
+    private HintEngine hintEngine;
+    private volatile long lastAccessTime = System.nanoTime();
+    
+    Session(GameState gameState, ForkJoinPool pool) {
+      this.gameState = gameState;
+      executor = MoreExecutors.newSequentialExecutor(pool);
+    }
+  
+  }
+  
+  /**
+   * Thrown by the handlers to answer a request with an error.
+   */
+  private static class RequestException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final int status;
+    
+    RequestException(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+  
+  }
+  
+  @FunctionalInterface
+  private interface Handler {
+    
+    String handle() throws IOException;
+  
+  }
+  
+  /**
+   * Creates a server with a fork-join pool of its own, so the games don't compete with the board
+   * generators and solvers on the common pool. It doesn't accept requests before it is started.
+   *
+   * @param address the address to listen on, use port 0 for any free port
+   */
+  public GameServer(@NonNull InetSocketAddress address, long idleTimeout, @NonNull TimeUnit unit)
+      throws IOException {
+    this(address, idleTimeout, unit, new ForkJoinPool(), true);
+  }
+  
+  /**
+   * Creates a server that handles the sessions on the given pool. The pool isn't shut down with
+   * the server. It doesn't accept requests before it is started.
+   *
+   * @param address the address to listen on, use port 0 for any free port
+   */
+  public GameServer(@NonNull InetSocketAddress address, long idleTimeout, @NonNull TimeUnit unit,
+      @NonNull ForkJoinPool pool) throws IOException {
+    this(address, idleTimeout, unit, pool, false);
+  }
+  
+  private GameServer(InetSocketAddress address, long idleTimeout, TimeUnit unit,
+      ForkJoinPool pool, boolean ownPool) throws IOException {
+    checkArgument(idleTimeout > 0, "The idle timeout must be positive!");
+    this.pool = pool;
+    this.ownPool = ownPool;
+    idleTimeoutNanos = unit.toNanos(idleTimeout);
+    server = HttpServer.create(address, 0);
+    server.createContext(CONTEXT_PATH, this::handle);
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("game-server-scheduler").setDaemon(true).build());
+  }
+  
+  /**
+   * Starts a server on the given port (default 8080) with the given idle timeout in minutes
+   * (default 30).
+   */
+  public static void main(String[] args) throws IOException {
+    final int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    final long idleMinutes = args.length > 1 ? Long.parseLong(args[1]) : 30;
+    new GameServer(new InetSocketAddress(port), idleMinutes, TimeUnit.MINUTES).start();
+  }
+  
+  /**
+   * Starts accepting requests and evicting idle sessions. The idle sessions are looked for four
+   * times per idle timeout.
+   */
+  public void start() {
+    server.start();
+    final long period = Math.max(idleTimeoutNanos / 4, TimeUnit.MILLISECONDS.toNanos(100));
+    scheduler.scheduleWithFixedDelay(this::evictIdleSessions, period, period,
+        TimeUnit.NANOSECONDS);
+  }
+  
+  /**
+   * Stops accepting requests and ends all sessions. Requests that are being handled are answered.
+   */
+  public void stop() {
+    server.stop(0);
+    scheduler.shutdownNow();
+    if (ownPool) {
+      pool.shutdown();
+    }
+    sessions.forEach(this::removeSession);
+  }
+  
+  /**
+   * Returns the address the server listens on, e.g. to find the port that was chosen.
+   */
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+  
+  public int getSessionCount() {
+    return sessions.size();
+  }
+  
+  public long getEvictedSessions() {
+    return evictedSessions.get();
+  }
+  
+  private void evictIdleSessions() {
+    final long now = System.nanoTime();
+    sessions.forEach((id, session) -> {
+      if (now - session.lastAccessTime > idleTimeoutNanos && removeSession(id, session)) {
+        evictedSessions.incrementAndGet();
+      }
+    });
+  }
+  
+  /**
+   * Removes the given session and releases the tiles of its board unless it was already removed,
+   * e.g. by a request, the eviction or {@link #stop()} at the same time.
+   *
+   * @return whether the session was removed by this call
+   */
+  private boolean removeSession(String id, Session session) {
+    if (!sessions.remove(id, session)) {
+      return false;
+    }
+    cells.addAndGet(-session.gameState.getBoard().getSize());
+    return true;
+  }
+  
+  /**
+   * Passes the request on to the executor of its session or to the pool for new sessions. The
+   * response is sent from there, so the thread of the HTTP server is never blocked.
+   */
+  private void handle(HttpExchange exchange) {
+    try {
+      final String path = exchange.getRequestURI().getPath();
+      final List<String> segments = Splitter.on('/').omitEmptyStrings()
+          .splitToList(path.substring(CONTEXT_PATH.length()));
+      if ((!path.equals(CONTEXT_PATH) && path.charAt(CONTEXT_PATH.length()) != '/')
+          || segments.size() > 2) {
+        respond(exchange, 404, "Not found!");
+      } else if (segments.isEmpty()) {
+        checkMethod(exchange, "POST");
+        execute(exchange, pool, () -> createSession(exchange));
+      } else {
+        final Session session = sessions.get(segments.get(0));
+        if (session == null) {
+          respond(exchange, 404, "There is no session " + segments.get(0) + "!");
+          return;
+        }
+        session.lastAccessTime = System.nanoTime();
+        final String action = segments.size() > 1 ? segments.get(1) : "";
+        execute(exchange, session.executor,
+            () -> handleSessionRequest(exchange, segments.get(0), session, action));
+      }
+    } catch (RequestException e) {
+      respond(exchange, e.status, e.getMessage());
+    } catch (RejectedExecutionException e) {
+      respond(exchange, 503, "The server is shutting down!");
+    }
+  }
+  
+  private static void execute(HttpExchange exchange, Executor executor, Handler handler) {
+    executor.execute(() -> {
+      try {
+        respond(exchange, 200, handler.handle());
+      } catch (RequestException e) {
+        respond(exchange, e.status, e.getMessage());
+      } catch (IllegalArgumentException e) {
+        respond(exchange, 400, e.getMessage());
+      } catch (IOException | RuntimeException e) {
+        respond(exchange, 500, "Internal error: " + e);
+      }
+    });
+  }
+  
+  private String createSession(HttpExchange exchange) throws IOException {
+    checkCapacity(0);
+    final Map<String, String> query = parseQuery(exchange);
+    final byte[] body = ByteStreams.toByteArray(
+        ByteStreams.limit(exchange.getRequestBody(), MAX_BODY_BYTES + 1));
+    final GameState gameState;
+    if (body.length > 0) {
+      if (body.length > MAX_BODY_BYTES) {
+        throw new RequestException(413, "The board is too large!");
+      }
+      gameState = loadGame(body);
+    } else if (query.containsKey("components")) {
+      final int components = getInt(query, "components");
+      checkArgument(components >= 2 && components <= MAX_COMPONENTS,
+          "The number of components must be between 2 and %s!", MAX_COMPONENTS);
+      gameState = new GameState(new BoardGenerator().generatePackedBoard(components));
+    } else {
+      final int width = getInt(query, "width");
+      final int height = getInt(query, "height");
+      checkArgument(width > 0 && height > 0 && (long) width * height <= MAX_CELLS,
+          "The board must have between 1 and %s tiles!", MAX_CELLS);
+      gameState = new GameState(query.containsKey("density")
+          ? new BoardGenerator().generatePackedBoard(width, height, getDouble(query, "density"))
+          : new BoardGenerator().generatePackedBoard(width, height));
+    }
+    
+    final int boardCells = gameState.getBoard().getSize();
+    checkArgument(boardCells <= MAX_CELLS, "The board has more than %s tiles!", MAX_CELLS);
+    String id;
+    synchronized (sessions) { // sessions are only removed concurrently
+      checkCapacity(boardCells);
+      do {
+        id = Long.toHexString(random.nextLong() & Long.MAX_VALUE);
+      } while (sessions.putIfAbsent(id, new Session(gameState, pool)) != null);
+      cells.addAndGet(boardCells);
+    }
+    exchange.getResponseHeaders().set("Location", CONTEXT_PATH + "/" + id);
+    final StringWriter puzzle = new StringWriter();
+    new HashiTextWriter(puzzle).writePuzzle(gameState);
+    return puzzle.toString();
+  }
+  
+  /**
+   * Throws a {@link RequestException} if a session with a board of the given number of tiles
+   * can't be added because there are too many sessions or tiles. Checked before the board is read
+   * or generated and again before the session is added.
+   */
+  private void checkCapacity(int boardCells) {
+    if (sessions.size() >= MAX_SESSIONS || cells.get() + boardCells > MAX_TOTAL_CELLS) {
+      throw new RequestException(503, "The server has too many games!");
+    }
+  }
+  
+  /**
+   * Reads the game of the given board. A board without cables is solved, but the solver is
+   * cancelled after {@link #SOLVE_TIMEOUT_SECONDS}.
+   */
+  private GameState loadGame(byte[] body) {
+    final AtomicReference<ScheduledFuture<?>> timeout = new AtomicReference<>();
+    try (HashiTextReader reader = new HashiTextReader(
+        new InputStreamReader(new ByteArrayInputStream(body), UTF_8), MAX_CELLS)) {
+      final GameState gameState = reader.readGameState(solver -> timeout.set(
+          scheduler.schedule(solver::cancel, SOLVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+      checkArgument(gameState != null, "There is no board in the body!");
+      return gameState;
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    } finally {
+      if (timeout.get() != null) {
+        timeout.get().cancel(false);
+      }
+    }
+  }
+  
+  private String handleSessionRequest(HttpExchange exchange, String id, Session session,
+      String action) throws IOException {
+    final GameState gameState = session.gameState;
+    switch (action) {
+      case "":
+        if (exchange.getRequestMethod().equals("DELETE")) {
+          removeSession(id, session);
+          return "ended";
+        }
+        checkMethod(exchange, "GET");
+        final StringWriter board = new StringWriter();
+        new HashiTextWriter(board).write(gameState.getBoard(), true);
+        return board.toString();
+      case "bridges":
+        if (exchange.getRequestMethod().equals("DELETE")) {
+          return changeBridge(session, parseQuery(exchange), true);
+        }
+        checkMethod(exchange, "POST");
+        return changeBridge(session, parseQuery(exchange), false);
+      case "verify":
+        checkMethod(exchange, "GET");
+        return gameState.verifySolution() ? "solved" : "unsolved";
+      case "hint":
+        checkMethod(exchange, "GET");
+        if (session.hintEngine == null) {
+          session.hintEngine = new HintEngine(gameState);
+        }
+        final Hint hint = session.hintEngine.getHint();
+        if (hint == null) {
+          return "solved";
+        }
+        return hint.getType() + " " + hint.getComponent1().getRow() + " "
+            + hint.getComponent1().getCol() + " " + hint.getComponent2().getRow() + " "
+            + hint.getComponent2().getCol() + " " + hint.getCables();
+      default:
+        throw new RequestException(404, "Not found!");
+    }
+  }
+  
+  /**
+   * Adds or removes a cable between two components that are neighbours.
+   */
+  private static String changeBridge(Session session, Map<String, String> query,
+      boolean removal) {
+    final GameState gameState = session.gameState;
+    final TilePosition component1 = new TilePosition(getInt(query, "row1"),
+        getInt(query, "col1"));
+    final TilePosition component2 = new TilePosition(getInt(query, "row2"),
+        getInt(query, "col2"));
+    checkArgument(!gameState.isOutOfBoardBounds(component1)
+        && !gameState.isOutOfBoardBounds(component2) && gameState.isComponentTile(component1)
+        && gameState.isComponentTile(component2), "There are no components at these positions!");
+    final Direction direction = component2.getDirectionRelativeTo(component1);
+    checkArgument(direction != null, "The components are not in the same row or column!");
+    for (TilePosition tile = component1.getAdjacent(direction); !tile.equals(component2);
+        tile = tile.getAdjacent(direction)) {
+      checkArgument(!gameState.isComponentTile(tile), "The components are not neighbours!");
+    }
+    
+    final TilePosition first = direction == Direction.EAST || direction == Direction.SOUTH
+        ? component1 : component2;
+    final PackedBoard board = gameState.getBoard();
+    final int move = MoveLog.move(board.getIndex(first.getRow(), first.getCol()),
+        direction.getOrientation(), removal);
+    if (!gameState.makeMove(move)) {
+      throw new RequestException(409, removal
+          ? "There is no cable between these components!" : "The cable can't be added!");
+    }
+    if (session.hintEngine != null) {
+      session.hintEngine.cablesChanged(component1, component2);
+    }
+    return "ok";
+  }
+  
+  private static void checkMethod(HttpExchange exchange, String method) {
+    if (!exchange.getRequestMethod().equals(method)) {
+      throw new RequestException(405, "Method not allowed!");
+    }
+  }
+  
+  private static Map<String, String> parseQuery(HttpExchange exchange) throws IOException {
+    final Map<String, String> query = new HashMap<>();
+    final String rawQuery = exchange.getRequestURI().getRawQuery();
+    if (rawQuery != null) {
+      for (String parameter : Splitter.on('&').omitEmptyStrings().split(rawQuery)) {
+        final int separator = parameter.indexOf('=');
+        query.put(URLDecoder.decode(separator < 0 ? parameter : parameter.substring(0, separator),
+            "UTF-8"), separator < 0 ? "" : URLDecoder.decode(parameter.substring(separator + 1),
+            "UTF-8"));
+      }
+    }
+    return query;
+  }
+  
+  private static int getInt(Map<String, String> query, String name) {
+    checkArgument(query.containsKey(name), "The parameter %s is missing!", name);
+    return Integer.parseInt(query.get(name));
+  }
+  
+  private static double getDouble(Map<String, String> query, String name) {
+    checkArgument(query.containsKey(name), "The parameter %s is missing!", name);
+    return Double.parseDouble(query.get(name));
+  }
+  
+  /**
+   * Sends the response and ends the exchange.
+   */
+  private static void respond(HttpExchange exchange, int status, String body) {
+    final byte[] bytes = (body.endsWith("\n") ? body : body + "\n").getBytes(UTF_8);
+    try {
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      exchange.sendResponseHeaders(status, bytes.length);
+      exchange.getResponseBody().write(bytes);
+    } catch (IOException e) {
+      // the client is gone
+    } finally {
+      exchange.close();
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+package de.erikhofer.hashiwokahero.solver;
+
+import de.erikhofer.hashiwokahero.PackedBoard;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import lombok.NonNull;
+
+/**
+ * Rates how hard puzzles are for a human. The puzzle is solved logically like a human would do it:
+ * the easiest {@link Technique} that makes any progress is applied until nothing changes anymore
+ * and then the easiest technique is tried again. Only if no technique makes progress, values are
+ * guessed. The rating is made up of the techniques that were needed, the number of deductions per
+ * technique and the number of guesses.
+ */
+public class DifficultyRater {
+  
+  /**
+   * Number of solutions the search looks for, to know whether the puzzle is unique.
+   */
+  private static final int SOLUTION_LIMIT = 2;
+  
+  private final ForkJoinPool pool;
+  
+  /**
+   * Creates a rater that rates batches on the common fork-join pool.
+   */
+  public DifficultyRater() {
+    this(ForkJoinPool.commonPool());
+  }
+  
+  public DifficultyRater(@NonNull ForkJoinPool pool) {
+    this.pool = pool;
+  }
+  
+  /**
+   * Rates the puzzle of the components of the given board.
+   */
+  public DifficultyRating rate(@NonNull PackedBoard board) {
+    return rate(Puzzle.fromBoard(board));
+  }
+  
+  /**
+   * Rates the given puzzle.
+   */
+  public DifficultyRating rate(@NonNull Puzzle puzzle) {
+    final Solver solver = new Solver(puzzle);
+    solver.reset();
+    final Technique[] techniques = Technique.values();
+    final int[] deductions = new int[Technique.GUESSING.ordinal()];
+    Technique hardestTechnique = Technique.DEGREE;
+    int technique = 0;
+    while (!solver.isDecided() && techniques[technique] != Technique.GUESSING) {
+      final int mark = solver.getTrailSize();
+      if (!solver.deduce(techniques[technique])) {
+        return new DifficultyRating(puzzle.getIslandCount(), deductions, null, 0, false);
+      }
+      final int restrictions = solver.countRestrictions(mark);
+      if (restrictions > 0) {
+        deductions[technique] += restrictions;
+        if (technique > hardestTechnique.ordinal()) {
+          hardestTechnique = techniques[technique];
+        }
+        technique = 0;
+      } else {
+        technique++;
+      }
+    }
+    
+    // the search also shows whether the deductions were based on a unique solution
+    final SolverResult result = solver.solve(SOLUTION_LIMIT);
+    if (!result.isSolvable()) {
+      return new DifficultyRating(puzzle.getIslandCount(), deductions, null, 0, false);
+    }
+    final boolean guessed = techniques[technique] == Technique.GUESSING;
+    return new DifficultyRating(puzzle.getIslandCount(), deductions,
+        guessed ? Technique.GUESSING : hardestTechnique, guessed ? result.getGuesses() : 0,
+        result.isUnique());
+  }
+  
+  /**
+   * Rates all given boards in parallel.
+   *
+   * @return the ratings in the order of the boards
+   */
+  public List<DifficultyRating> rateAll(@NonNull List<PackedBoard> boards) {
+    final List<CompletableFuture<DifficultyRating>> ratings = new ArrayList<>(boards.size());
+    for (PackedBoard board : boards) {
+      ratings.add(CompletableFuture.supplyAsync(() -> rate(board), pool));
+    }
+    return ratings.stream()
+        .map(CompletableFuture::join)
+        .collect(Collectors.toList());
+  }
+
+}
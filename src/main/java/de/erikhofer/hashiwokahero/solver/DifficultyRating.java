@@ -0,0 +1,68 @@
+package de.erikhofer.hashiwokahero.solver;
+
+import lombok.Value;
+
+/**
+ * The result of {@link DifficultyRater#rate(Puzzle)}.
+ */
+@Value
+public class DifficultyRating {
+  
+  private int islands;
+  
+  /**
+   * Number of edges that were restricted by each technique, by ordinal. Don't modify.
+   */
+  private int[] deductions;
+  
+  /**
+   * The hardest technique that was needed or null if the puzzle has no solution.
+   */
+  private Technique hardestTechnique;
+  
+  /**
+   * Number of values the search guessed, including the search for a second solution. This is 0
+   * unless the hardest technique is {@link Technique#GUESSING}.
+   */
+  private long guesses;
+  
+  private boolean unique;
+  
+  /**
+   * Returns the number of edges that were restricted by the given technique.
+   */
+  public int getDeductions(Technique technique) {
+    return technique == Technique.GUESSING ? (int) guesses : deductions[technique.ordinal()];
+  }
+  
+  /**
+   * Returns the number of deductions of all techniques, not counting guesses.
+   */
+  public int getSteps() {
+    int steps = 0;
+    for (int techniqueDeductions : deductions) {
+      steps += techniqueDeductions;
+    }
+    return steps;
+  }
+  
+  public boolean isSolvable() {
+    return hardestTechnique != null;
+  }
+  
+  public boolean isGuessingRequired() {
+    return hardestTechnique == Technique.GUESSING;
+  }
+  
+  /**
+   * Returns the weighted sum of all deductions and guesses. Harder techniques add more per use.
+   */
+  public long getScore() {
+    long score = 0;
+    for (Technique technique : Technique.values()) {
+      score += (long) technique.getWeight() * getDeductions(technique);
+    }
+    return score;
+  }
+
+}
@@ -0,0 +1,40 @@
+package de.erikhofer.hashiwokahero.solver;
+
+import de.erikhofer.hashiwokahero.TilePosition;
+import lombok.Value;
+
+/**
+ * A hint of {@link HintEngine} about the cables between two neighbouring components.
+ */
+@Value
+public class Hint {
+  
+  public enum Type {
+    
+    /**
+     * The cables are wrong and have to be removed. They contradict the puzzle or the other cables.
+     */
+    WRONG_CABLES,
+    
+    /**
+     * More cables follow logically from the puzzle and the cables that were placed.
+     */
+    FORCED_CABLES,
+    
+    /**
+     * Nothing follows logically anymore, so the cables are taken from the solution.
+     */
+    SOLUTION_CABLES
+  
+  }
+  
+  private Type type;
+  private TilePosition component1;
+  private TilePosition component2;
+  
+  /**
+   * The number of cables that are placed ({@link Type#WRONG_CABLES}) or that should be placed.
+   */
+  private int cables;
+
+}
@@ -0,0 +1,271 @@
+package de.erikhofer.hashiwokahero.solver;
+
+import de.erikhofer.hashiwokahero.GameState;
+import de.erikhofer.hashiwokahero.PackedBoard;
+import de.erikhofer.hashiwokahero.TilePosition;
+import java.util.Arrays;
+import java.util.BitSet;
+import lombok.NonNull;
+
+/**
+ * Finds the next move for the player of a game. What follows logically from the puzzle alone is
+ * deduced once when the engine is created. The cables of the player are then added as assumptions
+ * on top of that, so a move only needs to propagate its consequences and removing cables only
+ * reverts the assumptions that were made after them.
+ *
+ * <p>The edges with cables that the solution doesn't have, with forced cables and with cables that
+ * are missing compared to the solution are kept in bit sets, so finding a hint doesn't depend on
+ * the moves that were made.
+ *
+ * <p>The engine doesn't watch the game. It has to be told about every change of the cables with
+ * {@link #cablesChanged(TilePosition, TilePosition)} or {@link #synchronize()}. An engine is not
+ * thread-safe.
+ */
+public class HintEngine {
+  
+  private final GameState gameState;
+  private final Puzzle puzzle;
+  private final Solver solver;
+  private final int[] solutionCables;
+  
+  /**
+   * The trail size after the deductions from the puzzle alone.
+   */
+  private final int baseMark;
+  
+  /**
+   * The number of cables of the player on every edge.
+   */
+  private final int[] playerCables;
+  
+  /**
+   * Edges with cables of the player in the order they were placed and the trail size before they
+   * were assumed. Only the first {@link #assumedCount} assumptions are applied. The next one leads
+   * to a contradiction.
+   */
+  private int[] assumedEdges = new int[16];
+  private int[] assumptionMarks = new int[16];
+  private int assumptionCount;
+  private int assumedCount;
+  
+  private final BitSet wrongEdges = new BitSet();
+  private final BitSet forcedEdges = new BitSet();
+  private final BitSet missingEdges = new BitSet();
+  private int[] changedEdges = new int[16];
+  
+  /**
+   * Creates an engine for the given game and reads the cables that are already placed.
+   */
+  public HintEngine(@NonNull GameState gameState) {
+    this.gameState = gameState;
+    puzzle = Puzzle.fromBoard(gameState.getSolution());
+    solver = new Solver(puzzle);
+    solutionCables = puzzle.readCables(gameState.getSolution());
+    playerCables = new int[puzzle.getEdgeCount()];
+    
+    solver.reset();
+    int mark;
+    do {
+      mark = solver.getTrailSize();
+      if (!solver.deduce(Technique.PROBING)) {
+        throw new IllegalArgumentException("The puzzle has no solution!");
+      }
+    } while (solver.getTrailSize() > mark);
+    baseMark = solver.getTrailSize();
+    for (int edge = 0; edge < puzzle.getEdgeCount(); edge++) {
+      updateEdge(edge);
+    }
+    synchronize();
+  }
+  
+  /**
+   * Updates the cables between the given components, which are neighbours, after they changed.
+   */
+  public void cablesChanged(@NonNull TilePosition component1, @NonNull TilePosition component2) {
+    final PackedBoard board = gameState.getBoard();
+    final int edge = puzzle.findEdge(board.getIndex(component1.getRow(), component1.getCol()),
+        board.getIndex(component2.getRow(), component2.getCol()));
+    if (edge != Solver.NO_EDGE) {
+      setPlayerCables(edge, readPlayerCables(edge));
+    }
+  }
+  
+  /**
+   * Reads the cables of all edges again, e.g. after the whole board was changed.
+   */
+  public void synchronize() {
+    for (int edge = 0; edge < puzzle.getEdgeCount(); edge++) {
+      final int cables = readPlayerCables(edge);
+      if (cables != playerCables[edge]) {
+        setPlayerCables(edge, cables);
+      }
+    }
+  }
+  
+  /**
+   * Returns the next hint. Wrong cables are reported first, then forced cables and then cables of
+   * the solution. Cables are wrong if the solution has less cables there or, for puzzles with more
+   * than one solution, if they contradict the other cables.
+   *
+   * @return the hint or null if the board is solved
+   */
+  public Hint getHint() {
+    int edge = wrongEdges.nextSetBit(0);
+    if (edge < 0 && assumedCount < assumptionCount) {
+      edge = assumedEdges[assumedCount];
+    }
+    if (edge >= 0) {
+      return createHint(Hint.Type.WRONG_CABLES, edge, playerCables[edge]);
+    }
+    edge = forcedEdges.nextSetBit(0);
+    if (edge >= 0) {
+      return createHint(Hint.Type.FORCED_CABLES, edge, Solver.min(solver.getDomain(edge)));
+    }
+    edge = missingEdges.nextSetBit(0);
+    if (edge >= 0) {
+      return createHint(Hint.Type.SOLUTION_CABLES, edge, solutionCables[edge]);
+    }
+    return null;
+  }
+  
+  private Hint createHint(Hint.Type type, int edge, int cables) {
+    return new Hint(type, getPosition(puzzle.getIslandCell(puzzle.getFirstIsland(edge))),
+        getPosition(puzzle.getIslandCell(puzzle.getSecondIsland(edge))), cables);
+  }
+  
+  private TilePosition getPosition(int cell) {
+    return new TilePosition(cell / puzzle.getWidth(), cell % puzzle.getWidth());
+  }
+  
+  private int readPlayerCables(int edge) {
+    final PackedBoard board = gameState.getBoard();
+    final int cell = puzzle.getFirstCell(edge);
+    return board.getOrientation(cell) == puzzle.getOrientation(edge) ? board.getCables(cell) : 0;
+  }
+  
+  private void setPlayerCables(int edge, int cables) {
+    final int oldCables = playerCables[edge];
+    playerCables[edge] = cables;
+    if (cables < oldCables) {
+      retract(edge);
+    }
+    if (cables > 0 && cables != oldCables) {
+      addAssumption(edge);
+    }
+    updateEdge(edge);
+    applyAssumptions();
+  }
+  
+  private void addAssumption(int edge) {
+    if (assumptionCount == assumedEdges.length) {
+      assumedEdges = Arrays.copyOf(assumedEdges, assumptionCount * 2);
+      assumptionMarks = Arrays.copyOf(assumptionMarks, assumptionCount * 2);
+    }
+    assumedEdges[assumptionCount++] = edge;
+  }
+  
+  /**
+   * Removes all assumptions about the given edge and reverts the assumptions from the first one
+   * on, together with the assumptions that were applied at the same time. They are applied again by
+   * {@link #applyAssumptions()}.
+   */
+  private void retract(int edge) {
+    int first = -1;
+    boolean applied = false;
+    int mark = 0;
+    int kept = 0;
+    for (int i = 0; i < assumptionCount; i++) {
+      if (assumedEdges[i] == edge) {
+        if (first < 0) {
+          first = i;
+          applied = i < assumedCount;
+          mark = assumptionMarks[i];
+        }
+      } else {
+        assumedEdges[kept] = assumedEdges[i];
+        assumptionMarks[kept] = assumptionMarks[i];
+        kept++;
+      }
+    }
+    if (applied) {
+      while (first > 0 && assumptionMarks[first - 1] == mark) {
+        first--;
+      }
+      undo(mark);
+      assumedCount = first;
+    }
+    assumptionCount = kept;
+  }
+  
+  /**
+   * Applies the assumptions that aren't applied yet until one of them leads to a contradiction.
+   * They are applied together with a single probe at the end first, which is much faster when many
+   * assumptions are applied again after an early one was retracted.
+   */
+  private void applyAssumptions() {
+    if (assumedCount < assumptionCount && !applyAssumptions(assumptionCount)) {
+      while (assumedCount < assumptionCount && applyAssumptions(assumedCount + 1)) {
+        // one by one to find the assumption that leads to the contradiction
+      }
+    }
+  }
+  
+  /**
+   * Applies the assumptions up to the given number. They share the same mark, so they are reverted
+   * together.
+   *
+   * @return false if they lead to a contradiction, in which case nothing is changed
+   */
+  private boolean applyAssumptions(int count) {
+    final int mark = solver.getTrailSize();
+    for (int i = assumedCount; i < count; i++) {
+      final int edge = assumedEdges[i];
+      if (!solver.restrict(edge, Solver.range(playerCables[edge], 2)) || !solver.propagate()) {
+        solver.clearPending();
+        solver.clearProbes();
+        undo(mark);
+        return false;
+      }
+    }
+    if (!solver.probe()) {
+      undo(mark);
+      return false;
+    }
+    
+    for (int i = assumedCount; i < count; i++) {
+      assumptionMarks[i] = mark;
+    }
+    assumedCount = count;
+    for (int i = mark; i < solver.getTrailSize(); i++) {
+      updateEdge(solver.getRestrictedEdge(i));
+    }
+    return true;
+  }
+  
+  /**
+   * Reverts the solver to the given trail size and updates the edges that change.
+   */
+  private void undo(int mark) {
+    int changed = 0;
+    for (int i = mark; i < solver.getTrailSize(); i++) {
+      if (changed == changedEdges.length) {
+        changedEdges = Arrays.copyOf(changedEdges, changed * 2);
+      }
+      changedEdges[changed++] = solver.getRestrictedEdge(i);
+    }
+    solver.undo(Math.max(mark, baseMark));
+    for (int i = 0; i < changed; i++) {
+      updateEdge(changedEdges[i]);
+    }
+  }
+  
+  private void updateEdge(int edge) {
+    if (edge == Solver.NO_EDGE) {
+      return;
+    }
+    wrongEdges.set(edge, solutionCables[edge] < playerCables[edge]);
+    forcedEdges.set(edge, Solver.min(solver.getDomain(edge)) > playerCables[edge]);
+    missingEdges.set(edge, solutionCables[edge] > playerCables[edge]);
+  }
+
+}
@@ -0,0 +1,351 @@
+package de.erikhofer.hashiwokahero.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import de.erikhofer.hashiwokahero.Direction;
+import de.erikhofer.hashiwokahero.GameState;
+import de.erikhofer.hashiwokahero.Orientation;
+import de.erikhofer.hashiwokahero.PackedBoard;
+import de.erikhofer.hashiwokahero.Tile;
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * The graph of a Hashiwokakero puzzle. Components are called islands and every pair of islands
+ * that could be connected by cables (neighbours in a row or column) is called an edge. Edges that
+ * would cross each other are recorded as well.
+ *
+ * <p>Islands and edges are identified by their index. All data is kept in primitive arrays.
+ */
+public class Puzzle {
+  
+  private static final int NO_EDGE = -1;
+  private static final int DIRECTIONS = Direction.values().length;
+  private static final Direction[] EDGE_DIRECTIONS = {Direction.EAST, Direction.SOUTH};
+  
+  /**
+   * The board with all cables removed.
+   */
+  private final PackedBoard board;
+  
+  private final int[] islandCells;
+  private final int[] degrees;
+  
+  /**
+   * The island on each board index or -1.
+   */
+  private final int[] islandAt;
+  
+  /**
+   * The edge of each island in each direction ({@code island * 4 + direction.ordinal()}).
+   */
+  private final int[] islandEdges;
+  
+  /**
+   * Both islands of each edge ({@code edge * 2}: north or west island, {@code edge * 2 + 1}: south
+   * or east island).
+   */
+  private final int[] edgeIslands;
+  private final boolean[] verticalEdges;
+  
+  /**
+   * The edges crossing edge {@code e} are {@code crossings[crossingOffsets[e]]} to
+   * {@code crossings[crossingOffsets[e + 1] - 1]}.
+   */
+  private final int[] crossingOffsets;
+  private final int[] crossings;
+  
+  private final @Getter int islandCount;
+  private final @Getter int edgeCount;
+  
+  private Puzzle(PackedBoard board) {
+    this.board = new PackedBoard(board);
+    islandAt = new int[board.getSize()];
+    Arrays.fill(islandAt, -1);
+    
+    int islands = 0;
+    for (int index = 0; index < board.getSize(); index++) {
+      if (board.isComponent(index)) {
+        islands++;
+      } else {
+        this.board.setCables(index, 0);
+      }
+    }
+    checkArgument(islands > 0, "There are no components on the board!");
+    islandCount = islands;
+    islandCells = new int[islands];
+    degrees = new int[islands];
+    islandEdges = new int[islands * DIRECTIONS];
+    Arrays.fill(islandEdges, NO_EDGE);
+    for (int index = 0, island = 0; index < board.getSize(); index++) {
+      if (board.isComponent(index)) {
+        islandCells[island] = index;
+        degrees[island] = board.getConnections(index);
+        islandAt[index] = island;
+        island++;
+      }
+    }
+    
+    // Every island has at most one edge to the east and one to the south.
+    final int[] edgeIslandsBuffer = new int[islands * 4];
+    final boolean[] verticalBuffer = new boolean[islands * 2];
+    int edges = 0;
+    for (int island = 0; island < islands; island++) {
+      for (Direction direction : EDGE_DIRECTIONS) {
+        final int other = findNeighbour(board, islandAt, islandCells[island], direction);
+        if (other < 0) {
+          continue;
+        }
+        edgeIslandsBuffer[edges * 2] = island;
+        edgeIslandsBuffer[edges * 2 + 1] = other;
+        verticalBuffer[edges] = direction == Direction.SOUTH;
+        islandEdges[island * DIRECTIONS + direction.ordinal()] = edges;
+        islandEdges[other * DIRECTIONS + direction.getOpposite().ordinal()] = edges;
+        edges++;
+      }
+    }
+    edgeCount = edges;
+    edgeIslands = Arrays.copyOf(edgeIslandsBuffer, edges * 2);
+    verticalEdges = Arrays.copyOf(verticalBuffer, edges);
+    
+    // Find crossings by marking the cells of all horizontal edges and walking the vertical ones.
+    final int[] horizontalEdgeAt = new int[board.getSize()];
+    Arrays.fill(horizontalEdgeAt, -1);
+    for (int edge = 0; edge < edges; edge++) {
+      if (!verticalEdges[edge]) {
+        for (int cell = getFirstCell(edge); cell <= getLastCell(edge); cell++) {
+          horizontalEdgeAt[cell] = edge;
+        }
+      }
+    }
+    final int[] crossingCounts = new int[edges + 1];
+    int crossingPairs = 0;
+    for (int edge = 0; edge < edges; edge++) {
+      if (verticalEdges[edge]) {
+        for (int cell = getFirstCell(edge); cell <= getLastCell(edge); cell += board.getWidth()) {
+          if (horizontalEdgeAt[cell] >= 0) {
+            crossingCounts[edge]++;
+            crossingCounts[horizontalEdgeAt[cell]]++;
+            crossingPairs++;
+          }
+        }
+      }
+    }
+    crossingOffsets = new int[edges + 1];
+    for (int edge = 0; edge < edges; edge++) {
+      crossingOffsets[edge + 1] = crossingOffsets[edge] + crossingCounts[edge];
+    }
+    crossings = new int[crossingPairs * 2];
+    final int[] fill = Arrays.copyOf(crossingOffsets, edges);
+    for (int edge = 0; edge < edges; edge++) {
+      if (verticalEdges[edge]) {
+        for (int cell = getFirstCell(edge); cell <= getLastCell(edge); cell += board.getWidth()) {
+          if (horizontalEdgeAt[cell] >= 0) {
+            final int horizontalEdge = horizontalEdgeAt[cell];
+            crossings[fill[edge]++] = horizontalEdge;
+            crossings[fill[horizontalEdge]++] = edge;
+          }
+        }
+      }
+    }
+  }
+  
+  /**
+   * Creates the puzzle for the components of the given board. Cables on the board are ignored.
+   */
+  public static Puzzle fromBoard(PackedBoard board) {
+    return new Puzzle(board);
+  }
+  
+  /**
+   * Creates the puzzle of the given game state. Cables placed by the player are ignored.
+   */
+  public static Puzzle fromGameState(GameState gameState) {
+    return new Puzzle(gameState.getBoard());
+  }
+  
+  /**
+   * Creates the puzzle for the components of the given tiles. Cables are ignored.
+   */
+  public static Puzzle fromTiles(Tile[][] tiles) {
+    return new Puzzle(PackedBoard.fromTiles(tiles));
+  }
+  
+  private static int findNeighbour(PackedBoard board, int[] islandAt, int cell,
+      Direction direction) {
+    int row = board.getRow(cell) + direction.getRowOffset();
+    int col = board.getCol(cell) + direction.getColOffset();
+    // Adjacent components can't be connected as there is no tile for the cable.
+    if (!board.isInBounds(row, col) || board.isComponent(board.getIndex(row, col))) {
+      return -1;
+    }
+    while (board.isInBounds(row, col)) {
+      final int index = board.getIndex(row, col);
+      if (board.isComponent(index)) {
+        return islandAt[index];
+      }
+      row += direction.getRowOffset();
+      col += direction.getColOffset();
+    }
+    return -1;
+  }
+  
+  /**
+   * Returns the board of this puzzle without any cables.
+   */
+  public PackedBoard getBoard() {
+    return new PackedBoard(board);
+  }
+  
+  public int getWidth() {
+    return board.getWidth();
+  }
+  
+  public int getHeight() {
+    return board.getHeight();
+  }
+  
+  /**
+   * Returns the board index of the given island.
+   */
+  public int getIslandCell(int island) {
+    return islandCells[island];
+  }
+  
+  /**
+   * Returns the number of cables that have to be connected to the given island.
+   */
+  public int getDegree(int island) {
+    return degrees[island];
+  }
+  
+  /**
+   * Returns the edge of the given island in the given direction or -1 if there is none.
+   */
+  public int getEdge(int island, Direction direction) {
+    return islandEdges[island * DIRECTIONS + direction.ordinal()];
+  }
+  
+  /**
+   * Returns the edge of the given island in the direction with the given ordinal or -1.
+   */
+  public int getEdge(int island, int directionOrdinal) {
+    return islandEdges[island * DIRECTIONS + directionOrdinal];
+  }
+  
+  /**
+   * Returns the north or west island of the given edge.
+   */
+  public int getFirstIsland(int edge) {
+    return edgeIslands[edge * 2];
+  }
+  
+  /**
+   * Returns the south or east island of the given edge.
+   */
+  public int getSecondIsland(int edge) {
+    return edgeIslands[edge * 2 + 1];
+  }
+  
+  /**
+   * Returns the island at the other end of the given edge.
+   */
+  public int getOtherIsland(int edge, int island) {
+    return edgeIslands[edge * 2] == island ? edgeIslands[edge * 2 + 1] : edgeIslands[edge * 2];
+  }
+  
+  public Orientation getOrientation(int edge) {
+    return verticalEdges[edge] ? Orientation.VERTICAL : Orientation.HORIZONTAL;
+  }
+  
+  /**
+   * Returns the board index of the first cable tile of the given edge.
+   */
+  public int getFirstCell(int edge) {
+    return islandCells[getFirstIsland(edge)] + (verticalEdges[edge] ? board.getWidth() : 1);
+  }
+  
+  /**
+   * Returns the board index of the last cable tile of the given edge.
+   */
+  public int getLastCell(int edge) {
+    return islandCells[getSecondIsland(edge)] - (verticalEdges[edge] ? board.getWidth() : 1);
+  }
+  
+  /**
+   * Returns the difference of the board indices of two successive cable tiles of the given edge.
+   */
+  public int getCellStep(int edge) {
+    return verticalEdges[edge] ? board.getWidth() : 1;
+  }
+  
+  public int getCrossingCount(int edge) {
+    return crossingOffsets[edge + 1] - crossingOffsets[edge];
+  }
+  
+  /**
+   * Returns the i-th edge that crosses the given edge.
+   */
+  public int getCrossing(int edge, int i) {
+    return crossings[crossingOffsets[edge] + i];
+  }
+  
+  /**
+   * Returns the island at the given board index or -1 if there is none.
+   */
+  public int getIslandAt(int cell) {
+    return islandAt[cell];
+  }
+  
+  /**
+   * Returns the edge between the components at the given board indices or -1 if there is none.
+   */
+  public int findEdge(int cell1, int cell2) {
+    final int island = islandAt[cell1];
+    if (island < 0) {
+      return NO_EDGE;
+    }
+    for (int direction = 0; direction < DIRECTIONS; direction++) {
+      final int edge = getEdge(island, direction);
+      if (edge != NO_EDGE && islandCells[getOtherIsland(edge, island)] == cell2) {
+        return edge;
+      }
+    }
+    return NO_EDGE;
+  }
+  
+  /**
+   * Returns a board with the given number of cables on every edge.
+   */
+  public PackedBoard toBoard(int[] cables) {
+    checkArgument(cables.length == edgeCount, "There must be a cable count for every edge!");
+    final PackedBoard solution = new PackedBoard(board);
+    for (int edge = 0; edge < edgeCount; edge++) {
+      if (cables[edge] == 0) {
+        continue;
+      }
+      final int step = getCellStep(edge);
+      for (int cell = getFirstCell(edge); cell <= getLastCell(edge); cell += step) {
+        solution.set(cell, PackedBoard.withOrientation(
+            PackedBoard.withCount(solution.get(cell), cables[edge]), getOrientation(edge)));
+      }
+    }
+    return solution;
+  }
+  
+  /**
+   * Reads the number of cables on every edge from the given board, which must have the same
+   * components as this puzzle.
+   */
+  public int[] readCables(PackedBoard cableBoard) {
+    final int[] cables = new int[edgeCount];
+    for (int edge = 0; edge < edgeCount; edge++) {
+      final int cell = getFirstCell(edge);
+      if (cableBoard.getOrientation(cell) == getOrientation(edge)) {
+        cables[edge] = cableBoard.getCables(cell);
+      }
+    }
+    return cables;
+  }
+
+}
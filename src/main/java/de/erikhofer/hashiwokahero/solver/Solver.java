@@ -0,0 +1,860 @@
+package de.erikhofer.hashiwokahero.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * Solves Hashiwokakero puzzles by constraint propagation. Only if the propagation gets stuck a
+ * value is guessed and the search backtracks if the guess leads to a contradiction.
+ *
+ * <p>The possible cable counts of every edge are stored as a bit set (bit {@code v} is set if the
+ * edge may have {@code v} cables). The following rules are applied until nothing changes anymore:
+ * <ul>
+ * <li>Degree: the cables of an island must add up to its number of connections.</li>
+ * <li>No crossing: an edge with at least one cable forbids cables on all edges crossing it.</li>
+ * <li>Connectivity: all islands must form a single network. A group of connected islands must not
+ * be closed off before it contains all islands and removing an edge must not split the network.
+ * </li>
+ * </ul>
+ *
+ * <p>The rules only look at the islands and edges that changed, so a search step doesn't depend on
+ * the size of the puzzle. Only before the search starts the whole network is checked for edges it
+ * can't do without (bridges in the graph theory sense), which must have at least one cable. On top
+ * of that every value of the edges around the changed islands is probed, see {@link #probe()}.
+ *
+ * <p>The search restarts with growing limits while no solution is found, keeping what it learned
+ * about the hard parts of the puzzle, and it decides the edge of the last conflict first.
+ *
+ * <p>A solver can be reused, but is not thread-safe. Only {@link #cancel()} may be called from
+ * another thread.
+ */
+public class Solver {
+  
+  static final int NO_EDGE = -1;
+  static final int ALL_VALUES = 0b111;
+  private static final int DIRECTIONS = 4;
+  
+  /**
+   * Number of backtracks before the first restart. The interval grows by half after every restart,
+   * so the search is still complete.
+   */
+  private static final long FIRST_RESTART_INTERVAL = 64;
+  
+  private final @Getter Puzzle puzzle;
+  private final byte[] domains;
+  
+  /**
+   * Changes to undo when backtracking. Either the old domain of an edge ({@code edge << 3 |
+   * domain}) or the complement of a group that was merged into another group.
+   */
+  private int[] trail;
+  private int trailSize;
+  
+  /**
+   * Islands whose degree has to be checked again.
+   */
+  private final int[] queue;
+  private final boolean[] queued;
+  private int queueHead;
+  private int queueSize;
+  
+  /**
+   * Edges whose values have to be probed again because an island next to them changed.
+   */
+  private final int[] probeQueue;
+  private final boolean[] probeQueued;
+  private int probeQueueHead;
+  private int probeQueueSize;
+  private boolean probing;
+  
+  /**
+   * Edges that can't have cables anymore and might have split the network.
+   */
+  private final int[] removedEdges;
+  private int removedEdgeCount;
+  
+  // groups of islands that are already connected: the group of every island and a circular list of
+  // the islands of every group, so the smaller group can be relabeled when two groups are merged
+  private final int[] groups;
+  private final int[] nextGroupMembers;
+  private final int[] groupSizes;
+  private final int[] groupResiduals;
+  
+  // bidirectional breadth-first search to check if the network is still connected
+  private final int[] visitMarks;
+  private int visitMark;
+  private final int[] firstFrontier;
+  private final int[] secondFrontier;
+  
+  // depth-first search for bridges of the network
+  private final int[] discoveryTimes;
+  private final int[] lowTimes;
+  private final int[] parentEdges;
+  private final int[] nextDirections;
+  private final int[] bridges;
+  
+  // backtracking search
+  private final int[] islandWeights;
+  private final int[] decisionEdges;
+  private final int[] decisionMarks;
+  private final int[] decisionValues;
+  
+  /**
+   * The edge of the decision that ran out of values most recently. It is decided first again after
+   * backtracking, which quickly leads back to the decision that caused the contradiction.
+   */
+  private int conflictEdge;
+  
+  /**
+   * The techniques that are used by {@link #propagate()}. Only restricted by
+   * {@link #deduce(Technique)}.
+   */
+  private Technique maxTechnique = Technique.GUESSING;
+  
+  private volatile boolean cancelled;
+  
+  private long guesses;
+  private long backtracks;
+  private long restarts;
+  
+  /**
+   * Creates a solver for the given puzzle.
+   */
+  public Solver(Puzzle puzzle) {
+    this.puzzle = puzzle;
+    final int islands = puzzle.getIslandCount();
+    final int edges = puzzle.getEdgeCount();
+    domains = new byte[edges];
+    trail = new int[Math.max(16, edges * 2)];
+    queue = new int[islands];
+    queued = new boolean[islands];
+    probeQueue = new int[Math.max(1, edges)];
+    probeQueued = new boolean[edges];
+    removedEdges = new int[edges];
+    groups = new int[islands];
+    nextGroupMembers = new int[islands];
+    groupSizes = new int[islands];
+    groupResiduals = new int[islands];
+    visitMarks = new int[islands];
+    firstFrontier = new int[islands];
+    secondFrontier = new int[islands];
+    discoveryTimes = new int[islands];
+    lowTimes = new int[islands];
+    parentEdges = new int[islands];
+    nextDirections = new int[islands];
+    bridges = new int[islands];
+    islandWeights = new int[islands];
+    decisionEdges = new int[edges];
+    decisionMarks = new int[edges];
+    decisionValues = new int[edges];
+  }
+  
+  /**
+   * Finds a solution.
+   */
+  public SolverResult solve() {
+    return solve(1);
+  }
+  
+  /**
+   * Counts the solutions of the puzzle, but stops once the given number of solutions is found.
+   * The first solution found is part of the result.
+   */
+  public SolverResult solve(int solutionLimit) {
+    checkArgument(solutionLimit > 0, "The solution limit must be positive!");
+    reset();
+    
+    int solutions = 0;
+    int[] firstSolution = null;
+    boolean complete = true;
+    int depth = 0;
+    boolean consistent = propagateFully() && probe();
+    final int rootMark = trailSize;
+    long restartInterval = FIRST_RESTART_INTERVAL;
+    long nextRestart = restartInterval;
+    while (!cancelled) {
+      // Restart with the learned weights if the search is stuck in a bad part of the search space.
+      // This is only done until the first solution is found, so no solution is counted twice.
+      if (solutions == 0 && consistent && backtracks >= nextRestart) {
+        undo(rootMark);
+        depth = 0;
+        conflictEdge = NO_EDGE;
+        restartInterval += restartInterval / 2;
+        nextRestart = backtracks + restartInterval;
+        restarts++;
+      }
+      
+      if (consistent) {
+        final int edge = selectEdge();
+        if (edge == NO_EDGE) {
+          solutions++;
+          if (firstSolution == null) {
+            firstSolution = getCables();
+          }
+          if (solutions >= solutionLimit) {
+            complete = false;
+            break;
+          }
+        } else {
+          decisionEdges[depth] = edge;
+          decisionMarks[depth] = trailSize;
+          decisionValues[depth] = domains[edge];
+          depth++;
+          guesses++;
+        }
+      }
+      
+      // Try the next value of the most recent decision that has values left.
+      consistent = false;
+      while (depth > 0 && !consistent) {
+        final int level = depth - 1;
+        undo(decisionMarks[level]);
+        final int values = decisionValues[level];
+        if (values == 0) {
+          if (conflictEdge == NO_EDGE) {
+            conflictEdge = decisionEdges[level];
+          }
+          depth--;
+          continue;
+        }
+        final int value = selectValue(values);
+        decisionValues[level] = values & ~(1 << value);
+        consistent = restrict(decisionEdges[level], 1 << value) && propagate() && probe();
+        if (consistent && decisionEdges[level] == conflictEdge) {
+          conflictEdge = NO_EDGE;
+        } else if (!consistent) {
+          // The edges around the conflict stay queued for probing, which often finds the reason
+          // for the conflict right after the next decision.
+          clearPending();
+          backtracks++;
+          islandWeights[puzzle.getFirstIsland(decisionEdges[level])]++;
+          islandWeights[puzzle.getSecondIsland(decisionEdges[level])]++;
+        }
+      }
+      if (!consistent) {
+        break; // all possibilities have been tried
+      }
+    }
+    if (cancelled) {
+      complete = false;
+    }
+    
+    return new SolverResult(puzzle, solutions, complete, firstSolution, guesses, backtracks,
+        restarts);
+  }
+  
+  /**
+   * Stops the current search and all future searches of this solver as soon as possible. The
+   * results of cancelled searches are incomplete. May be called from any thread.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+  
+  public boolean isCancelled() {
+    return cancelled;
+  }
+  
+  /**
+   * Forgets everything that was deduced so far.
+   */
+  void reset() {
+    Arrays.fill(domains, (byte) ALL_VALUES);
+    Arrays.fill(islandWeights, 1);
+    trailSize = 0;
+    guesses = 0;
+    backtracks = 0;
+    restarts = 0;
+    conflictEdge = NO_EDGE;
+    clearPending();
+    clearProbes();
+    for (int island = 0; island < puzzle.getIslandCount(); island++) {
+      groups[island] = island;
+      nextGroupMembers[island] = island;
+      groupSizes[island] = 1;
+      groupResiduals[island] = puzzle.getDegree(island);
+      enqueue(island);
+    }
+  }
+  
+  /**
+   * Returns the current number of cables of every edge. Only meaningful once all edges are
+   * decided.
+   */
+  private int[] getCables() {
+    final int[] cables = new int[domains.length];
+    for (int edge = 0; edge < domains.length; edge++) {
+      cables[edge] = min(domains[edge]);
+    }
+    return cables;
+  }
+  
+  /**
+   * Returns an undecided edge or {@link #NO_EDGE} if all edges are decided. After a conflict the
+   * edge that ran out of values is returned as long as it is undecided. Otherwise prefers edges
+   * with few possible values between islands that were often involved in contradictions, which
+   * focuses the search on the hard parts of the puzzle (known as dom/wdeg).
+   */
+  private int selectEdge() {
+    if (conflictEdge != NO_EDGE) {
+      if (Integer.bitCount(domains[conflictEdge]) > 1) {
+        return conflictEdge;
+      }
+      conflictEdge = NO_EDGE;
+    }
+    int selected = NO_EDGE;
+    int selectedWeight = 0;
+    int selectedSize = 1;
+    for (int edge = 0; edge < domains.length; edge++) {
+      final int size = Integer.bitCount(domains[edge]);
+      if (size < 2) {
+        continue;
+      }
+      final int weight = islandWeights[puzzle.getFirstIsland(edge)]
+          + islandWeights[puzzle.getSecondIsland(edge)];
+      if ((long) weight * selectedSize > (long) selectedWeight * size) {
+        selected = edge;
+        selectedWeight = weight;
+        selectedSize = size;
+      }
+    }
+    return selected;
+  }
+  
+  /**
+   * Returns the value of the given set that is tried first. A single cable keeps most options open
+   * for the neighbours without giving up the connection.
+   */
+  private static int selectValue(int values) {
+    return (values & 0b010) != 0 ? 1 : max(values);
+  }
+  
+  /**
+   * Applies all rules until nothing changes anymore, including the search for bridges, which looks
+   * at the whole network.
+   *
+   * @return false if a contradiction was found
+   */
+  boolean propagateFully() {
+    while (true) {
+      if (!propagate()) {
+        return false;
+      }
+      final int trailSizeBefore = trailSize;
+      final int bridgeCount = findBridges();
+      if (bridgeCount < 0) {
+        return false;
+      }
+      for (int i = 0; i < bridgeCount; i++) {
+        if (!restrict(bridges[i], ALL_VALUES & ~1)) {
+          clearPending();
+          return false;
+        }
+      }
+      if (trailSize == trailSizeBefore) {
+        return true;
+      }
+    }
+  }
+  
+  /**
+   * Applies the rules to the islands and edges that changed until nothing changes anymore.
+   *
+   * @return false if a contradiction was found
+   */
+  boolean propagate() {
+    while (true) {
+      while (queueSize > 0) {
+        final int island = queue[queueHead];
+        queueHead = (queueHead + 1) % queue.length;
+        queueSize--;
+        queued[island] = false;
+        if (!propagateDegree(island) || maxTechnique.compareTo(Technique.ISOLATION) >= 0
+            && !propagateIsolation(island)) {
+          clearPending();
+          return false;
+        }
+      }
+      if (removedEdgeCount == 0) {
+        return true;
+      }
+      final int removedEdge = removedEdges[--removedEdgeCount];
+      if (maxTechnique.compareTo(Technique.CONNECTIVITY) >= 0 && !isStillConnected(removedEdge)) {
+        clearPending();
+        return false;
+      }
+    }
+  }
+  
+  /**
+   * Tries every value of the edges next to the islands that changed and removes the values that
+   * lead to a contradiction right away (known as failed literal probing). This finds most
+   * contradictions before anything is guessed, so the search has to backtrack much less.
+   *
+   * @return false if an edge has no value left
+   */
+  boolean probe() {
+    while (probeQueueSize > 0) {
+      final int edge = probeQueue[probeQueueHead];
+      probeQueueHead = (probeQueueHead + 1) % probeQueue.length;
+      probeQueueSize--;
+      probeQueued[edge] = false;
+      final int domain = domains[edge];
+      if (Integer.bitCount(domain) < 2) {
+        continue;
+      }
+      
+      int supported = 0;
+      probing = true;
+      for (int value = 0; value <= 2; value++) {
+        if ((domain & 1 << value) == 0) {
+          continue;
+        }
+        final int mark = trailSize;
+        if (restrict(edge, 1 << value) && propagate()) {
+          supported |= 1 << value;
+        } else {
+          clearPending();
+        }
+        undo(mark);
+      }
+      probing = false;
+      
+      if (!restrict(edge, supported) || !propagate()) {
+        clearPending();
+        clearProbes();
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  private boolean propagateDegree(int island) {
+    final int degree = puzzle.getDegree(island);
+    int lowerBound = 0;
+    int upperBound = 0;
+    for (int direction = 0; direction < DIRECTIONS; direction++) {
+      final int edge = puzzle.getEdge(island, direction);
+      if (edge != NO_EDGE) {
+        lowerBound += min(domains[edge]);
+        upperBound += max(domains[edge]);
+      }
+    }
+    if (lowerBound > degree || upperBound < degree) {
+      islandWeights[island]++;
+      return false;
+    }
+    if (lowerBound == upperBound) {
+      return true;
+    }
+    for (int direction = 0; direction < DIRECTIONS; direction++) {
+      final int edge = puzzle.getEdge(island, direction);
+      if (edge != NO_EDGE) {
+        final int domain = domains[edge];
+        final int maxCables = degree - (lowerBound - min(domain));
+        final int minCables = degree - (upperBound - max(domain));
+        if (!restrict(edge, range(minCables, maxCables))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Makes sure that the undecided edges of the given island don't close off the two groups they
+   * connect, i.e. use up all the cables both groups still need, unless that connects all islands.
+   */
+  private boolean propagateIsolation(int island) {
+    final int islands = puzzle.getIslandCount();
+    for (int direction = 0; direction < DIRECTIONS; direction++) {
+      final int edge = puzzle.getEdge(island, direction);
+      if (edge == NO_EDGE || Integer.bitCount(domains[edge]) < 2) {
+        continue;
+      }
+      final int group1 = getGroup(island);
+      final int group2 = getGroup(puzzle.getOtherIsland(edge, island));
+      if (group1 == group2 || groupSizes[group1] + groupSizes[group2] >= islands) {
+        continue;
+      }
+      final int residual = groupResiduals[group1] + groupResiduals[group2];
+      int allowed = ALL_VALUES;
+      for (int cables = 1; cables <= 2; cables++) {
+        if (residual == 2 * cables) {
+          allowed &= ~(1 << cables);
+        }
+      }
+      if (!restrict(edge, allowed)) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Checks if both islands of the given edge, which can't have cables anymore, are still connected
+   * by edges that may have cables. Searches from both islands at the same time, so only about the
+   * smaller part of the network is visited if it was split.
+   */
+  private boolean isStillConnected(int edge) {
+    final int first = puzzle.getFirstIsland(edge);
+    final int second = puzzle.getSecondIsland(edge);
+    final int firstGroup = getGroup(first);
+    final int secondGroup = getGroup(second);
+    if (firstGroup == secondGroup) {
+      return true;
+    }
+    if (visitMark > Integer.MAX_VALUE - 2) {
+      Arrays.fill(visitMarks, 0);
+      visitMark = 0;
+    }
+    final int firstMark = ++visitMark;
+    final int secondMark = ++visitMark;
+    visitMarks[first] = firstMark;
+    visitMarks[second] = secondMark;
+    firstFrontier[0] = first;
+    secondFrontier[0] = second;
+    int firstHead = 0;
+    int firstSize = 1;
+    int secondHead = 0;
+    int secondSize = 1;
+    while (true) {
+      if (firstHead == firstSize || secondHead == secondSize) {
+        return false; // one part has no more edges to the other one
+      }
+      firstSize = visitNext(firstFrontier[firstHead++], firstFrontier, firstSize, firstMark,
+          secondMark, secondGroup);
+      if (firstSize < 0) {
+        return true;
+      }
+      secondSize = visitNext(secondFrontier[secondHead++], secondFrontier, secondSize, secondMark,
+          firstMark, firstGroup);
+      if (secondSize < 0) {
+        return true;
+      }
+    }
+  }
+  
+  /**
+   * Adds the unvisited neighbours of the given island to the frontier of one side of the
+   * bidirectional search.
+   *
+   * @return the new size of the frontier or -1 if the other side was reached
+   */
+  private int visitNext(int island, int[] frontier, int frontierSize, int mark, int otherMark,
+      int otherGroup) {
+    for (int direction = 0; direction < DIRECTIONS; direction++) {
+      final int edge = puzzle.getEdge(island, direction);
+      if (edge == NO_EDGE || max(domains[edge]) == 0) {
+        continue;
+      }
+      final int other = puzzle.getOtherIsland(edge, island);
+      if (visitMarks[other] == otherMark || getGroup(other) == otherGroup) {
+        return -1;
+      }
+      if (visitMarks[other] != mark) {
+        visitMarks[other] = mark;
+        frontier[frontierSize++] = other;
+      }
+    }
+    return frontierSize;
+  }
+  
+  /**
+   * Finds all bridges (in the graph theory sense) of the network formed by edges that may have
+   * cables and stores them in {@link #bridges}.
+   *
+   * @return the number of bridges or -1 if the network is not connected
+   */
+  private int findBridges() {
+    final int islands = puzzle.getIslandCount();
+    final int[] searchStack = firstFrontier;
+    Arrays.fill(discoveryTimes, -1);
+    int time = 0;
+    int bridgeCount = 0;
+    int stackSize = 0;
+    
+    searchStack[stackSize++] = 0;
+    discoveryTimes[0] = lowTimes[0] = time++;
+    parentEdges[0] = NO_EDGE;
+    nextDirections[0] = 0;
+    while (stackSize > 0) {
+      final int island = searchStack[stackSize - 1];
+      if (nextDirections[island] < DIRECTIONS) {
+        final int edge = puzzle.getEdge(island, nextDirections[island]++);
+        if (edge == NO_EDGE || edge == parentEdges[island] || max(domains[edge]) == 0) {
+          continue;
+        }
+        final int other = puzzle.getOtherIsland(edge, island);
+        if (discoveryTimes[other] < 0) {
+          discoveryTimes[other] = lowTimes[other] = time++;
+          parentEdges[other] = edge;
+          nextDirections[other] = 0;
+          searchStack[stackSize++] = other;
+        } else {
+          lowTimes[island] = Math.min(lowTimes[island], discoveryTimes[other]);
+        }
+      } else {
+        stackSize--;
+        final int parentEdge = parentEdges[island];
+        if (parentEdge != NO_EDGE) {
+          final int parent = puzzle.getOtherIsland(parentEdge, island);
+          lowTimes[parent] = Math.min(lowTimes[parent], lowTimes[island]);
+          if (lowTimes[island] > discoveryTimes[parent]) {
+            bridges[bridgeCount++] = parentEdge;
+          }
+        }
+      }
+    }
+    return time == islands ? bridgeCount : -1;
+  }
+  
+  private int getGroup(int island) {
+    return groups[island];
+  }
+  
+  /**
+   * Sets the group of all islands in the circular list starting at the given island.
+   */
+  private void relabelGroup(int island, int group) {
+    int member = island;
+    do {
+      groups[member] = group;
+      member = nextGroupMembers[member];
+    } while (member != island);
+  }
+  
+  /**
+   * Merges or splits the circular lists of the given islands.
+   */
+  private void spliceGroups(int island1, int island2) {
+    final int next = nextGroupMembers[island1];
+    nextGroupMembers[island1] = nextGroupMembers[island2];
+    nextGroupMembers[island2] = next;
+  }
+  
+  /**
+   * Updates the groups after the minimum number of cables of the given edge was raised.
+   *
+   * @return false if a group was closed off
+   */
+  private boolean addCables(int edge, int cables, boolean connect) {
+    int group1 = getGroup(puzzle.getFirstIsland(edge));
+    int group2 = getGroup(puzzle.getSecondIsland(edge));
+    groupResiduals[group1] -= cables;
+    groupResiduals[group2] -= cables;
+    if (connect && group1 != group2) {
+      if (groupSizes[group1] < groupSizes[group2]) {
+        final int group = group1;
+        group1 = group2;
+        group2 = group;
+      }
+      relabelGroup(group2, group1);
+      spliceGroups(group1, group2);
+      groupSizes[group1] += groupSizes[group2];
+      groupResiduals[group1] += groupResiduals[group2];
+      pushTrail(~group2);
+    }
+    return groupResiduals[group1] > 0 || groupSizes[group1] == puzzle.getIslandCount();
+  }
+  
+  /**
+   * Removes all values from the domain of the given edge that are not in the given set.
+   *
+   * @return false if a contradiction was found
+   */
+  boolean restrict(int edge, int values) {
+    final int oldDomain = domains[edge];
+    final int newDomain = oldDomain & values;
+    if (newDomain == oldDomain) {
+      return true;
+    }
+    if (newDomain == 0) {
+      return false;
+    }
+    pushTrail(edge << 3 | oldDomain);
+    domains[edge] = (byte) newDomain;
+    enqueue(puzzle.getFirstIsland(edge));
+    enqueue(puzzle.getSecondIsland(edge));
+    
+    if (newDomain == 1) {
+      removedEdges[removedEdgeCount++] = edge;
+    }
+    final int oldMin = min(oldDomain);
+    if (min(newDomain) > oldMin) {
+      if (!addCables(edge, min(newDomain) - oldMin, oldMin == 0)) {
+        return false;
+      }
+      if (oldMin == 0) {
+        for (int i = 0; i < puzzle.getCrossingCount(edge); i++) {
+          if (!restrict(puzzle.getCrossing(edge, i), 1)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+  
+  private void pushTrail(int entry) {
+    if (trailSize == trail.length) {
+      trail = Arrays.copyOf(trail, trail.length * 2);
+    }
+    trail[trailSize++] = entry;
+  }
+  
+  /**
+   * Reverts all changes back to the given trail size.
+   */
+  void undo(int mark) {
+    while (trailSize > mark) {
+      final int entry = trail[--trailSize];
+      if (entry < 0) {
+        final int group = ~entry;
+        final int mergedGroup = groups[group];
+        spliceGroups(mergedGroup, group);
+        relabelGroup(group, group);
+        groupSizes[mergedGroup] -= groupSizes[group];
+        groupResiduals[mergedGroup] -= groupResiduals[group];
+        continue;
+      }
+      final int edge = entry >>> 3;
+      final int oldDomain = entry & ALL_VALUES;
+      final int cables = min(domains[edge]) - min(oldDomain);
+      if (cables > 0) {
+        groupResiduals[getGroup(puzzle.getFirstIsland(edge))] += cables;
+        groupResiduals[getGroup(puzzle.getSecondIsland(edge))] += cables;
+      }
+      domains[edge] = (byte) oldDomain;
+    }
+  }
+  
+  /**
+   * Applies the rules up to the given technique once to all islands and edges until nothing
+   * changes anymore. Nothing is guessed, so the domains only shrink by what follows logically.
+   *
+   * @return false if a contradiction was found
+   */
+  boolean deduce(Technique technique) {
+    checkArgument(technique != Technique.GUESSING, "Guessing is not a deduction!");
+    maxTechnique = technique;
+    try {
+      for (int island = 0; island < puzzle.getIslandCount(); island++) {
+        enqueue(island);
+      }
+      switch (technique) {
+        case CONNECTIVITY:
+          return propagateFully();
+        case PROBING:
+          return propagateFully() && probe();
+        default:
+          clearProbes(); // queued by enqueue(), but not used
+          return propagate();
+      }
+    } finally {
+      maxTechnique = Technique.GUESSING;
+    }
+  }
+  
+  /**
+   * Returns the number of domains that were restricted since the given trail size.
+   */
+  int countRestrictions(int mark) {
+    int restrictions = 0;
+    for (int i = mark; i < trailSize; i++) {
+      if (trail[i] >= 0) {
+        restrictions++;
+      }
+    }
+    return restrictions;
+  }
+  
+  /**
+   * Returns whether every edge has exactly one possible number of cables left.
+   */
+  boolean isDecided() {
+    for (int edge = 0; edge < domains.length; edge++) {
+      if (Integer.bitCount(domains[edge]) > 1) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Returns the edge that was restricted by the given trail entry or {@link #NO_EDGE} if the entry
+   * belongs to a merge of groups.
+   */
+  int getRestrictedEdge(int trailIndex) {
+    return trail[trailIndex] < 0 ? NO_EDGE : trail[trailIndex] >>> 3;
+  }
+  
+  int getTrailSize() {
+    return trailSize;
+  }
+  
+  int getDomain(int edge) {
+    return domains[edge];
+  }
+  
+  private void enqueue(int island) {
+    if (!queued[island]) {
+      queued[island] = true;
+      queue[(queueHead + queueSize) % queue.length] = island;
+      queueSize++;
+    }
+    if (!probing) {
+      for (int direction = 0; direction < DIRECTIONS; direction++) {
+        final int edge = puzzle.getEdge(island, direction);
+        if (edge != NO_EDGE && !probeQueued[edge]) {
+          probeQueued[edge] = true;
+          probeQueue[(probeQueueHead + probeQueueSize) % probeQueue.length] = edge;
+          probeQueueSize++;
+        }
+      }
+    }
+  }
+  
+  /**
+   * Forgets the islands and edges that still had to be checked after a contradiction was found.
+   */
+  void clearPending() {
+    while (queueSize > 0) {
+      queued[queue[queueHead]] = false;
+      queueHead = (queueHead + 1) % queue.length;
+      queueSize--;
+    }
+    removedEdgeCount = 0;
+  }
+  
+  void clearProbes() {
+    while (probeQueueSize > 0) {
+      probeQueued[probeQueue[probeQueueHead]] = false;
+      probeQueueHead = (probeQueueHead + 1) % probeQueue.length;
+      probeQueueSize--;
+    }
+  }
+  
+  static int min(int domain) {
+    return Integer.numberOfTrailingZeros(domain);
+  }
+  
+  static int max(int domain) {
+    return 31 - Integer.numberOfLeadingZeros(domain);
+  }
+  
+  /**
+   * Returns the set of all values from min to max that are valid cable counts.
+   */
+  static int range(int min, int max) {
+    final int from = Math.max(min, 0);
+    final int to = Math.min(max, 2);
+    if (from > to) {
+      return 0;
+    }
+    return ((1 << (to + 1)) - 1) & ~((1 << from) - 1);
+  }
+
+}
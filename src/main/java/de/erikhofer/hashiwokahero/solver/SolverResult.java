@@ -0,0 +1,65 @@
+package de.erikhofer.hashiwokahero.solver;
+
+import de.erikhofer.hashiwokahero.PackedBoard;
+import lombok.Value;
+
+/**
+ * The result of {@link Solver#solve(int)}.
+ */
+@Value
+public class SolverResult {
+  
+  private Puzzle puzzle;
+  
+  /**
+   * Number of solutions found. This is the exact number of solutions only if the result is
+   * complete.
+   */
+  private int solutionCount;
+  
+  /**
+   * Whether the whole search space was explored, i.e. the solution limit was not reached and the
+   * search was not cancelled.
+   */
+  private boolean complete;
+  
+  /**
+   * The cables of every edge of the first solution found or null if there is none.
+   */
+  private int[] solution;
+  
+  /**
+   * Number of times the propagation got stuck and a value had to be guessed.
+   */
+  private long guesses;
+  
+  /**
+   * Number of guesses that led to a contradiction.
+   */
+  private long backtracks;
+  
+  /**
+   * Number of times the search started over before the first solution was found.
+   */
+  private long restarts;
+  
+  public boolean isSolvable() {
+    return solutionCount > 0;
+  }
+  
+  /**
+   * Returns whether the puzzle has exactly one solution. This is only known if there was a
+   * solution limit greater than one.
+   */
+  public boolean isUnique() {
+    return solutionCount == 1 && complete;
+  }
+  
+  /**
+   * Returns the board of the first solution found or null if there is none.
+   */
+  public PackedBoard getSolutionBoard() {
+    return solution == null ? null : puzzle.toBoard(solution);
+  }
+
+}
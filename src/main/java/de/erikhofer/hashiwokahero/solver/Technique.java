@@ -0,0 +1,44 @@
+package de.erikhofer.hashiwokahero.solver;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The deduction techniques of the {@link Solver} from the easiest to the hardest one. A technique
+ * includes all easier ones.
+ */
+@RequiredArgsConstructor
+public enum Technique {
+  
+  /**
+   * The cables of an island must add up to its number of connections and cables must not cross.
+   */
+  DEGREE(1),
+  
+  /**
+   * A group of connected islands must not be closed off before it contains all islands.
+   */
+  ISOLATION(3),
+  
+  /**
+   * The network must stay connected, so edges it can't do without need a cable.
+   */
+  CONNECTIVITY(5),
+  
+  /**
+   * Values of an edge are tried one by one and ruled out if the other techniques immediately find
+   * a contradiction.
+   */
+  PROBING(10),
+  
+  /**
+   * A value is guessed and the search backtracks if it was wrong.
+   */
+  GUESSING(50);
+  
+  /**
+   * How much a single use of the technique adds to the score of a {@link DifficultyRating}.
+   */
+  private final @Getter int weight;
+
+}
@@ -0,0 +1,121 @@
+package de.erikhofer.hashiwokahero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BoardCacheTest {
+  
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
+  private static PackedBoard generate(long seed, int components) {
+    return new BoardGenerator(seed).generatePackedBoard(components);
+  }
+  
+  /**
+   * Returns the text of the given board with cables. Boards on disk don't keep the orientation and
+   * variant of empty cable tiles, so they are compared by their text.
+   */
+  private static String toText(PackedBoard board) throws IOException {
+    final StringWriter text = new StringWriter();
+    new HashiTextWriter(text).write(board, true);
+    return text.toString();
+  }
+  
+  @Test
+  public void countsMemoryHitsAndMisses() {
+    final BoardCache cache = new BoardCache(1 << 20);
+    assertEquals(generate(1, 20), cache.getBoard(1, 20));
+    assertEquals(generate(1, 20), cache.getBoard(1, 20));
+    assertEquals(generate(1, 30), cache.getBoard(1, 30));
+    assertEquals(generate(2, 20), cache.getBoard(2, 20));
+    
+    assertEquals(1, cache.getMemoryHits());
+    assertEquals(0, cache.getDiskHits());
+    assertEquals(3, cache.getMisses());
+    assertEquals(3, cache.getSize());
+    assertEquals(generate(1, 20).getSize() + generate(1, 30).getSize()
+        + generate(2, 20).getSize(), cache.getTiles());
+  }
+  
+  @Test
+  public void evictsLeastRecentlyUsedBoard() {
+    final int first = generate(1, 20).getSize();
+    final int second = generate(2, 20).getSize();
+    final int third = generate(3, 20).getSize();
+    final BoardCache cache = new BoardCache(first + second + third - 1);
+    cache.getBoard(1, 20);
+    cache.getBoard(2, 20);
+    cache.getBoard(1, 20); // the second board is the least recently used now
+    cache.getBoard(3, 20);
+    assertEquals(1, cache.getEvictions());
+    assertEquals(2, cache.getSize());
+    assertEquals(first + third, cache.getTiles());
+    
+    cache.getBoard(1, 20);
+    cache.getBoard(3, 20);
+    assertEquals(3, cache.getMemoryHits());
+    cache.getBoard(2, 20);
+    assertEquals(4, cache.getMisses());
+  }
+  
+  @Test
+  public void doesNotCacheBoardsLargerThanLimit() {
+    final PackedBoard board = generate(1, 50);
+    final BoardCache cache = new BoardCache(board.getSize() - 1);
+    assertEquals(board, cache.getBoard(1, 50));
+    assertEquals(board, cache.getBoard(1, 50));
+    assertEquals(2, cache.getMisses());
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.getTiles());
+    assertEquals(0, cache.getEvictions());
+  }
+  
+  @Test
+  public void readsBoardsFromDirectory() throws IOException {
+    final Path directory = folder.getRoot().toPath().resolve("boards");
+    final BoardCache cache = new BoardCache(1 << 20, directory);
+    final PackedBoard board = cache.getBoard(7, 40);
+    assertEquals(1, cache.getMisses());
+    
+    cache.clear();
+    assertEquals(toText(board), toText(cache.getBoard(7, 40)));
+    // a cache of a later run finds the board, too
+    final BoardCache otherCache = new BoardCache(1 << 20, directory);
+    assertEquals(toText(board), toText(otherCache.getBoard(7, 40)));
+    assertEquals(toText(board), toText(otherCache.getBoard(7, 40)));
+    
+    assertEquals(1, cache.getDiskHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, otherCache.getDiskHits());
+    assertEquals(1, otherCache.getMemoryHits());
+    assertEquals(0, otherCache.getMisses());
+  }
+  
+  @Test
+  public void handsOutIndependentBoards() {
+    final BoardCache cache = new BoardCache(1 << 20);
+    final PackedBoard original = generate(1, 20);
+    final PackedBoard board = cache.getBoard(1, 20);
+    int index = 0;
+    while (board.isComponent(index)) {
+      index++;
+    }
+    board.set(index, PackedBoard.componentCell(8, 0));
+    assertNotEquals(original, board);
+    
+    final PackedBoard cachedBoard = cache.getBoard(1, 20);
+    assertNotSame(board, cachedBoard);
+    assertEquals(original, cachedBoard);
+    assertEquals(1, cache.getMemoryHits());
+  }
+
+}
@@ -0,0 +1,131 @@
+package de.erikhofer.hashiwokahero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class BoardSnapshotTest {
+  
+  private static byte[] write(BoardSnapshot snapshot) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    snapshot.writeTo(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+  
+  private static BoardSnapshot read(byte[] bytes) throws IOException {
+    return BoardSnapshot.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+  
+  private static int getChunkCount(BoardSnapshot snapshot) {
+    return (snapshot.getSize() - 1) / PackedBoard.getChunkSize(snapshot.getWidth()) + 1;
+  }
+  
+  @Test
+  public void keepsCellsOfBoard() {
+    final PackedBoard board = new BoardGenerator(1).generatePackedBoard(500);
+    final PackedBoard copy = new PackedBoard(board);
+    final BoardSnapshot snapshot = board.snapshot();
+    board.setCables(1, 2);
+    board.set(board.getSize() - 1, PackedBoard.componentCell(3, 0));
+    
+    assertEquals(copy, new PackedBoard(snapshot));
+    for (int index = 0; index < board.getSize(); index++) {
+      assertEquals(copy.get(index), snapshot.get(index));
+    }
+  }
+  
+  @Test
+  public void writesAndReadsSnapshots() throws IOException {
+    for (int seed = 0; seed < 10; seed++) {
+      final GameState gameState = new GameState(new BoardGenerator(seed).generatePackedBoard(300));
+      gameState.setBoardToSolution();
+      final BoardSnapshot snapshot = gameState.snapshot();
+      final BoardSnapshot read = read(write(snapshot));
+      assertEquals(snapshot.getWidth(), read.getWidth());
+      assertEquals(snapshot.getHeight(), read.getHeight());
+      assertEquals(new PackedBoard(snapshot), new PackedBoard(read));
+    }
+  }
+  
+  @Test
+  public void restoresGame() throws IOException {
+    final GameState gameState = new GameState(new BoardGenerator(2).generatePackedBoard(300));
+    final BoardSnapshot empty = gameState.snapshot();
+    gameState.setBoardToSolution();
+    final BoardSnapshot solved = read(write(gameState.snapshot()));
+    
+    gameState.restore(empty);
+    assertFalse(gameState.verifySolution());
+    gameState.restore(solved);
+    assertTrue(gameState.verifySolution());
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsSnapshotOfOtherGame() {
+    final GameState gameState = new GameState(new BoardGenerator(3).generatePackedBoard(40, 30));
+    final GameState other = new GameState(new BoardGenerator(4).generatePackedBoard(40, 30));
+    gameState.restore(other.snapshot());
+  }
+  
+  @Test
+  public void showingSolutionSharesCells() {
+    final GameState gameState = new GameState(new BoardGenerator(5).generatePackedBoard(3000));
+    gameState.setBoardToSolution();
+    final BoardSnapshot board = gameState.snapshot();
+    final BoardSnapshot solution = gameState.getSolution().snapshot();
+    for (int chunk = 0; chunk < getChunkCount(board); chunk++) {
+      assertSame(solution.getChunk(chunk), board.getChunk(chunk));
+    }
+  }
+  
+  @Test
+  public void readsLargeEmptyBoardWithoutAllocatingIt() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(BoardSnapshot.MAGIC);
+    out.writeInt(BoardSnapshot.VERSION);
+    out.writeInt(46_000);
+    out.writeInt(46_000);
+    // one run of empty cells over the whole board
+    int run = 46_000 * 46_000;
+    while ((run & ~0x7F) != 0) {
+      out.writeByte(run & 0x7F | 0x80);
+      run >>>= 7;
+    }
+    out.writeByte(run);
+    
+    final BoardSnapshot snapshot = read(bytes.toByteArray());
+    assertEquals(46_000 * 46_000, snapshot.getSize());
+    assertEquals(0, snapshot.get(snapshot.getSize() - 1));
+    assertSame(snapshot.getChunk(0), snapshot.getChunk(1));
+  }
+  
+  @Test
+  public void rejectsCorruptSnapshots() throws IOException {
+    final byte[] bytes = write(new BoardGenerator(6).generatePackedBoard(20).snapshot());
+    final byte[] wrongMagic = bytes.clone();
+    wrongMagic[0]++;
+    final byte[] wrongSize = bytes.clone();
+    wrongSize[8] = (byte) 0x80;
+    final byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+    for (byte[] corrupt : new byte[][] {wrongMagic, wrongSize, truncated}) {
+      try {
+        read(corrupt);
+        fail();
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+}
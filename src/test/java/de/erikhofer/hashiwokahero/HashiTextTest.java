@@ -0,0 +1,197 @@
+package de.erikhofer.hashiwokahero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.junit.Test;
+
+public class HashiTextTest {
+  
+  private static HashiTextReader reader(String text) {
+    return new HashiTextReader(new StringReader(text));
+  }
+  
+  private static String write(PackedBoard board, boolean cables) throws IOException {
+    final StringWriter text = new StringWriter();
+    new HashiTextWriter(text).write(board, cables);
+    return text.toString();
+  }
+  
+  private static boolean isSolved(GameState gameState) {
+    gameState.setBoardToSolution();
+    return gameState.verifySolution();
+  }
+  
+  @Test
+  public void writesAndReadsSolutions() throws IOException {
+    final StringWriter text = new StringWriter();
+    final PackedBoard[] solutions = new PackedBoard[10];
+    try (HashiTextWriter writer = new HashiTextWriter(text)) {
+      for (int i = 0; i < solutions.length; i++) {
+        solutions[i] = new BoardGenerator(i).generatePackedBoard(5 + 10 * i);
+        writer.write(solutions[i], true);
+      }
+    }
+    
+    try (HashiTextReader reader = reader(text.toString())) {
+      for (PackedBoard solution : solutions) {
+        final PackedBoard board = reader.readBoard();
+        assertEquals(write(solution, true), write(board, true));
+      }
+      assertNull(reader.readBoard());
+    }
+  }
+  
+  @Test
+  public void readsRowsOfDifferentLength() throws IOException {
+    final PackedBoard board = reader("1-1\n\r\n\n2.\n \n1  \n").readBoard();
+    assertEquals("1-1\n", write(board, true));
+    
+    final HashiTextReader reader = reader("1-1\n\r\n\n2.\n \n1  \n");
+    reader.readBoard();
+    final PackedBoard secondBoard = reader.readBoard();
+    assertEquals("2.\n..\n1.\n", write(secondBoard, true));
+    assertNull(reader.readBoard());
+  }
+  
+  @Test
+  public void readsLineOfSpacesAsRow() throws IOException {
+    final HashiTextReader reader = reader("2 2\n   \n2 2\n");
+    assertEquals("2.2\n...\n2.2\n", write(reader.readBoard(), true));
+    assertNull(reader.readBoard());
+  }
+  
+  @Test
+  public void ignoresTrailingSpaces() throws IOException {
+    final PackedBoard board = reader("1-1 \n").readBoard();
+    assertEquals(3, board.getWidth());
+    assertEquals(1, board.getHeight());
+  }
+  
+  /**
+   * Repeats a text endlessly and counts the characters that were read.
+   */
+  private static class CountingReader extends Reader {
+    
+    private final String text;
+    private long count;
+    
+    private CountingReader(String text) {
+      this.text = text;
+    }
+    
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+      for (int i = 0; i < length; i++) {
+        buffer[offset + i] = text.charAt((int) (count++ % text.length()));
+      }
+      return length;
+    }
+    
+    @Override
+    public void close() {
+    }
+  
+  }
+  
+  @Test
+  public void rejectsBoardsWithMoreTiles() throws IOException {
+    assertEquals(9, new HashiTextReader(new StringReader("1.1\n...\n1.1\n"), 9).readBoard()
+        .getSize());
+    try {
+      new HashiTextReader(new StringReader("1.1\n...\n1.1\n"), 8).readBoard();
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+    try {
+      // the short rows are filled, so the board has more tiles than the text has characters
+      new HashiTextReader(new StringReader("1...1\n1\n1\n"), 14).readBoard();
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+  
+  @Test
+  public void stopsReadingOversizedBoards() {
+    for (String text : new String[] {"1", "1\n", " \n", "1 "}) {
+      final CountingReader in = new CountingReader(text);
+      try {
+        new HashiTextReader(in, 10_000).readBoard();
+        fail();
+      } catch (IOException e) {
+        assertTrue(text, in.count < 100_000);
+      }
+    }
+  }
+  
+  @Test(expected = IOException.class)
+  public void rejectsUnexpectedCharacters() throws IOException {
+    reader("1-x\n").readBoard();
+  }
+  
+  @Test
+  public void solvesPuzzles() throws IOException {
+    final GameState gameState = reader("2.2\n...\n2.2\n").readGameState();
+    assertEquals("2.2\n...\n2.2\n", write(gameState.getBoard(), true));
+    assertTrue(isSolved(gameState));
+  }
+  
+  @Test
+  public void takesCablesAsSolution() throws IOException {
+    final GameState gameState = reader("2=2\n").readGameState();
+    assertEquals("2=2\n", write(gameState.getSolution(), true));
+    assertEquals("2.2\n", write(gameState.getBoard(), true));
+    
+    for (int seed = 0; seed < 10; seed++) {
+      final String solution = write(new BoardGenerator(seed).generatePackedBoard(100), true);
+      assertEquals(solution, write(reader(solution).readGameState().getSolution(), true));
+    }
+  }
+  
+  @Test(expected = IOException.class)
+  public void rejectsWrongCableCount() throws IOException {
+    reader("2-1\n").readGameState();
+  }
+  
+  @Test(expected = IOException.class)
+  public void rejectsCablesThatDontEndAtComponents() throws IOException {
+    reader("1-\n..\n").readGameState();
+  }
+  
+  @Test(expected = IOException.class)
+  public void rejectsCrossingCables() throws IOException {
+    reader(
+        "2-2..\n"
+        + "|.|..\n"
+        + "2---1\n"
+        + "..|..\n"
+        + "..1..\n").readGameState();
+  }
+  
+  @Test(expected = IOException.class)
+  public void rejectsDisconnectedCables() throws IOException {
+    reader(
+        "1-1\n"
+        + "...\n"
+        + "1-1\n").readGameState();
+  }
+  
+  @Test(expected = IOException.class)
+  public void rejectsUnsolvablePuzzles() throws IOException {
+    reader("1.1.1\n").readGameState();
+  }
+  
+  @Test(expected = IOException.class)
+  public void rejectsBoardsWithoutComponents() throws IOException {
+    reader("...\n").readGameState();
+  }
+
+}
@@ -0,0 +1,136 @@
+package de.erikhofer.hashiwokahero;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Test;
+
+public class MoveLogTest {
+  
+  /**
+   * Adds every cable of the solution to the game, one move at a time.
+   */
+  private static void solve(GameState gameState) {
+    final PackedBoard solution = gameState.getSolution();
+    for (int index = 0; index < solution.getSize(); index++) {
+      if (!solution.isComponent(index)) {
+        continue;
+      }
+      for (Direction direction : new Direction[] {Direction.EAST, Direction.SOUTH}) {
+        final int cable = index + solution.getIndexOffset(direction);
+        if (solution.getRow(cable) >= solution.getHeight()
+            || direction == Direction.EAST && solution.getCol(index) + 1 >= solution.getWidth()
+            || !solution.isCable(cable)
+            || solution.getOrientation(cable) != direction.getOrientation()) {
+          continue;
+        }
+        for (int i = 0; i < solution.getCables(cable); i++) {
+          assertTrue(gameState.makeMove(MoveLog.move(index, direction.getOrientation(), false)));
+        }
+      }
+    }
+  }
+  
+  /**
+   * Returns the cables of the given board as text, so boards can be compared regardless of the
+   * variants of the cables.
+   */
+  private static String toText(PackedBoard board) throws IOException {
+    final StringWriter text = new StringWriter();
+    new HashiTextWriter(text).write(board, true);
+    return text.toString();
+  }
+  
+  @Test
+  public void packsMoves() {
+    final int move = MoveLog.move(12345, Orientation.VERTICAL, true);
+    assertEquals(12345, MoveLog.getComponentIndex(move));
+    assertEquals(Orientation.VERTICAL, MoveLog.getOrientation(move));
+    assertTrue(MoveLog.isRemoval(move));
+    
+    final int inverted = MoveLog.invert(move);
+    assertEquals(12345, MoveLog.getComponentIndex(inverted));
+    assertEquals(Orientation.VERTICAL, MoveLog.getOrientation(inverted));
+    assertFalse(MoveLog.isRemoval(inverted));
+    assertEquals(move, MoveLog.invert(inverted));
+  }
+  
+  @Test
+  public void undoesAndRedoesMoves() {
+    final MoveLog log = new MoveLog();
+    for (int i = 0; i < 100; i++) {
+      log.record(MoveLog.move(i, Orientation.HORIZONTAL, false));
+    }
+    assertEquals(100, log.getSize());
+    assertEquals(MoveLog.move(99, Orientation.HORIZONTAL, false), log.undo());
+    assertEquals(MoveLog.move(98, Orientation.HORIZONTAL, false), log.undo());
+    assertTrue(log.canRedo());
+    assertEquals(MoveLog.move(98, Orientation.HORIZONTAL, false), log.redo());
+    assertEquals(99, log.getPosition());
+    assertEquals(99, log.toArray().length);
+    
+    log.record(MoveLog.move(0, Orientation.VERTICAL, false));
+    assertFalse(log.canRedo());
+    assertEquals(100, log.getSize());
+    assertEquals(MoveLog.move(0, Orientation.VERTICAL, false), log.get(99));
+  }
+  
+  @Test(expected = IllegalStateException.class)
+  public void rejectsUndoOfEmptyLog() {
+    new MoveLog().undo();
+  }
+  
+  @Test
+  public void undoesAndRedoesGame() throws IOException {
+    final GameState gameState = new GameState(new BoardGenerator(1).generatePackedBoard(50));
+    solve(gameState);
+    assertTrue(gameState.verifySolution());
+    final String solved = toText(gameState.getBoard());
+    final int moves = gameState.getMoveLog().getSize();
+    
+    for (int i = 0; i < moves; i++) {
+      assertTrue(gameState.undo() != GameState.NO_MOVE);
+    }
+    assertEquals(GameState.NO_MOVE, gameState.undo());
+    assertFalse(gameState.verifySolution());
+    assertEquals(toText(new GameState(gameState.getSolution()).getBoard()),
+        toText(gameState.getBoard()));
+    
+    for (int i = 0; i < moves; i++) {
+      assertTrue(gameState.redo() != GameState.NO_MOVE);
+    }
+    assertEquals(GameState.NO_MOVE, gameState.redo());
+    assertTrue(gameState.verifySolution());
+    assertEquals(solved, toText(gameState.getBoard()));
+  }
+  
+  @Test
+  public void replaysSavedLog() throws IOException {
+    final GameState gameState = new GameState(new BoardGenerator(2).generatePackedBoard(50));
+    solve(gameState);
+    gameState.undo();
+    gameState.undo();
+    final MoveLog saved = new MoveLog(gameState.getMoveLog().toArray());
+    
+    final GameState replayed = new GameState(gameState.getSolution());
+    assertEquals(saved.getSize(), replayed.replay(saved));
+    assertArrayEquals(saved.toArray(), replayed.getMoveLog().toArray());
+    assertEquals(toText(gameState.getBoard()), toText(replayed.getBoard()));
+  }
+  
+  @Test
+  public void skipsImpossibleMoves() {
+    final GameState gameState = new GameState(new BoardGenerator(3).generatePackedBoard(20));
+    final int emptyCell = gameState.getSolution().isComponent(0) ? 1 : 0;
+    final MoveLog log = new MoveLog(new int[] {
+        MoveLog.move(emptyCell, Orientation.HORIZONTAL, false),
+        MoveLog.move(1 << 29, Orientation.VERTICAL, false)});
+    assertEquals(0, gameState.replay(log));
+    assertEquals(0, gameState.getMoveLog().getSize());
+  }
+
+}
@@ -0,0 +1,178 @@
+package de.erikhofer.hashiwokahero;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PuzzleLibraryTest {
+  
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  
+  /**
+   * Asserts that the given boards have the same solution. Correctly connected flags and the
+   * orientation and variant of empty cable tiles aren't stored in a library.
+   */
+  private static void assertSameSolution(PackedBoard expected, PackedBoard actual) {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    for (int index = 0; index < expected.getSize(); index++) {
+      assertEquals(expected.isComponent(index), actual.isComponent(index));
+      if (expected.isComponent(index)) {
+        assertEquals(expected.getConnections(index), actual.getConnections(index));
+        assertEquals(expected.getVariant(index), actual.getVariant(index));
+      } else {
+        assertEquals(expected.getCables(index), actual.getCables(index));
+        if (expected.getCables(index) > 0) {
+          assertEquals(expected.getOrientation(index), actual.getOrientation(index));
+          assertEquals(expected.getVariant(index), actual.getVariant(index));
+        }
+      }
+    }
+  }
+  
+  private static GeneratedBoard generate(int index, int components) {
+    final long seed = 1000 + index;
+    final PackedBoard board = new BoardGenerator(seed).generatePackedBoard(components);
+    return new GeneratedBoard(index, seed, board);
+  }
+  
+  @Test
+  public void readsAddedBoards() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("boards.hashi");
+    final GeneratedBoard[] boards = new GeneratedBoard[20];
+    try (PuzzleLibraryWriter writer = PuzzleLibraryWriter.create(file, boards.length)) {
+      for (int i = 0; i < boards.length; i++) {
+        boards[i] = generate(i, 10 + 20 * i);
+        writer.add(boards[i]);
+      }
+    }
+    
+    try (PuzzleLibrary library = new PuzzleLibrary(file)) {
+      assertEquals(boards.length, library.getCapacity());
+      assertEquals(boards.length, library.getBoardCount());
+      // random access in reverse order
+      for (int i = boards.length - 1; i >= 0; i--) {
+        final GeneratedBoard board = library.getGeneratedBoard(i);
+        assertEquals(i, board.getIndex());
+        assertEquals(boards[i].getSeed(), board.getSeed());
+        assertSameSolution(boards[i].getBoard(), board.getBoard());
+      }
+    }
+  }
+  
+  @Test
+  public void writesGeneratedBatch() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("boards.hashi");
+    final BatchBoardGenerator generator = new BatchBoardGenerator(42);
+    try (PuzzleLibraryWriter writer = PuzzleLibraryWriter.create(file, 30)) {
+      writer.addBatch(generator, 30, 25);
+      assertEquals(30, writer.getBoardCount());
+    }
+    
+    try (PuzzleLibrary library = new PuzzleLibrary(file)) {
+      assertEquals(30, library.getBoardCount());
+      for (int i = 0; i < 30; i++) {
+        final GeneratedBoard expected = generator.generateBoard(i, 25);
+        final GeneratedBoard board = library.getGeneratedBoard(i);
+        assertEquals(i, board.getIndex());
+        assertEquals(expected.getSeed(), board.getSeed());
+        assertSameSolution(expected.getBoard(), board.getBoard());
+      }
+    }
+  }
+  
+  @Test
+  public void appendsToExistingLibrary() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("boards.hashi");
+    try (PuzzleLibraryWriter writer = PuzzleLibraryWriter.create(file, 3)) {
+      writer.add(generate(0, 15));
+    }
+    try (PuzzleLibraryWriter writer = PuzzleLibraryWriter.append(file)) {
+      assertEquals(1, writer.getBoardCount());
+      writer.add(generate(1, 25));
+      writer.add(generate(2, 35));
+    }
+    
+    try (PuzzleLibrary library = new PuzzleLibrary(file)) {
+      assertEquals(3, library.getBoardCount());
+      for (int i = 0; i < 3; i++) {
+        assertSameSolution(generate(i, 15 + 10 * i).getBoard(), library.getBoard(i));
+      }
+    }
+  }
+  
+  @Test
+  public void hidesBoardsUntilFlushed() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("boards.hashi");
+    try (PuzzleLibraryWriter writer = PuzzleLibraryWriter.create(file, 2)) {
+      writer.add(generate(0, 10));
+      try (PuzzleLibrary library = new PuzzleLibrary(file)) {
+        assertEquals(0, library.getBoardCount());
+      }
+      writer.flush();
+      try (PuzzleLibrary library = new PuzzleLibrary(file)) {
+        assertEquals(1, library.getBoardCount());
+      }
+    }
+  }
+  
+  @Test(expected = IllegalStateException.class)
+  public void rejectsBoardsBeyondCapacity() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("boards.hashi");
+    try (PuzzleLibraryWriter writer = PuzzleLibraryWriter.create(file, 1)) {
+      writer.add(generate(0, 10));
+      writer.add(generate(1, 10));
+    }
+  }
+  
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMissingBoard() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("boards.hashi");
+    PuzzleLibraryWriter.create(file, 2).close();
+    try (PuzzleLibrary library = new PuzzleLibrary(file)) {
+      library.getBoard(0);
+    }
+  }
+  
+  @Test
+  public void rejectsOtherFiles() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("boards.hashi");
+    Files.write(file, new byte[PuzzleLibrary.HEADER_SIZE]);
+    try {
+      new PuzzleLibrary(file).close();
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+  
+  @Test
+  public void rejectsCorruptIndex() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("boards.hashi");
+    try (PuzzleLibraryWriter writer = PuzzleLibraryWriter.create(file, 1)) {
+      writer.add(generate(0, 10));
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      final ByteBuffer offset = ByteBuffer.allocate(Long.BYTES);
+      offset.putLong(0, Long.MAX_VALUE / 2);
+      channel.write(offset, PuzzleLibrary.HEADER_SIZE);
+    }
+    try (PuzzleLibrary library = new PuzzleLibrary(file)) {
+      library.getBoard(0);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,223 @@
+package de.erikhofer.hashiwokahero.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GameServerTest {
+  
+  /**
+   * A board with exactly one solution: a ring of single cables.
+   */
+  private static final String PUZZLE = "2.2\n...\n2.2\n";
+  
+  private GameServer server;
+  
+  private static class Response {
+    
+    private final int status;
+    private final String body;
+    private final String location;
+    
+    private Response(int status, String body, String location) {
+      this.status = status;
+      this.body = body;
+      this.location = location;
+    }
+  
+  }
+  
+  @Before
+  public void startServer() throws IOException {
+    server = createServer(1, TimeUnit.MINUTES);
+  }
+  
+  @After
+  public void stopServer() {
+    server.stop();
+  }
+  
+  private static GameServer createServer(long idleTimeout, TimeUnit unit) throws IOException {
+    final GameServer server = new GameServer(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), idleTimeout, unit);
+    server.start();
+    return server;
+  }
+  
+  private static Response request(GameServer server, String method, String path, byte[] body)
+      throws IOException {
+    final InetSocketAddress address = server.getAddress();
+    final HttpURLConnection connection = (HttpURLConnection) new URL("http",
+        address.getHostString(), address.getPort(), path).openConnection();
+    try {
+      connection.setRequestMethod(method);
+      if (body != null) {
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(body);
+        }
+      }
+      final int status = connection.getResponseCode();
+      try (InputStream in = status < 400
+          ? connection.getInputStream() : connection.getErrorStream()) {
+        return new Response(status, new String(ByteStreams.toByteArray(in), UTF_8),
+            connection.getHeaderField("Location"));
+      }
+    } finally {
+      connection.disconnect();
+    }
+  }
+  
+  private Response request(String method, String path) throws IOException {
+    return request(server, method, path, null);
+  }
+  
+  /**
+   * Sends the request and returns the body of the response without the final line break.
+   */
+  private String request(String method, String path, int expectedStatus) throws IOException {
+    final Response response = request(method, path);
+    assertEquals(response.body, expectedStatus, response.status);
+    return response.body.substring(0, response.body.length() - 1);
+  }
+  
+  /**
+   * Creates a game of the given board and returns the path of its session.
+   */
+  private String createGame(String puzzle) throws IOException {
+    final Response response = request(server, "POST", "/sessions", puzzle.getBytes(UTF_8));
+    assertEquals(response.body, 200, response.status);
+    assertEquals(puzzle, response.body);
+    assertNotNull(response.location);
+    return response.location;
+  }
+  
+  private static String bridge(int row1, int col1, int row2, int col2) {
+    return "/bridges?row1=" + row1 + "&col1=" + col1 + "&row2=" + row2 + "&col2=" + col2;
+  }
+  
+  @Test
+  public void playsGame() throws IOException {
+    final String session = createGame(PUZZLE);
+    assertEquals(1, server.getSessionCount());
+    assertEquals("unsolved", request("GET", session + "/verify", 200));
+    assertEquals("ok", request("POST", session + bridge(0, 0, 0, 2), 200));
+    assertEquals("2-2\n...\n2.2", request("GET", session, 200));
+    
+    // follow the hints like a player
+    final Map<String, Integer> cables = new HashMap<>();
+    cables.put("0 0 0 2", 1);
+    String hint = request("GET", session + "/hint", 200);
+    for (int hints = 0; !hint.equals("solved"); hints++) {
+      assertTrue(hints < 10);
+      final String[] parts = hint.split(" ");
+      assertEquals(6, parts.length);
+      final String components = String.join(" ", Arrays.asList(parts).subList(1, 5));
+      final String bridge = bridge(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+          Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+      final int hintCables = Integer.parseInt(parts[5]);
+      if (parts[0].equals("WRONG_CABLES")) {
+        for (int i = 0; i < hintCables; i++) {
+          assertEquals("ok", request("DELETE", session + bridge, 200));
+        }
+        cables.remove(components);
+      } else {
+        for (int i = cables.getOrDefault(components, 0); i < hintCables; i++) {
+          assertEquals("ok", request("POST", session + bridge, 200));
+        }
+        cables.put(components, hintCables);
+      }
+      hint = request("GET", session + "/hint", 200);
+    }
+    
+    assertEquals("solved", request("GET", session + "/verify", 200));
+    assertEquals("2-2\n|.|\n2-2", request("GET", session, 200));
+    assertEquals("ended", request("DELETE", session, 200));
+    assertEquals(0, server.getSessionCount());
+  }
+  
+  @Test
+  public void generatesGames() throws IOException {
+    final Response response = request("POST", "/sessions?components=20");
+    assertEquals(response.body, 200, response.status);
+    // a new game has no cables yet
+    assertEquals(response.body, request("GET", response.location).body);
+    assertEquals(200, request("POST", "/sessions?width=10&height=8&density=0.5").status);
+    assertEquals(2, server.getSessionCount());
+  }
+  
+  @Test
+  public void rejectsInvalidRequests() throws IOException {
+    final String session = createGame(PUZZLE);
+    
+    request("GET", "/sessions/unknown", 404);
+    request("GET", session + "/unknown", 404);
+    request("GET", session + "/verify/more", 404);
+    
+    request("GET", "/sessions", 405);
+    request("POST", session + "/verify", 405);
+    request("PUT", session + bridge(0, 0, 0, 2), 405);
+    
+    request("DELETE", session + bridge(0, 0, 0, 2), 409);
+    request("POST", session + bridge(0, 0, 0, 2), 200);
+    request("POST", session + bridge(0, 0, 0, 2), 200);
+    request("POST", session + bridge(0, 0, 0, 2), 409);
+    
+    request("POST", session + bridge(0, 0, 2, 2), 400);
+    request("POST", session + bridge(0, 0, 1, 0), 400);
+    request("POST", session + "/bridges?row1=0&col1=0", 400);
+    request("POST", "/sessions?components=1", 400);
+    assertEquals(400, request(server, "POST", "/sessions", "1.1.1\n".getBytes(UTF_8)).status);
+    assertEquals(1, server.getSessionCount());
+    
+    request("DELETE", session, 200);
+    request("GET", session, 404);
+  }
+  
+  @Test
+  public void rejectsTooLargeBodies() throws IOException {
+    final byte[] body = new byte[2 * (1 << 20) + 1];
+    Arrays.fill(body, (byte) '.');
+    assertEquals(413, request(server, "POST", "/sessions", body).status);
+    assertEquals(0, server.getSessionCount());
+  }
+  
+  @Test
+  public void evictsIdleSessions() throws IOException, InterruptedException {
+    final GameServer server = createServer(200, TimeUnit.MILLISECONDS);
+    try {
+      final Response response = request(server, "POST", "/sessions", PUZZLE.getBytes(UTF_8));
+      assertEquals(200, response.status);
+      assertEquals(1, server.getSessionCount());
+      
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (server.getSessionCount() > 0 && System.nanoTime() < deadline) {
+        Thread.sleep(50);
+      }
+      assertEquals(0, server.getSessionCount());
+      assertEquals(1, server.getEvictedSessions());
+      assertEquals(404, request(server, "GET", response.location, null).status);
+    } finally {
+      server.stop();
+    }
+  }
+
+}
@@ -0,0 +1,157 @@
+package de.erikhofer.hashiwokahero.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import de.erikhofer.hashiwokahero.BoardGenerator;
+import de.erikhofer.hashiwokahero.Direction;
+import de.erikhofer.hashiwokahero.GameState;
+import de.erikhofer.hashiwokahero.PackedBoard;
+import de.erikhofer.hashiwokahero.TilePosition;
+import org.junit.Test;
+
+public class HintEngineTest {
+  
+  private static GameState gameState(String... rows) {
+    return new GameState(new Solver(SolverTest.puzzle(rows)).solve().getSolutionBoard());
+  }
+  
+  /**
+   * Returns the position of the first cable tile between the given components.
+   */
+  private static TilePosition getCablePosition(TilePosition component1, TilePosition component2) {
+    return component1.getAdjacent(component2.getDirectionRelativeTo(component1));
+  }
+  
+  private static int getCables(GameState gameState, TilePosition component1,
+      TilePosition component2) {
+    final Direction direction = component2.getDirectionRelativeTo(component1);
+    final TilePosition cable = getCablePosition(component1, component2);
+    final PackedBoard board = gameState.getBoard();
+    final int index = board.getIndex(cable.getRow(), cable.getCol());
+    return board.getOrientation(index) == direction.getOrientation() ? board.getCables(index) : 0;
+  }
+  
+  /**
+   * Changes the cables of the hint like a player would and tells the engine about it.
+   */
+  private static void follow(GameState gameState, HintEngine hintEngine, Hint hint) {
+    final TilePosition component1 = hint.getComponent1();
+    final TilePosition component2 = hint.getComponent2();
+    if (hint.getType() == Hint.Type.WRONG_CABLES) {
+      for (int i = 0; i < hint.getCables(); i++) {
+        gameState.removeCable(getCablePosition(component1, component2));
+      }
+      assertEquals(0, getCables(gameState, component1, component2));
+    } else {
+      while (getCables(gameState, component1, component2) < hint.getCables()) {
+        final int cables = getCables(gameState, component1, component2);
+        gameState.tryToAddCableBetweenComponents(component1, component2);
+        assertEquals(cables + 1, getCables(gameState, component1, component2));
+      }
+    }
+    hintEngine.cablesChanged(component1, component2);
+  }
+  
+  private static void solveWithHints(GameState gameState, HintEngine hintEngine) {
+    for (int moves = 0; moves < 10_000; moves++) {
+      final Hint hint = hintEngine.getHint();
+      if (hint == null) {
+        assertTrue(gameState.verifySolution());
+        return;
+      }
+      follow(gameState, hintEngine, hint);
+    }
+    throw new AssertionError("The hints don't solve the game!");
+  }
+  
+  @Test
+  public void hintsSolveGeneratedGames() {
+    for (int seed = 0; seed < 20; seed++) {
+      final GameState gameState = new GameState(new BoardGenerator(seed).generatePackedBoard(60));
+      solveWithHints(gameState, new HintEngine(gameState));
+    }
+  }
+  
+  @Test
+  public void reportsForcedCablesFirst() {
+    final GameState gameState = gameState(
+        "2.2",
+        "...",
+        "2.2");
+    final Hint hint = new HintEngine(gameState).getHint();
+    assertEquals(Hint.Type.FORCED_CABLES, hint.getType());
+    assertEquals(1, hint.getCables());
+  }
+  
+  @Test
+  public void reportsWrongCables() {
+    final GameState gameState = gameState(
+        "2.2",
+        "...",
+        "2.2");
+    final HintEngine hintEngine = new HintEngine(gameState);
+    final TilePosition component1 = new TilePosition(0, 0);
+    final TilePosition component2 = new TilePosition(0, 2);
+    gameState.tryToAddCableBetweenComponents(component1, component2);
+    gameState.tryToAddCableBetweenComponents(component1, component2);
+    hintEngine.cablesChanged(component1, component2);
+    
+    final Hint hint = hintEngine.getHint();
+    assertEquals(new Hint(Hint.Type.WRONG_CABLES, component1, component2, 2), hint);
+    follow(gameState, hintEngine, hint);
+    assertNotEquals(Hint.Type.WRONG_CABLES, hintEngine.getHint().getType());
+    solveWithHints(gameState, hintEngine);
+  }
+  
+  @Test
+  public void reportsCablesThatAreNotInSolution() {
+    final GameState gameState = new GameState(new BoardGenerator(3).generatePackedBoard(40));
+    final HintEngine hintEngine = new HintEngine(gameState);
+    final PackedBoard solution = gameState.getSolution();
+    final Puzzle puzzle = Puzzle.fromBoard(solution);
+    final int[] cables = puzzle.readCables(solution);
+    int edge = 0;
+    while (cables[edge] > 0) {
+      edge++;
+    }
+    final int cell1 = puzzle.getIslandCell(puzzle.getFirstIsland(edge));
+    final int cell2 = puzzle.getIslandCell(puzzle.getSecondIsland(edge));
+    final TilePosition component1 = new TilePosition(solution.getRow(cell1),
+        solution.getCol(cell1));
+    final TilePosition component2 = new TilePosition(solution.getRow(cell2),
+        solution.getCol(cell2));
+    gameState.tryToAddCableBetweenComponents(component1, component2);
+    hintEngine.cablesChanged(component1, component2);
+    
+    assertEquals(new Hint(Hint.Type.WRONG_CABLES, component1, component2, 1),
+        hintEngine.getHint());
+    solveWithHints(gameState, hintEngine);
+  }
+  
+  @Test
+  public void synchronizesWithUndoneMoves() {
+    final GameState gameState = new GameState(new BoardGenerator(5).generatePackedBoard(40));
+    final HintEngine hintEngine = new HintEngine(gameState);
+    for (int i = 0; i < 10; i++) {
+      follow(gameState, hintEngine, hintEngine.getHint());
+    }
+    while (gameState.undo() != GameState.NO_MOVE) {
+      // undo everything
+    }
+    hintEngine.synchronize();
+    assertFalse(gameState.verifySolution());
+    solveWithHints(gameState, hintEngine);
+  }
+  
+  @Test
+  public void hasNoHintForSolvedGame() {
+    final GameState gameState = new GameState(new BoardGenerator(9).generatePackedBoard(40));
+    gameState.setBoardToSolution();
+    assertNull(new HintEngine(gameState).getHint());
+  }
+
+}
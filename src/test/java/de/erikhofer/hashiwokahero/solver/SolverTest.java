@@ -0,0 +1,116 @@
+package de.erikhofer.hashiwokahero.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import de.erikhofer.hashiwokahero.BoardGenerator;
+import de.erikhofer.hashiwokahero.GameState;
+import de.erikhofer.hashiwokahero.PackedBoard;
+import org.junit.Test;
+
+public class SolverTest {
+  
+  /**
+   * Creates the puzzle of the given rows. Digits are components and every other character is an
+   * empty tile.
+   */
+  static Puzzle puzzle(String... rows) {
+    final PackedBoard board = new PackedBoard(rows[0].length(), rows.length);
+    for (int row = 0; row < rows.length; row++) {
+      for (int col = 0; col < rows[row].length(); col++) {
+        final char c = rows[row].charAt(col);
+        if (c >= '1' && c <= '8') {
+          board.set(board.getIndex(row, col), PackedBoard.componentCell(c - '0', 0));
+        }
+      }
+    }
+    return Puzzle.fromBoard(board);
+  }
+  
+  private static boolean isValidSolution(PackedBoard solution) {
+    final GameState gameState = new GameState(solution);
+    gameState.setBoardToSolution();
+    return gameState.verifySolution();
+  }
+  
+  @Test
+  public void solvesGeneratedBoards() {
+    for (int seed = 0; seed < 50; seed++) {
+      final PackedBoard board = new BoardGenerator(seed).generatePackedBoard(40);
+      final SolverResult result = new Solver(Puzzle.fromBoard(board)).solve();
+      assertTrue("seed " + seed, result.isSolvable());
+      assertTrue("seed " + seed, isValidSolution(result.getSolutionBoard()));
+    }
+  }
+  
+  @Test
+  public void findsUniqueSolution() {
+    final SolverResult result = new Solver(puzzle(
+        "2.2",
+        "...",
+        "2.2")).solve(2);
+    assertTrue(result.isUnique());
+    assertTrue(result.isComplete());
+    assertTrue(isValidSolution(result.getSolutionBoard()));
+  }
+  
+  @Test
+  public void countsSolutionsUpToLimit() {
+    final Puzzle puzzle = puzzle(
+        "3.3",
+        "...",
+        "3.3");
+    final SolverResult all = new Solver(puzzle).solve(10);
+    assertEquals(2, all.getSolutionCount());
+    assertTrue(all.isComplete());
+    assertFalse(all.isUnique());
+    
+    final SolverResult limited = new Solver(puzzle).solve(1);
+    assertEquals(1, limited.getSolutionCount());
+    assertFalse(limited.isComplete());
+    assertTrue(isValidSolution(limited.getSolutionBoard()));
+  }
+  
+  @Test
+  public void detectsUnsolvablePuzzle() {
+    final SolverResult result = new Solver(puzzle("1.1.1")).solve();
+    assertFalse(result.isSolvable());
+    assertTrue(result.isComplete());
+    assertNull(result.getSolutionBoard());
+  }
+  
+  @Test
+  public void rejectsDisconnectedSolutions() {
+    // Both pairs can only be connected with each other, so the islands can't form one network.
+    final SolverResult result = new Solver(puzzle(
+        "1.1",
+        "...",
+        "1.1")).solve();
+    assertFalse(result.isSolvable());
+    assertTrue(result.isComplete());
+  }
+  
+  @Test
+  public void cancelledSearchIsIncomplete() {
+    final PackedBoard board = new BoardGenerator(1).generatePackedBoard(100);
+    final Solver solver = new Solver(Puzzle.fromBoard(board));
+    solver.cancel();
+    final SolverResult result = solver.solve();
+    assertTrue(solver.isCancelled());
+    assertFalse(result.isComplete());
+  }
+  
+  @Test
+  public void readsCablesOfSolution() {
+    final PackedBoard board = new BoardGenerator(7).generatePackedBoard(30);
+    final Puzzle puzzle = Puzzle.fromBoard(board);
+    final int[] cables = puzzle.readCables(board);
+    assertNotNull(cables);
+    assertEquals(puzzle.getEdgeCount(), cables.length);
+    assertTrue(isValidSolution(puzzle.toBoard(cables)));
+  }
+
+}